@@ -0,0 +1,48 @@
+package me.mywiki.configurator.benchmarks;
+
+import java.util.function.Function;
+
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToString;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+
+/**
+ * The pair measured by the benchmarks, shaped like a typical connection pool configuration
+ */
+public interface BenchConfig {
+
+    String url();
+
+    int poolSize();
+
+    long timeoutMillis();
+
+    @DefaultsToInteger(val = 3)
+    int retries();
+
+    @DefaultsToString(val = "bench")
+    String applicationName();
+
+    @TransformBy(_fun = Reverse.class)
+    String password();
+
+    Builder cloneBuilder();
+
+    public static interface Builder {
+        Builder url(String v);
+        Builder poolSize(int v);
+        Builder timeoutMillis(long v);
+        Builder retries(int v);
+        Builder applicationName(String v);
+        Builder password(String v);
+        BenchConfig done();
+    }
+
+    /** cheap stand-in for a decryption function */
+    public static class Reverse implements Function<Object, Object> {
+        @Override
+        public Object apply(Object t) {
+            return new StringBuilder((String) t).reverse().toString();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package me.mywiki.configurator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+
+/**
+ * Building configurations: configBuilderFor on a validated pair, a full fluent build, 
+ * deriving a configuration with cloneBuilder, and the @TransformBy/@DefaultsTo* paths.
+ * Run with -prof gc to get the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BuildBenchmark {
+
+    @Param({"PROXY", "GENERATED"})
+    public Engine engine;
+
+    private BenchConfig config;
+    private PojoConfig pojo;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        config= fullBuild();
+        pojo= pojoFullBuild();
+    }
+
+    @Benchmark
+    public BenchConfig.Builder configBuilderForWarm() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine);
+    }
+
+    @Benchmark
+    public PojoConfig.Builder pojoNewBuilder() {
+        return new PojoConfig.Builder();
+    }
+
+    @Benchmark
+    public BenchConfig fullBuild() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine)
+                                     .url("jdbc:postgresql://db:5432/app")
+                                     .poolSize(20)
+                                     .timeoutMillis(30000L)
+                                     .retries(5)
+                                     .applicationName("app")
+                                     .password("terces")
+                                     .done();
+    }
+
+    @Benchmark
+    public PojoConfig pojoFullBuild() {
+        return new PojoConfig.Builder()
+                             .url("jdbc:postgresql://db:5432/app")
+                             .poolSize(20)
+                             .timeoutMillis(30000L)
+                             .retries(5)
+                             .applicationName("app")
+                             .password("terces")
+                             .done();
+    }
+
+    /** leaves the @DefaultsTo* properties unset and skips the @TransformBy one */
+    @Benchmark
+    public BenchConfig defaultsBuild() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine)
+                                     .url("jdbc:postgresql://db:5432/app")
+                                     .poolSize(20)
+                                     .timeoutMillis(30000L)
+                                     .password("")
+                                     .done();
+    }
+
+    @Benchmark
+    public PojoConfig pojoDefaultsBuild() {
+        return new PojoConfig.Builder()
+                             .url("jdbc:postgresql://db:5432/app")
+                             .poolSize(20)
+                             .timeoutMillis(30000L)
+                             .password("")
+                             .done();
+    }
+
+    @Benchmark
+    public BenchConfig.Builder transformSetter() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine)
+                                     .password("terces");
+    }
+
+    @Benchmark
+    public PojoConfig.Builder pojoTransformSetter() {
+        return new PojoConfig.Builder().password("terces");
+    }
+
+    @Benchmark
+    public BenchConfig cloneAndOverride() {
+        return config.cloneBuilder().poolSize(++counter).done();
+    }
+
+    @Benchmark
+    public PojoConfig pojoCloneAndOverride() {
+        return pojo.cloneBuilder().poolSize(++counter).done();
+    }
+}
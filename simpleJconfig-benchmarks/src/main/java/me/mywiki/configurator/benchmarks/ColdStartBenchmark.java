@@ -0,0 +1,53 @@
+package me.mywiki.configurator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+
+/**
+ * The first configBuilderFor of a pair in a fresh JVM: validation, proxy or class generation.
+ * Pairs are cached for the life of their class, so every sample needs its own fork.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark {
+
+    @Param({"PROXY", "GENERATED"})
+    public Engine engine;
+
+    @Benchmark
+    public BenchConfig configBuilderForCold() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine)
+                                     .url("jdbc:postgresql://db:5432/app")
+                                     .poolSize(20)
+                                     .timeoutMillis(30000L)
+                                     .password("terces")
+                                     .done();
+    }
+
+    @Benchmark
+    public PojoConfig pojoCold() {
+        return new PojoConfig.Builder()
+                             .url("jdbc:postgresql://db:5432/app")
+                             .poolSize(20)
+                             .timeoutMillis(30000L)
+                             .password("terces")
+                             .done();
+    }
+}
@@ -0,0 +1,77 @@
+package me.mywiki.configurator.benchmarks;
+
+import java.util.Objects;
+
+/**
+ * Hand-written equivalent of {@link BenchConfig}, the baseline every benchmark is compared to
+ */
+public final class PojoConfig {
+    private final String url;
+    private final int poolSize;
+    private final long timeoutMillis;
+    private final int retries;
+    private final String applicationName;
+    private final String password;
+
+    private PojoConfig(Builder b) {
+        this.url= b.url;
+        this.poolSize= b.poolSize;
+        this.timeoutMillis= b.timeoutMillis;
+        this.retries= b.retries;
+        this.applicationName= b.applicationName;
+        this.password= b.password;
+    }
+
+    public String url() { return url; }
+    public int poolSize() { return poolSize; }
+    public long timeoutMillis() { return timeoutMillis; }
+    public int retries() { return retries; }
+    public String applicationName() { return applicationName; }
+    public String password() { return password; }
+
+    public Builder cloneBuilder() {
+        Builder b= new Builder();
+        b.url= url;
+        b.poolSize= poolSize;
+        b.timeoutMillis= timeoutMillis;
+        b.retries= retries;
+        b.applicationName= applicationName;
+        b.password= password;
+        return b;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (! (obj instanceof PojoConfig)) return false;
+        PojoConfig other= (PojoConfig) obj;
+        return poolSize == other.poolSize && timeoutMillis == other.timeoutMillis && retries == other.retries
+            && url.equals(other.url) && applicationName.equals(other.applicationName) && password.equals(other.password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(url, poolSize, timeoutMillis, retries, applicationName, password);
+    }
+
+    public static final class Builder {
+        private String url;
+        private int poolSize;
+        private long timeoutMillis;
+        private int retries= 3;
+        private String applicationName= "bench";
+        private String password;
+
+        public Builder url(String v) { this.url= v; return this; }
+        public Builder poolSize(int v) { this.poolSize= v; return this; }
+        public Builder timeoutMillis(long v) { this.timeoutMillis= v; return this; }
+        public Builder retries(int v) { this.retries= v; return this; }
+        public Builder applicationName(String v) { this.applicationName= v; return this; }
+        public Builder password(String v) { this.password= (String) new BenchConfig.Reverse().apply(v); return this; }
+
+        public PojoConfig done() {
+            if (url == null || password == null) throw new IllegalStateException("missing properties");
+            return new PojoConfig(this);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package me.mywiki.configurator.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+
+/**
+ * Reading configurations on the request path: getters, from one thread and from all the cores
+ * sharing the same instance, and equals/hashCode as used when configurations are cache keys.
+ * Run with -prof gc to get the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+    @Param({"PROXY", "GENERATED"})
+    public Engine engine;
+
+    private BenchConfig config;
+    private BenchConfig equalConfig;
+    private PojoConfig pojo;
+    private PojoConfig equalPojo;
+
+    @Setup
+    public void setUp() {
+        config= build();
+        equalConfig= build();
+        pojo= buildPojo();
+        equalPojo= buildPojo();
+    }
+
+    private BenchConfig build() {
+        return ReflectiveConfigurator.configBuilderFor(BenchConfig.class, BenchConfig.Builder.class, engine)
+                                     .url("jdbc:postgresql://db:5432/app")
+                                     .poolSize(20)
+                                     .timeoutMillis(30000L)
+                                     .password("terces")
+                                     .done();
+    }
+
+    private static PojoConfig buildPojo() {
+        return new PojoConfig.Builder()
+                             .url("jdbc:postgresql://db:5432/app")
+                             .poolSize(20)
+                             .timeoutMillis(30000L)
+                             .password("terces")
+                             .done();
+    }
+
+    @Benchmark
+    public String readString() {
+        return config.url();
+    }
+
+    @Benchmark
+    public String pojoReadString() {
+        return pojo.url();
+    }
+
+    @Benchmark
+    public int readInt() {
+        return config.poolSize();
+    }
+
+    @Benchmark
+    public int pojoReadInt() {
+        return pojo.poolSize();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String readStringShared() {
+        return config.url();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String pojoReadStringShared() {
+        return pojo.url();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int readIntShared() {
+        return config.poolSize();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int pojoReadIntShared() {
+        return pojo.poolSize();
+    }
+
+    @Benchmark
+    public boolean equalsReaders() {
+        return config.equals(equalConfig);
+    }
+
+    @Benchmark
+    public boolean pojoEquals() {
+        return pojo.equals(equalPojo);
+    }
+
+    @Benchmark
+    public int hashCodeReader() {
+        return config.hashCode();
+    }
+
+    @Benchmark
+    public int pojoHashCode() {
+        return pojo.hashCode();
+    }
+}
@@ -0,0 +1,566 @@
+package me.mywiki.configurator.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+import me.mywiki.configurator.CompiledReader;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.ConfigPair;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToBoolean;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToClass;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToDouble;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToLong;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToString;
+import me.mywiki.configurator.ReflectiveConfigurator.Derived;
+import me.mywiki.configurator.ReflectiveConfigurator.Indexed;
+import me.mywiki.configurator.ReflectiveConfigurator.Interned;
+import me.mywiki.configurator.ReflectiveConfigurator.Interpolated;
+import me.mywiki.configurator.ReflectiveConfigurator.NotEmpty;
+import me.mywiki.configurator.ReflectiveConfigurator.OffHeap;
+import me.mywiki.configurator.ReflectiveConfigurator.Pattern;
+import me.mywiki.configurator.ReflectiveConfigurator.Range;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+import me.mywiki.configurator.ReflectiveConfigurator.ValidateBy;
+
+/**
+ * <p>
+ * For every reader interface annotated with {@link ConfigPair} checks the pair the same way
+ * ReflectiveConfigurator checks it at runtime, reporting the problems as compilation errors,
+ * and generates a plain Java implementation of the builder, with a nested reader implementation.
+ * The reader extends {@link CompiledReader}, so that it is equal to the readers of the runtime engines
+ * holding the same values and works with ConfigCodec, ConfigSnapshot and ConfigDiff.
+ * </p>
+ * ReflectiveConfigurator.configBuilderFor, when not given an engine, finds the generated builder by name (see
+ * {@link ReflectiveConfigurator#compiledBuilderName(Class)}) and uses it instead of the runtime engines,
+ * so no proxies are created. For GraalVM native images the processor also writes the reflect-config.json
+ * entry needed to look up the generated class.
+ * <p>
+ * The generated code only implements plain properties, @DefaultsTo* and eager @TransformBy: pairs using
+ * any other annotation of ReflectiveConfigurator, constraints included, are reported as errors, remove
+ * @ConfigPair to build them with the runtime engines.
+ * </p>
+ */
+@SupportedAnnotationTypes("me.mywiki.configurator.ReflectiveConfigurator.ConfigPair")
+public class ConfigPairProcessor extends AbstractProcessor {
+
+    /** the annotations whose behavior only the runtime engines implement */
+    private static final List<Class<?>> RUNTIME_ONLY= Arrays.<Class<?>>asList(
+            Interned.class, Interpolated.class, OffHeap.class, Indexed.class, Derived.class,
+            Range.class, Pattern.class, NotEmpty.class, ValidateBy.class);
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element annotated: roundEnv.getElementsAnnotatedWith(ConfigPair.class)) {
+            if (annotated.getKind() != ElementKind.INTERFACE) {
+                error(annotated, "@ConfigPair must annotate the reader interface");
+                continue;
+            }
+            TypeElement reader= (TypeElement) annotated;
+            TypeElement builder= asTypeElement(annotationValue(reader, ConfigPair.class, "builder"));
+            if (builder == null || builder.getKind() != ElementKind.INTERFACE) {
+                error(reader, "builder should be an interface");
+                continue;
+            }
+            PairModel pair= checkAgainstSpec(reader, builder);
+            if (pair != null) {
+                generate(pair);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * What the generator needs to know about a property
+     */
+    private static final class Property {
+        final String name;
+        final TypeMirror type;
+        /** the canonical name of the @TransformBy function, null if none */
+        String transformer;
+        /** a Java expression evaluating to the declared default, null if none */
+        String defaultExpression;
+
+        Property(String name_, TypeMirror type_) {
+            this.name= name_;
+            this.type= type_;
+        }
+    }
+
+    private static final class PairModel {
+        final TypeElement reader;
+        final TypeElement builder;
+        final boolean hasCloneBuilder;
+        /** sorted by name, like the runtime engines order them */
+        final List<Property> properties;
+        /** the doneAsync() and doneAsync(Executor) methods of the builder, if declared */
+        final List<ExecutableElement> doneAsync;
+
+        PairModel( TypeElement reader_, TypeElement builder_, boolean hasCloneBuilder_, List<Property> properties_,
+                   List<ExecutableElement> doneAsync_) {
+            this.reader= reader_;
+            this.builder= builder_;
+            this.hasCloneBuilder= hasCloneBuilder_;
+            this.properties= properties_;
+            this.doneAsync= doneAsync_;
+        }
+    }
+
+    /**
+     * Mirrors the runtime checkAgainstSpec
+     * @return null if errors have been reported
+     */
+    private PairModel checkAgainstSpec(TypeElement reader, TypeElement builder)
+    {
+        boolean valid= true;
+        Map<String, ExecutableElement> setters= new HashMap<>();
+        List<ExecutableElement> doneAsync= new ArrayList<>();
+        for (ExecutableElement m: ElementFilter.methodsIn(builder.getEnclosedElements())) {
+            if (m.getModifiers().contains(Modifier.STATIC) || m.getModifiers().contains(Modifier.DEFAULT)) continue;
+            String mName= m.getSimpleName().toString();
+            if (mName.equals("done")) {
+                valid &= check(m.getParameters().isEmpty(), m, "done is a method with 0 paramters");
+                valid &= check(isSameType(m.getReturnType(), reader.asType()), m, "done returns the reader object");
+                continue;
+            }
+            if (mName.equals("doneAsync")) {
+                valid &= check( m.getParameters().isEmpty()
+                                || (m.getParameters().size() == 1 && isType(m.getParameters().get(0).asType(), Executor.class)),
+                                m, "doneAsync takes no parameter or an Executor");
+                TypeMirror futureOfReader= processingEnv.getTypeUtils().getDeclaredType(
+                        processingEnv.getElementUtils().getTypeElement(CompletableFuture.class.getCanonicalName()), reader.asType());
+                valid &= check(isSameType(m.getReturnType(), futureOfReader), m, "doneAsync returns a CompletableFuture of the reader object");
+                doneAsync.add(m);
+                continue;
+            }
+            valid &= check(m.getParameters().size() == 1, m, "setter method: " + mName);
+            valid &= check(isSameType(m.getReturnType(), builder.asType()), m, "returning a builder for" + mName);
+            setters.put(mName, m);
+        }
+
+        boolean hasCloneBuilder= false;
+        Map<String, Property> properties= new TreeMap<>();
+        valid &= checkNotRuntimeOnly(reader);
+        for (ExecutableElement m: ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(reader))) {
+            if (m.getEnclosingElement().getKind() == ElementKind.INTERFACE) {
+                valid &= checkNotRuntimeOnly(m);
+            }
+            if (m.getEnclosingElement().getKind() != ElementKind.INTERFACE || ! m.getModifiers().contains(Modifier.ABSTRACT)) {
+                // methods inherited from Object, default and static methods
+                continue;
+            }
+            String mName= m.getSimpleName().toString();
+            if (mName.equals("cloneBuilder")) {
+                valid &= check(m.getParameters().isEmpty(), m, "cloneBuilder is a method with 0 paramters");
+                valid &= check(isSameType(m.getReturnType(), builder.asType()), m, "cloneBuilder returns the builder");
+                hasCloneBuilder= true;
+                continue;
+            }
+            valid &= check(m.getParameters().isEmpty(), m, "getter method has 0 params " + mName);
+            TypeMirror getterType= m.getReturnType();
+            ExecutableElement setter= setters.get(mName);
+            if (setter != null && setter.getParameters().size() == 1) {
+                TypeMirror setterType= setter.getParameters().get(0).asType();
+                valid &= check(isSameType(getterType, setterType), setter,
+                               String.format("Property '%s': builder setter type (%s) must match reader getter type (%s)",
+                                             mName, setterType, getterType));
+            }
+            Property property= new Property(mName, getterType);
+            valid &= check( ! Boolean.TRUE.equals(annotationValue(m, TransformBy.class, "lazy")), m,
+                            String.format("Property '%s': lazy @TransformBy is only supported by the runtime engines", mName));
+            valid &= collectTransformer(m, property);
+            valid &= collectDefault(m, property);
+            properties.put(mName, property);
+        }
+
+        if (! properties.keySet().equals(setters.keySet())) {
+            error(reader, "Reader properties match builder properties: reader has " + properties.keySet()
+                          + ", builder " + builder.getSimpleName() + " has " + setters.keySet());
+            valid= false;
+        }
+        return valid ? new PairModel(reader, builder, hasCloneBuilder, new ArrayList<>(properties.values()), doneAsync) : null;
+    }
+
+    /**
+     * @return false, reporting it, if the element has an annotation the generated code does not implement
+     */
+    private boolean checkNotRuntimeOnly(Element element)
+    {
+        boolean valid= true;
+        for (Class<?> annotationType: RUNTIME_ONLY) {
+            valid &= check( ! hasAnnotation(element, annotationType), element,
+                            "@" + annotationType.getSimpleName() + " is only supported by the runtime engines, remove @ConfigPair");
+        }
+        return valid;
+    }
+
+    /**
+     * @return false if the function cannot be instantiated by the runtime, which validates the pair too
+     */
+    private boolean collectTransformer(ExecutableElement getter, Property property)
+    {
+        TypeElement transformer= asTypeElement(annotationValue(getter, TransformBy.class, "_fun"));
+        if (transformer == null) {
+            return true;
+        }
+        property.transformer= transformer.getQualifiedName().toString();
+        boolean publicConstructor= false;
+        for (ExecutableElement constructor: ElementFilter.constructorsIn(transformer.getEnclosedElements())) {
+            publicConstructor |= constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC);
+        }
+        return check( transformer.getModifiers().contains(Modifier.PUBLIC) && publicConstructor, getter,
+                      String.format("Property '%s': @TransformBy function %s needs to be public, with a public no-arg constructor",
+                                    property.name, property.transformer));
+    }
+
+    private boolean collectDefault(ExecutableElement getter, Property property)
+    {
+        String mName= property.name;
+        TypeMirror getterType= property.type;
+        Object defStr= annotationValue(getter, DefaultsToString.class, "val");
+        Object defInt= annotationValue(getter, DefaultsToInteger.class, "val");
+        Object defLong= annotationValue(getter, DefaultsToLong.class, "val");
+        Object defDouble= annotationValue(getter, DefaultsToDouble.class, "val");
+        Object defBool= annotationValue(getter, DefaultsToBoolean.class, "val");
+        Object defCls= annotationValue(getter, DefaultsToClass.class, "val");
+        int defCount= (defStr != null ? 1 : 0) + (defInt != null ? 1 : 0) + (defLong != null ? 1 : 0)
+                    + (defDouble != null ? 1 : 0) + (defBool != null ? 1 : 0) + (defCls != null ? 1 : 0);
+        if (! check(defCount <= 1, getter, String.format("Property '%s': at most one @DefaultsTo* annotation allowed", mName))) {
+            return false;
+        }
+        if (defStr != null) {
+            property.defaultExpression= constant(defStr);
+            return check(isType(getterType, String.class), getter,
+                         String.format("Property '%s': @DefaultsToString requires String getter, got %s", mName, getterType));
+        }
+        if (defInt != null) {
+            property.defaultExpression= constant(defInt);
+            return check(isPrimitiveOrBoxed(getterType, TypeKind.INT, Integer.class), getter,
+                         String.format("Property '%s': @DefaultsToInteger requires int/Integer getter, got %s", mName, getterType));
+        }
+        if (defLong != null) {
+            property.defaultExpression= constant(defLong);
+            return check(isPrimitiveOrBoxed(getterType, TypeKind.LONG, Long.class), getter,
+                         String.format("Property '%s': @DefaultsToLong requires long/Long getter, got %s", mName, getterType));
+        }
+        if (defDouble != null) {
+            property.defaultExpression= constant(defDouble);
+            return check(isPrimitiveOrBoxed(getterType, TypeKind.DOUBLE, Double.class), getter,
+                         String.format("Property '%s': @DefaultsToDouble requires double/Double getter, got %s", mName, getterType));
+        }
+        if (defBool != null) {
+            property.defaultExpression= constant(defBool);
+            return check(isPrimitiveOrBoxed(getterType, TypeKind.BOOLEAN, Boolean.class), getter,
+                         String.format("Property '%s': @DefaultsToBoolean requires boolean/Boolean getter, got %s", mName, getterType));
+        }
+        if (defCls != null) {
+            TypeMirror defValueType= (TypeMirror) defCls;
+            // like the runtime, one instance shared by all the configurations relying on the default
+            property.defaultExpression= "DEFAULT_" + mName;
+            return check(processingEnv.getTypeUtils().isAssignable(defValueType, getterType), getter,
+                         String.format("Property '%s': @DefaultsToClass value (%s) not assignable to getter type (%s)",
+                                       mName, defValueType, getterType));
+        }
+        return true;
+    }
+
+    // ---------- code generation ----------
+
+    private void generate(PairModel pair)
+    {
+        String packageName= processingEnv.getElementUtils().getPackageOf(pair.reader).getQualifiedName().toString();
+        String binaryName= processingEnv.getElementUtils().getBinaryName(pair.reader).toString();
+        String className= binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1).replace('$', '_')
+                          + ConfigPair.GENERATED_SUFFIX;
+        String qualifiedName= packageName.isEmpty() ? className : packageName + "." + className;
+        String readerType= pair.reader.getQualifiedName().toString();
+        String builderType= pair.builder.getQualifiedName().toString();
+
+        try (Writer writer= processingEnv.getFiler().createSourceFile(qualifiedName, pair.reader).openWriter();
+             PrintWriter out= new PrintWriter(writer)) {
+            if (! packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Generated by simpleJconfig-processor from {@link " + readerType + "}, do not edit");
+            out.println(" */");
+            out.println("@SuppressWarnings(\"unchecked\")");
+            out.println("public final class " + className + " implements " + builderType + " {");
+            out.println();
+            for (Property p: pair.properties) {
+                if (p.transformer != null) {
+                    out.println("    private static final java.util.function.Function<Object,Object> TRANSFORM_" + p.name
+                                + "= new " + p.transformer + "();");
+                }
+                if (p.defaultExpression != null && p.defaultExpression.startsWith("DEFAULT_")) {
+                    TypeMirror defValueType= (TypeMirror) annotationValue(findGetter(pair, p), DefaultsToClass.class, "val");
+                    out.println("    private static final " + p.type + " DEFAULT_" + p.name + "= new " + defValueType + "();");
+                }
+            }
+            out.println();
+            for (Property p: pair.properties) {
+                out.println("    private " + p.type + " " + p.name + ";");
+                out.println("    private boolean has_" + p.name + ";");
+            }
+            out.println();
+            out.println("    public " + className + "() { }");
+
+            for (Property p: pair.properties) {
+                out.println();
+                out.println("    @Override");
+                out.println("    public " + builderType + " " + p.name + "(" + p.type + " val_) {");
+                if (p.transformer != null) {
+                    out.println("        this." + p.name + "= (" + boxedType(p.type) + ") TRANSFORM_" + p.name + ".apply(val_);");
+                }
+                else {
+                    out.println("        this." + p.name + "= val_;");
+                }
+                out.println("        this.has_" + p.name + "= true;");
+                out.println("        return this;");
+                out.println("    }");
+            }
+
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + readerType + " done() {");
+            out.println("        java.util.List<String> missing= new java.util.ArrayList<>();");
+            for (Property p: pair.properties) {
+                if (p.defaultExpression == null) {
+                    out.println("        if (! this.has_" + p.name + ") { missing.add(\"" + p.name + "\"); }");
+                }
+            }
+            out.println("        if (! missing.isEmpty()) {");
+            out.println("            throw new " + ReflectiveConfigurator.MissingPropertyException.class.getCanonicalName()
+                        + "(\"Configuration missing the following properties: \" + missing);");
+            out.println("        }");
+            out.println("        return new Reader(");
+            for (int i= 0; i < pair.properties.size(); i++) {
+                Property p= pair.properties.get(i);
+                String value= p.defaultExpression == null ? "this." + p.name
+                                                          : "this.has_" + p.name + " ? this." + p.name + " : " + p.defaultExpression;
+                out.println("            " + value + (i + 1 < pair.properties.size() ? "," : ");"));
+            }
+            if (pair.properties.isEmpty()) {
+                out.println("            );");
+            }
+            out.println("    }");
+
+            for (ExecutableElement m: pair.doneAsync) {
+                boolean withExecutor= ! m.getParameters().isEmpty();
+                out.println();
+                out.println("    @Override");
+                out.println("    public java.util.concurrent.CompletableFuture<" + readerType + "> doneAsync("
+                            + (withExecutor ? "java.util.concurrent.Executor executor_" : "") + ") {");
+                out.println("        // the transforms have run in the setters, there is nothing left to run in parallel");
+                out.println("        java.util.concurrent.CompletableFuture<" + readerType + "> result= new java.util.concurrent.CompletableFuture<>();");
+                out.println("        try {");
+                out.println("            result.complete(done());");
+                out.println("        }");
+                out.println("        catch (RuntimeException ex) {");
+                out.println("            result.completeExceptionally(ex);");
+                out.println("        }");
+                out.println("        return result;");
+                out.println("    }");
+            }
+
+            generateReader(out, pair, className, readerType, builderType);
+            out.println("}");
+        }
+        catch (IOException ex) {
+            error(pair.reader, "Cannot write " + qualifiedName + ": " + ex);
+            return;
+        }
+
+        // Class.forName in ReflectiveConfigurator needs this in a native image
+        try (Writer writer= processingEnv.getFiler()
+                                        .createResource( StandardLocation.CLASS_OUTPUT, "",
+                                                         "META-INF/native-image/simplejconfig/" + qualifiedName + "/reflect-config.json",
+                                                         pair.reader)
+                                        .openWriter()) {
+            writer.write("[ { \"name\": \"" + qualifiedName + "\", \"methods\": [ { \"name\": \"<init>\", \"parameterTypes\": [] } ] } ]\n");
+        }
+        catch (IOException ex) {
+            error(pair.reader, "Cannot write the native-image configuration of " + qualifiedName + ": " + ex);
+        }
+    }
+
+    private void generateReader(PrintWriter out, PairModel pair, String className, String readerType, String builderType)
+    {
+        List<Property> properties= pair.properties;
+        out.println();
+        StringBuilder names= new StringBuilder();
+        for (Property p: properties) {
+            names.append(", \"").append(p.name).append('"');
+        }
+        // the runtime pair, for everything but the getters
+        out.println("    private static final " + CompiledReader.Pair.class.getCanonicalName() + " PAIR= "
+                    + CompiledReader.Pair.class.getCanonicalName() + ".of(" + readerType + ".class, " + builderType + ".class" + names + ");");
+        out.println();
+        out.println("    private static final class Reader extends " + CompiledReader.class.getCanonicalName() + " implements " + readerType + " {");
+        for (Property p: properties) {
+            out.println("        private final " + p.type + " " + p.name + ";");
+        }
+        out.println();
+        StringBuilder params= new StringBuilder();
+        for (Property p: properties) {
+            if (params.length() > 0) { params.append(", "); }
+            params.append(p.type).append(' ').append(p.name).append('_');
+        }
+        out.println("        Reader(" + params + ") {");
+        out.println("            super(PAIR);");
+        for (Property p: properties) {
+            out.println("            this." + p.name + "= " + p.name + "_;");
+        }
+        out.println("        }");
+
+        for (Property p: properties) {
+            out.println();
+            out.println("        @Override");
+            out.println("        public " + p.type + " " + p.name + "() { return this." + p.name + "; }");
+        }
+
+        if (pair.hasCloneBuilder) {
+            out.println();
+            out.println("        @Override");
+            out.println("        public " + builderType + " cloneBuilder() {");
+            out.println("            " + className + " builder= new " + className + "();");
+            for (Property p: properties) {
+                out.println("            builder." + p.name + "= this." + p.name + ";");
+                out.println("            builder.has_" + p.name + "= true;");
+            }
+            out.println("            return builder;");
+            out.println("        }");
+        }
+
+        out.println();
+        out.println("        @Override");
+        out.println("        protected Object[] __valueArray() {");
+        out.print("            return new Object[] {");
+        for (int i= 0; i < properties.size(); i++) {
+            out.print((i > 0 ? ", " : " ") + "this." + properties.get(i).name);
+        }
+        out.println(" };");
+        out.println("        }");
+        out.println("    }");
+    }
+
+    private String boxedType(TypeMirror type)
+    {
+        if (! type.getKind().isPrimitive()) return type.toString();
+        return processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind()))
+                            .getQualifiedName().toString();
+    }
+
+    private ExecutableElement findGetter(PairModel pair, Property property)
+    {
+        for (ExecutableElement m: ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(pair.reader))) {
+            if (m.getSimpleName().contentEquals(property.name) && m.getParameters().isEmpty()) return m;
+        }
+        throw new IllegalStateException("No getter for " + property.name);
+    }
+
+    // ---------- helpers ----------
+
+    /**
+     * @return the value explicitly set for an annotation member, null if the annotation is absent
+     * or the member is left to its default
+     */
+    private Object annotationValue(Element element, Class<?> annotationType, String member)
+    {
+        for (AnnotationMirror mirror: element.getAnnotationMirrors()) {
+            if (! isAnnotation(mirror, annotationType)) continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e: mirror.getElementValues().entrySet()) {
+                if (e.getKey().getSimpleName().contentEquals(member)) {
+                    return e.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasAnnotation(Element element, Class<?> annotationType)
+    {
+        for (AnnotationMirror mirror: element.getAnnotationMirrors()) {
+            if (isAnnotation(mirror, annotationType)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isAnnotation(AnnotationMirror mirror, Class<?> annotationType)
+    {
+        TypeElement type= (TypeElement) mirror.getAnnotationType().asElement();
+        return type.getQualifiedName().contentEquals(annotationType.getCanonicalName());
+    }
+
+    private static TypeElement asTypeElement(Object classValue)
+    {
+        if (! (classValue instanceof DeclaredType)) return null;
+        return (TypeElement) ((DeclaredType) classValue).asElement();
+    }
+
+    private String constant(Object value)
+    {
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+    private boolean isSameType(TypeMirror t1, TypeMirror t2)
+    {
+        return processingEnv.getTypeUtils().isSameType(t1, t2);
+    }
+
+    private boolean isType(TypeMirror type, Class<?> expected)
+    {
+        TypeElement expectedElement= processingEnv.getElementUtils().getTypeElement(expected.getCanonicalName());
+        return expectedElement != null && isSameType(type, expectedElement.asType());
+    }
+
+    private boolean isPrimitiveOrBoxed(TypeMirror type, TypeKind primitive, Class<?> boxed)
+    {
+        return type.getKind() == primitive || isType(type, boxed);
+    }
+
+    private boolean check(boolean condition, Element element, String message)
+    {
+        if (! condition) { error(element, message); }
+        return condition;
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,221 @@
+package me.mywiki.configurator.processor.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import me.mywiki.configurator.ConfigCodec;
+import me.mywiki.configurator.ConfigDiff;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.MissingPropertyException;
+import me.mywiki.configurator.processor.ConfigPairProcessor;
+
+public class ConfigPairProcessorTests {
+
+    @Rule
+    public TemporaryFolder tmp= new TemporaryFolder();
+
+    private static final String VALID_PAIR=
+          "package sample;\n"
+        + "import java.util.function.Function;\n"
+        + "import me.mywiki.configurator.ReflectiveConfigurator.*;\n"
+        + "public class Outer {\n"
+        + "  @ConfigPair(builder = DbConfig.Builder.class)\n"
+        + "  public interface DbConfig {\n"
+        + "    String jdbcUrl();\n"
+        + "    @DefaultsToInteger(val = 20) int maxOpenConnections();\n"
+        + "    @TransformBy(_fun = Twice.class) String password();\n"
+        + "    Builder cloneBuilder();\n"
+        + "    interface Builder {\n"
+        + "      Builder jdbcUrl(String v);\n"
+        + "      Builder maxOpenConnections(int v);\n"
+        + "      Builder password(String v);\n"
+        + "      DbConfig done();\n"
+        + "      java.util.concurrent.CompletableFuture<DbConfig> doneAsync();\n"
+        + "    }\n"
+        + "  }\n"
+        + "  public static class Twice implements Function<Object,Object> {\n"
+        + "    public Object apply(Object t) { return t + \".\" + t; }\n"
+        + "  }\n"
+        + "}\n";
+
+    private static final String MISMATCHED_PAIR=
+          "package sample;\n"
+        + "import me.mywiki.configurator.ReflectiveConfigurator.*;\n"
+        + "@ConfigPair(builder = Mismatched.Builder.class)\n"
+        + "public interface Mismatched {\n"
+        + "  String property1();\n"
+        + "  interface Builder {\n"
+        + "    Builder property1(int v);\n"
+        + "    Mismatched done();\n"
+        + "  }\n"
+        + "}\n";
+
+    private static final String RUNTIME_ONLY_PAIR=
+          "package sample;\n"
+        + "import me.mywiki.configurator.ReflectiveConfigurator.*;\n"
+        + "@ConfigPair(builder = Canonical.Builder.class) @Interned\n"
+        + "public interface Canonical {\n"
+        + "  @TransformBy(lazy = true) String property1();\n"
+        + "  @Range(min = 1) int property2();\n"
+        + "  interface Builder {\n"
+        + "    Builder property1(String v);\n"
+        + "    Builder property2(int v);\n"
+        + "    Canonical done();\n"
+        + "  }\n"
+        + "}\n";
+
+    /**
+     * the generated builder is picked up by configBuilderFor,
+     * and behaves like the runtime implementation
+     */
+    @Test
+    public void testGeneratedPairIsPreferred() throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics= new DiagnosticCollector<>();
+        File classes= compile("sample/Outer.java", VALID_PAIR, diagnostics);
+        assertThat(diagnostics.getDiagnostics().toString(), classes != null, is(true));
+        assertTrue(new File(classes, "META-INF/native-image/simplejconfig/sample.Outer_DbConfig_GeneratedConfig/reflect-config.json").exists());
+
+        try (URLClassLoader loader= new URLClassLoader(new URL[] { classes.toURI().toURL() }, getClass().getClassLoader())) {
+            Class<?> readerClass= loader.loadClass("sample.Outer$DbConfig");
+            Class<?> builderClass= loader.loadClass("sample.Outer$DbConfig$Builder");
+            assertThat(ReflectiveConfigurator.compiledBuilderName(readerClass), is("sample.Outer_DbConfig_GeneratedConfig"));
+
+            Object builder= ReflectiveConfigurator.configBuilderFor(readerClass, builderClass);
+            assertThat(builder.getClass().getName(), is("sample.Outer_DbConfig_GeneratedConfig"));
+            call(builder, "jdbcUrl", String.class, "jdbc:h2:mem");
+            call(builder, "password", String.class, "secret");
+            Object config= call(builder, "done");
+            assertThat(call(config, "jdbcUrl"), is((Object) "jdbc:h2:mem"));
+            assertThat(call(config, "maxOpenConnections"), is((Object) 20));
+            assertThat(call(config, "password"), is((Object) "secret.secret"));
+            assertThat(config.toString(), is("{jdbcUrl=jdbc:h2:mem, maxOpenConnections=20, password=secret.secret}"));
+
+            Object async= ((java.util.concurrent.CompletableFuture<?>) call(call(config, "cloneBuilder"), "doneAsync")).get();
+            assertThat(async, is(config));
+
+            Object cloned= call(call(config, "cloneBuilder"), "done");
+            assertThat(cloned, is(config));
+            assertThat(cloned.hashCode(), is(config.hashCode()));
+            Object changed= call(call(call(config, "cloneBuilder"), "maxOpenConnections", int.class, 5), "done");
+            assertThat(call(changed, "maxOpenConnections"), is((Object) 5));
+            assertFalse(changed.equals(config));
+
+            // the compiled readers take part in the runtime protocol
+            assertThat( codec(readerClass, builderClass).toJson(config),
+                        is("{\"jdbcUrl\":\"jdbc:h2:mem\",\"maxOpenConnections\":20,\"password\":\"secret.secret\"}"));
+            assertThat(ConfigDiff.between(config, changed).changedProperties(), is(Arrays.asList("maxOpenConnections")));
+
+            Object incomplete= ReflectiveConfigurator.configBuilderFor(readerClass, builderClass);
+            try {
+                call(incomplete, "done");
+                fail("expected a MissingPropertyException");
+            }
+            catch (InvocationTargetException ex) {
+                assertThat(ex.getCause(), instanceOf(MissingPropertyException.class));
+                assertThat(ex.getCause().getMessage(), StringContains.containsString("jdbcUrl"));
+            }
+        }
+    }
+
+    /**
+     * annotations the generated code does not implement are compilation errors
+     */
+    @Test
+    public void testRuntimeOnlyAnnotationsFailCompilation() throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics= new DiagnosticCollector<>();
+        File classes= compile("sample/Canonical.java", RUNTIME_ONLY_PAIR, diagnostics);
+        assertNull(classes);
+        String messages= diagnostics.getDiagnostics().toString();
+        assertThat(messages, StringContains.containsString("@Interned is only supported by the runtime engines"));
+        assertThat(messages, StringContains.containsString("Property 'property1': lazy @TransformBy is only supported by the runtime engines"));
+        assertThat(messages, StringContains.containsString("@Range is only supported by the runtime engines"));
+    }
+
+    /**
+     * the runtime type checks are compilation errors
+     */
+    @Test
+    public void testMismatchedTypesFailCompilation() throws Exception {
+        DiagnosticCollector<JavaFileObject> diagnostics= new DiagnosticCollector<>();
+        File classes= compile("sample/Mismatched.java", MISMATCHED_PAIR, diagnostics);
+        assertNull(classes);
+        boolean reported= false;
+        for (Diagnostic<? extends JavaFileObject> d: diagnostics.getDiagnostics()) {
+            reported |= d.getKind() == Diagnostic.Kind.ERROR
+                        && d.getMessage(null).contains("builder setter type (int) must match reader getter type (java.lang.String)");
+        }
+        assertTrue(diagnostics.getDiagnostics().toString(), reported);
+    }
+
+    /**
+     * @return the output directory, null if the compilation failed
+     */
+    private File compile(String fileName, String source, DiagnosticCollector<JavaFileObject> diagnostics) throws Exception {
+        Path sources= tmp.newFolder("src").toPath();
+        File classes= tmp.newFolder("classes");
+        Path sourceFile= sources.resolve(fileName);
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler= ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager files= compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task= compiler.getTask(
+                    null, files, diagnostics,
+                    Arrays.asList("-d", classes.getPath(), "-classpath", System.getProperty("java.class.path")),
+                    null, files.getJavaFileObjects(sourceFile.toFile()));
+            task.setProcessors(Collections.singletonList(new ConfigPairProcessor()));
+            return task.call() ? classes : null;
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static ConfigCodec<Object> codec(Class<?> readerClass, Class<?> builderClass) {
+        return ConfigCodec.of((Class) readerClass, builderClass);
+    }
+
+    private static Object call(Object target, String name, Class<?> paramType, Object arg) throws Exception {
+        Method m= findInterfaceMethod(target.getClass(), name, paramType);
+        return m.invoke(target, arg);
+    }
+
+    private static Object call(Object target, String name) throws Exception {
+        return findInterfaceMethod(target.getClass(), name).invoke(target);
+    }
+
+    /** the generated reader is a private class, go through the interface it implements */
+    private static Method findInterfaceMethod(Class<?> type, String name, Class<?> ... paramTypes) throws NoSuchMethodException {
+        for (Class<?> iface: type.getInterfaces()) {
+            try {
+                return iface.getMethod(name, paramTypes);
+            }
+            catch (NoSuchMethodException ex) {
+                // try the next one
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+}
@@ -0,0 +1,128 @@
+package me.mywiki.configurator;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * <p>
+ * Base class of the readers generated at compile time by simpleJconfig-processor, not meant to be used otherwise.
+ * The generated getters read their own fields; everything else goes through the runtime pair, so that
+ * the compiled readers work with {@link ConfigCodec}, {@link ConfigSnapshot}, {@link ConfigDiff} and
+ * {@link ConfigSubscriptions}, and equals(), hashCode() and toString() behave as for the other engines:
+ * a compiled reader is equal to a proxy reader of the same pair holding the same values.
+ * </p>
+ * The generated class passes a {@link Pair} shared by all its readers, and returns its values in the order
+ * of the property names given to {@link Pair#of}
+ */
+public abstract class CompiledReader implements InternalReaderAccess {
+
+    /**
+     * The runtime pair of a generated reader class, looked up on first use: the generated class is initialized
+     * while ReflectiveConfigurator validates the pair, which must not be entered again from there
+     */
+    public static final class Pair {
+        private final Class<?> readerClass;
+        private final Class<?> builderClass;
+        private final String[] names;
+        private volatile ReflectiveBuilderImpl<?,?> impl;
+        /** the slot of each name */
+        private volatile PropertySlot[] slots;
+
+        private Pair(Class<?> readerClass_, Class<?> builderClass_, String[] names_) {
+            this.readerClass= readerClass_;
+            this.builderClass= builderClass_;
+            this.names= names_;
+        }
+
+        /**
+         * @param names the properties, in the order of {@link CompiledReader#__valueArray()}
+         */
+        public static Pair of(Class<?> readerClass, Class<?> builderClass, String ... names) {
+            return new Pair(readerClass, builderClass, names.clone());
+        }
+
+        ReflectiveBuilderImpl<?,?> impl() {
+            ReflectiveBuilderImpl<?,?> result= impl;
+            if (result == null) {
+                try {
+                    result= ReflectiveBuilderImpl.forPair(readerClass, builderClass);
+                }
+                catch (Exception ex) {
+                    if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+                    else                                { throw new RuntimeException(ex); }
+                }
+                PropertySlot[] found= new PropertySlot[names.length];
+                for (int i= 0; i < names.length; i++) {
+                    found[i]= result.property(names[i]);
+                    if (found[i] == null) {
+                        throw new IllegalStateException( "No property '" + names[i] + "' in " + readerClass.getName()
+                                                         + ", recompile " + ReflectiveConfigurator.compiledBuilderName(readerClass));
+                    }
+                }
+                slots= found;
+                impl= result;
+            }
+            return result;
+        }
+    }
+
+    private final Pair pair;
+    /** computed on first use, 0 until then */
+    private int hash;
+
+    protected CompiledReader(Pair pair_) {
+        this.pair= pair_;
+    }
+
+    /**
+     * @return the values of the reader, boxed, in the order of the names given to {@link Pair#of}
+     */
+    protected abstract Object[] __valueArray();
+
+    @Override
+    public final ReflectiveBuilderImpl<?,?> __pair() {
+        return pair.impl();
+    }
+
+    /**
+     * copies the fields into {@link SlotValues}, only used by the rarely called methods,
+     * so the reader does not keep its values twice
+     */
+    @Override
+    public final SlotValues __values() {
+        ReflectiveBuilderImpl<?,?> impl= pair.impl();
+        PropertySlot[] slots= pair.slots;
+        Object[] values= __valueArray();
+        SlotValues result= impl.emptyValues.copy();
+        for (int i= 0; i < slots.length; i++) {
+            result.set(slots[i], values[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public final boolean equals(Object other) {
+        if (other == this) return true;
+        return pair.impl().readerEquals(__values(), other);
+    }
+
+    @Override
+    public final int __hash() {
+        int h= hash;
+        if (h == 0) {
+            h= pair.impl().readerHash(__values());
+            hash= h;
+        }
+        return h;
+    }
+
+    @Override
+    public final int hashCode() {
+        return __hash();
+    }
+
+    @Override
+    public final String toString() {
+        return pair.impl().describe(__values());
+    }
+}
@@ -0,0 +1,67 @@
+package me.mywiki.configurator;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.BuilderState;
+import me.mywiki.configurator.ReflectiveConfigurator.WritePolicy;
+
+/**
+ * The values of a builder shared between threads, see {@link ReflectiveConfigurator#concurrentBuilderFor}.
+ * One atomic reference per property: setters of different properties never contend, setters of the same
+ * property are resolved by the {@link WritePolicy}. Values are kept as supplied, transforms run on done()
+ */
+final class ConcurrentBuilderState {
+
+    /** stands for a null supplied to a setter, null in {@link #values} means not set */
+    private static final Object NULL= new Object();
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    private final WritePolicy policy;
+    /** by property ordinal */
+    private final AtomicReferenceArray<Object> values;
+    /** counts the completed writes, so that {@link #snapshot()} can tell if it raced with one */
+    private final LongAdder writes= new LongAdder();
+
+    ConcurrentBuilderState(ReflectiveBuilderImpl<?,?> impl_, WritePolicy policy_) {
+        this.impl= impl_;
+        this.policy= policy_;
+        this.values= new AtomicReferenceArray<>(impl_.properties.length);
+    }
+
+    void set(PropertySlot slot, Object val) {
+        Object stored= val == null ? NULL : val;
+        if (policy == WritePolicy.FIRST_WRITER_WINS) {
+            if (! values.compareAndSet(slot.ordinal, null, stored)) return;
+        }
+        else {
+            values.set(slot.ordinal, stored);
+        }
+        writes.increment();
+    }
+
+    /**
+     * Reads all the values again if a setter completed while they were being read, so that the result
+     * holds every value set before the call, in a state the builder actually went through
+     * @return a single threaded state with the values set so far, for done() to complete
+     */
+    BuilderState snapshot() {
+        Object[] seen= new Object[values.length()];
+        long before;
+        do {
+            before= writes.sum();
+            for (int i= 0; i < seen.length; i++) {
+                seen[i]= values.get(i);
+            }
+        } while (writes.sum() != before);
+
+        BuilderState state= new BuilderState(impl);
+        for (int i= 0; i < seen.length; i++) {
+            if (seen[i] != null) {
+                state.set(impl.properties[i], seen[i] == NULL ? null : seen[i]);
+            }
+        }
+        return state;
+    }
+}
@@ -0,0 +1,380 @@
+package me.mywiki.configurator;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * Builds many configurations of one pair from rows of values, e.g. one per tenant out of a database dump,
+ * without a builder per row. The columns are the property names, given once; each row holds the values
+ * in column order, as they would be passed to the setters. A null value leaves the property unset,
+ * so that its @DefaultsTo* applies.
+ * </p>
+ * <p>
+ * Rows go straight into the value arrays of the new readers, the only allocations per row are those values
+ * and the reader itself. {@link #buildColumns(boolean, Object...)} also takes primitive column arrays,
+ * whose values are copied without boxing.
+ * </p>
+ * A row that cannot be built does not stop the batch, see {@link Result}
+ *
+ * <pre>
+ *   ConfigBatch&lt;TenantConfig&gt; batch= ConfigBatch.of(TenantConfig.class, TenantConfig.Builder.class, "tenant", "quota");
+ *   List&lt;TenantConfig&gt; tenants= batch.build(rows.iterator()).orThrow();
+ * </pre>
+ */
+public final class ConfigBatch<Reader> {
+
+    /** rows per fork-join task */
+    private static final int SPLIT_THRESHOLD= 512;
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    private final Engine engine;
+    /** the property of each column */
+    private final PropertySlot[] columns;
+    /** the setter type of each column, primitives boxed */
+    private final Class<?>[] columnTypes;
+    /** the values every row starts from: the defaults where there are any */
+    private final SlotValues template;
+
+    private ConfigBatch(ReflectiveBuilderImpl<Reader, ?> impl_, Engine engine_, String[] columnNames) {
+        this.impl= impl_;
+        this.engine= engine_;
+        this.columns= new PropertySlot[columnNames.length];
+        this.columnTypes= new Class<?>[columnNames.length];
+        BitSet covered= new BitSet(impl.properties.length);
+        for (int c= 0; c < columnNames.length; c++) {
+            PropertySlot slot= impl.property(columnNames[c]);
+            Validate.isTrue(slot != null, "No property '%s' in %s", columnNames[c], impl.readerClass.getName());
+            Validate.isTrue(! covered.get(slot.ordinal), "Property '%s' given twice", columnNames[c]);
+            covered.set(slot.ordinal);
+            columns[c]= slot;
+            columnTypes[c]= boxed(slot.type());
+        }
+        for (PropertySlot slot: impl.properties) {
+            Validate.isTrue( covered.get(slot.ordinal) || impl.defaulted.get(slot.ordinal),
+                             "No column for property '%s', which has no default", slot.name);
+        }
+        this.template= impl.defaults.copy();
+    }
+
+    public static <Reader, Builder>
+        ConfigBatch<Reader> of( Class<Reader> readerClass,
+                                Class<Builder> builderClass,
+                                String... columns)
+    {
+        return of(readerClass, builderClass, Engine.PROXY, columns);
+    }
+
+    /**
+     * @param columns the names of the properties held by the rows, in row order.
+     * Properties without a default must all be there
+     */
+    public static <Reader, Builder>
+        ConfigBatch<Reader> of( Class<Reader> readerClass,
+                                Class<Builder> builderClass,
+                                Engine engine,
+                                String... columns)
+    {
+        try {
+            return new ConfigBatch<>(ReflectiveBuilderImpl.forPair(readerClass, builderClass), engine, columns);
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+    }
+
+    /**
+     * The readers built by a batch, in row order, and the problems of the rows that could not be built
+     */
+    public static final class Result<Reader> {
+        private final List<Reader> readers;
+        private final Map<Integer, List<String>> failures;
+
+        Result(List<Reader> readers_, Map<Integer, List<String>> failures_) {
+            this.readers= Collections.unmodifiableList(readers_);
+            this.failures= Collections.unmodifiableMap(new TreeMap<>(failures_));
+        }
+
+        /** one entry per row, null for the rows listed in {@link #failures()} */
+        public List<Reader> readers() {
+            return readers;
+        }
+
+        /** the problems of each failed row, by row number (from 0) */
+        public Map<Integer, List<String>> failures() {
+            return failures;
+        }
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @return the readers, if every row was built
+         * @throws InvalidConfigurationException with the problems of all the failed rows, prefixed by their row number
+         */
+        public List<Reader> orThrow() {
+            if (failures.isEmpty()) return readers;
+            List<String> problems= new ArrayList<>();
+            for (Map.Entry<Integer, List<String>> failure: failures.entrySet()) {
+                for (String problem: failure.getValue()) {
+                    problems.add("row " + failure.getKey() + ": " + problem);
+                }
+            }
+            throw new InvalidConfigurationException(problems);
+        }
+    }
+
+    /**
+     * Builds the rows one after the other, in the calling thread
+     */
+    public Result<Reader> build(Iterator<Object[]> rows) {
+        List<Reader> readers= new ArrayList<>();
+        Map<Integer, List<String>> failures= new TreeMap<>();
+        PairMetrics recording= impl.metrics();
+        while (rows.hasNext()) {
+            Object[] row= rows.next();
+            readers.add(buildRow(readers.size(), (r, c) -> row[c], row.length, failures, recording));
+        }
+        return new Result<>(readers, failures);
+    }
+
+    /**
+     * Builds the rows of the stream, split across the common fork-join pool if the stream is parallel
+     */
+    public Result<Reader> build(Stream<Object[]> rows) {
+        if (! rows.isParallel()) {
+            return build(rows.iterator());
+        }
+        List<Object[]> all= rows.collect(Collectors.toList());
+        return buildAll(all.size(), (r, c) -> all.get(r)[c], r -> all.get(r).length, true);
+    }
+
+    /**
+     * Builds one configuration per index of the column arrays
+     * @param parallel split the rows across the common fork-join pool
+     * @param columnValues one array per column, all of the same length, primitive arrays
+     * for primitive properties without @TransformBy are copied without boxing
+     */
+    public Result<Reader> buildColumns(boolean parallel, Object... columnValues) {
+        Validate.isTrue(columnValues.length == columns.length, "Expected %d columns, got %d", columns.length, columnValues.length);
+        int count= -1;
+        for (int c= 0; c < columnValues.length; c++) {
+            Validate.isTrue(columnValues[c] != null && columnValues[c].getClass().isArray(), "Column '%s' is not an array", columns[c].name);
+            int length= Array.getLength(columnValues[c]);
+            Validate.isTrue(count < 0 || length == count, "Column '%s' has %d rows instead of %d", columns[c].name, length, count);
+            count= length;
+        }
+        return buildAll(Math.max(count, 0), new ColumnCells(columnValues), r -> columns.length, parallel);
+    }
+
+    /** the value at (row, column) of some source */
+    @FunctionalInterface
+    private interface Cells {
+        Object get(int row, int column);
+
+        /**
+         * copies the value straight into the primitive array of the property, when the source holds it unboxed
+         * @return false if the value must go through {@link #get}
+         */
+        default boolean copyUnboxed(int row, int column, PropertySlot slot, SlotValues values) {
+            return false;
+        }
+    }
+
+    private static final class ColumnCells implements Cells {
+        private final Object[] columnValues;
+
+        ColumnCells(Object[] columnValues_) {
+            this.columnValues= columnValues_;
+        }
+
+        @Override
+        public Object get(int row, int column) {
+            return Array.get(columnValues[column], row);
+        }
+
+        @Override
+        public boolean copyUnboxed(int row, int column, PropertySlot slot, SlotValues values) {
+            Object array= columnValues[column];
+            switch (slot.kind) {
+                case INT:     if (array instanceof int[])     { values.ints[slot.index]= ((int[]) array)[row]; return true; } break;
+                case LONG:    if (array instanceof long[])    { values.longs[slot.index]= ((long[]) array)[row]; return true; } break;
+                case DOUBLE:  if (array instanceof double[])  { values.doubles[slot.index]= ((double[]) array)[row]; return true; } break;
+                case BOOLEAN: if (array instanceof boolean[]) { values.booleans[slot.index]= ((boolean[]) array)[row]; return true; } break;
+                default:      break;
+            }
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowLength {
+        int of(int row);
+    }
+
+    private Result<Reader> buildAll(int count, Cells cells, RowLength rowLength, boolean parallel) {
+        Object[] readers= new Object[count];
+        Map<Integer, List<String>> failures= parallel ? new ConcurrentHashMap<>() : new TreeMap<>();
+        PairMetrics recording= impl.metrics();
+        RecursiveAction all= new RowRange(0, count, readers, cells, rowLength, failures, recording);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(all);
+        }
+        else {
+            all.invoke();
+        }
+        @SuppressWarnings("unchecked")
+        List<Reader> result= (List<Reader>) (List<?>) Arrays.asList(readers);
+        return new Result<>(result, failures);
+    }
+
+    /** the rows [from, to), split in halves until small enough */
+    private final class RowRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final Object[] readers;
+        private final Cells cells;
+        private final RowLength rowLength;
+        private final Map<Integer, List<String>> failures;
+        private final PairMetrics recording;
+
+        RowRange( int from_, int to_, Object[] readers_, Cells cells_, RowLength rowLength_,
+                  Map<Integer, List<String>> failures_, PairMetrics recording_)
+        {
+            this.from= from_;
+            this.to= to_;
+            this.readers= readers_;
+            this.cells= cells_;
+            this.rowLength= rowLength_;
+            this.failures= failures_;
+            this.recording= recording_;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD && getPool() != null) {
+                int middle= (from + to) >>> 1;
+                invokeAll( new RowRange(from, middle, readers, cells, rowLength, failures, recording),
+                           new RowRange(middle, to, readers, cells, rowLength, failures, recording));
+                return;
+            }
+            for (int r= from; r < to; r++) {
+                readers[r]= buildRow(r, cells, rowLength.of(r), failures, recording);
+            }
+        }
+    }
+
+    /**
+     * @return the reader of the row, or null after adding the problems of the row to the failures
+     */
+    private Reader buildRow(int row, Cells cells, int length, Map<Integer, List<String>> failures, PairMetrics recording) {
+        long start= recording == null ? 0 : System.nanoTime();
+        if (length != columns.length) {
+            failures.put(row, Collections.singletonList("expected " + columns.length + " values, got " + length));
+            return null;
+        }
+        SlotValues values= template.copy();
+        List<String> problems= null;
+        for (int c= 0; c < columns.length; c++) {
+            PropertySlot slot= columns[c];
+            if (slot.transformer == null && cells.copyUnboxed(row, c, slot, values)) continue;
+            Object value= cells.get(row, c);
+            String problem= null;
+            if (value == null) {
+                if (! impl.defaulted.get(slot.ordinal)) { problem= slot.name + ": missing"; }
+            }
+            else if (! columnTypes[c].isInstance(value)) {
+                problem= slot.name + ": expected " + slot.type().getName() + ", got " + value.getClass().getName();
+            }
+            else if (slot.lazyTransform) {
+                values.set(slot, new MemoizedTransform(impl, slot, value));
+            }
+            else if (slot.transformer != null) {
+                try {
+                    values.set(slot, slot.storable(impl.transform(slot, value)));
+                }
+                catch (RuntimeException ex) {
+                    problem= slot.name + ": transform failed: " + ex;
+                }
+            }
+            else {
+                try {
+                    values.set(slot, slot.storable(value));
+                }
+                catch (RuntimeException ex) {
+                    // e.g. a null element of an @Indexed set
+                    problem= slot.name + ": invalid value: " + ex.getMessage();
+                }
+            }
+            if (problem != null) {
+                if (problems == null) { problems= new ArrayList<>(); }
+                problems.add(problem);
+            }
+        }
+        if (problems != null) {
+            failures.put(row, problems);
+            return null;
+        }
+        if (impl.interpolation != null) {
+            try {
+                impl.interpolation.resolve(values, null, false);
+            }
+            catch (InvalidConfigurationException ex) {
+                failures.put(row, ex.getProblems());
+                return null;
+            }
+        }
+        if (impl.constraints != null) {
+            try {
+                impl.constraints.check(values);
+            }
+            catch (InvalidConfigurationException ex) {
+                failures.put(row, ex.getProblems());
+                return null;
+            }
+        }
+        Reader reader;
+        try {
+            reader= impl.newReader(values, engine);
+        }
+        catch (RuntimeException ex) {
+            failures.put(row, Collections.singletonList("reader creation failed: " + ex));
+            return null;
+        }
+        if (recording != null) { recording.built(System.nanoTime() - start); }
+        return reader;
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (! type.isPrimitive())  return type;
+        if (type == int.class)     return Integer.class;
+        if (type == long.class)    return Long.class;
+        if (type == double.class)  return Double.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class)    return Byte.class;
+        if (type == short.class)   return Short.class;
+        if (type == char.class)    return Character.class;
+        return Float.class;
+    }
+}
@@ -0,0 +1,546 @@
+package me.mywiki.configurator;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * <p>
+ * The textual forms of the configurations of a pair: a flat JSON object, or .properties content.
+ * Properties are written in property order (sorted by name), so the output of equal configurations is identical,
+ * fit for diffing and audit logs. Values use the same textual form as {@link ReflectiveConfigurator#load},
+ * enum constant names, class names, ISO-8601 durations.
+ * </p>
+ * <p>
+ * Reading is a single pass over the input: each member goes straight to the builder values as soon as
+ * its value is read, without an intermediate map or tree. Members that are not properties are ignored,
+ * the input goes through the same checks as done(), with all the problems reported at once in an
+ * {@link InvalidConfigurationException}. Malformed input is an IllegalArgumentException.
+ * </p>
+ * null values are written as JSON null, and left out of .properties content. Pairs with @OffHeap properties
+ * have no textual form
+ *
+ * <pre>
+ *   ConfigCodec&lt;MyDbConfig&gt; codec= ConfigCodec.of(MyDbConfig.class, MyDbConfigBuilder.class);
+ *   codec.writeJson(dbConfig, auditWriter);
+ *   MyDbConfig copy= codec.readJson(socketReader);
+ * </pre>
+ */
+public final class ConfigCodec<Reader> {
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    private final Engine engine;
+    /** by property ordinal, the quoted name and colon */
+    private final String[] jsonKeys;
+    /** by property ordinal, numbers and booleans are written without quotes */
+    private final boolean[] bare;
+
+    ConfigCodec(ReflectiveBuilderImpl<Reader, ?> impl_, Engine engine_) {
+        this.impl= impl_;
+        this.engine= engine_;
+        this.jsonKeys= new String[impl.properties.length];
+        this.bare= new boolean[impl.properties.length];
+        for (PropertySlot slot: impl.properties) {
+            Validate.isTrue(slot.offHeap == null, "Property '%s': @OffHeap properties have no textual form", slot.name);
+            jsonKeys[slot.ordinal]= "\"" + slot.name + "\":";
+            Class<?> type= slot.type();
+            bare[slot.ordinal]= (type.isPrimitive() && type != char.class)
+                                || Number.class.isAssignableFrom(type) || type == Boolean.class;
+        }
+    }
+
+    public static <Reader, Builder>
+        ConfigCodec<Reader> of( Class<Reader> readerClass,
+                                Class<Builder> builderClass)
+    {
+        return of(readerClass, builderClass, Engine.PROXY);
+    }
+
+    /**
+     * @param engine used for the readers read
+     * @throws IllegalArgumentException if the pair has @OffHeap properties
+     */
+    public static <Reader, Builder>
+        ConfigCodec<Reader> of( Class<Reader> readerClass,
+                                Class<Builder> builderClass,
+                                Engine engine)
+    {
+        try {
+            return new ConfigCodec<>(ReflectiveBuilderImpl.forPair(readerClass, builderClass), engine);
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+    }
+
+    // ---------- writing ----------
+
+    public void writeJson(Reader reader, Appendable out) throws IOException
+    {
+        ValueStore values= valuesOf(reader);
+        out.append('{');
+        for (PropertySlot slot: impl.properties) {
+            if (slot.ordinal > 0) { out.append(','); }
+            out.append(jsonKeys[slot.ordinal]);
+            Object value= values.get(slot);
+            if (value == null) {
+                out.append("null");
+                continue;
+            }
+            String text= slot.formatter.apply(value);
+            if (bare[slot.ordinal] && isFinite(value)) {
+                out.append(text);
+            }
+            else {
+                appendJsonString(text, out);
+            }
+        }
+        out.append('}');
+    }
+
+    /**
+     * writes the UTF-8 encoded JSON at the position of the buffer
+     * @throws java.nio.BufferOverflowException if the buffer is too small
+     */
+    public void writeJson(Reader reader, ByteBuffer out)
+    {
+        try {
+            writeJson(reader, new Utf8Sink(out));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public String toJson(Reader reader)
+    {
+        StringBuilder result= new StringBuilder(32 * impl.properties.length);
+        try {
+            writeJson(reader, result);
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return result.toString();
+    }
+
+    /**
+     * writes one line per non null property, escaped like Properties.store() does, so the output is plain ASCII
+     */
+    public void writeProperties(Reader reader, Appendable out) throws IOException
+    {
+        ValueStore values= valuesOf(reader);
+        for (PropertySlot slot: impl.properties) {
+            Object value= values.get(slot);
+            if (value == null) continue;
+            out.append(slot.name).append('=');
+            appendPropertiesValue(slot.formatter.apply(value), out);
+            out.append('\n');
+        }
+    }
+
+    private ValueStore valuesOf(Reader reader)
+    {
+        Validate.isTrue( reader instanceof InternalReaderAccess && ((InternalReaderAccess) reader).__pair() == impl,
+                         "Not a reader of %s built by ReflectiveConfigurator", impl.readerClass.getName());
+        return ((InternalReaderAccess) reader).__values();
+    }
+
+    private static boolean isFinite(Object value)
+    {
+        if (value instanceof Double) return ! ((Double) value).isNaN() && ! ((Double) value).isInfinite();
+        if (value instanceof Float)  return ! ((Float) value).isNaN() && ! ((Float) value).isInfinite();
+        return true;
+    }
+
+    private static void appendJsonString(String text, Appendable out) throws IOException
+    {
+        out.append('"');
+        int start= 0;
+        for (int i= 0; i < text.length(); i++) {
+            char c= text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') continue;
+            out.append(text, start, i);
+            start= i + 1;
+            switch (c) {
+                case '"':  out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:   appendUnicodeEscape(c, out);
+            }
+        }
+        out.append(text, start, text.length()).append('"');
+    }
+
+    private static void appendPropertiesValue(String text, Appendable out) throws IOException
+    {
+        for (int i= 0; i < text.length(); i++) {
+            char c= text.charAt(i);
+            switch (c) {
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case '\f': out.append("\\f"); break;
+                case '=': case ':': case '#': case '!':
+                    out.append('\\').append(c); break;
+                case ' ':
+                    // only leading spaces would be lost
+                    if (i == 0) { out.append('\\'); }
+                    out.append(c);
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e) { appendUnicodeEscape(c, out); }
+                    else                      { out.append(c); }
+            }
+        }
+    }
+
+    private static void appendUnicodeEscape(char c, Appendable out) throws IOException
+    {
+        out.append("\\u");
+        for (int shift= 12; shift >= 0; shift-= 4) {
+            out.append(Character.forDigit((c >> shift) & 0xF, 16));
+        }
+    }
+
+    /** UTF-8 encoding straight into a buffer */
+    private static final class Utf8Sink implements Appendable {
+        private final ByteBuffer out;
+
+        Utf8Sink(ByteBuffer out_) {
+            this.out= out_;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i= start; i < end; i++) {
+                char c= csq.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(csq.charAt(i + 1))) {
+                    int cp= Character.toCodePoint(c, csq.charAt(++i));
+                    out.put((byte) (0xF0 | (cp >> 18)))
+                       .put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                       .put((byte) (0x80 | ((cp >> 6) & 0x3F)))
+                       .put((byte) (0x80 | (cp & 0x3F)));
+                }
+                else {
+                    append(c);
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            if (c < 0x80) {
+                out.put((byte) c);
+            }
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12))).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
+            }
+            return this;
+        }
+    }
+
+    // ---------- reading ----------
+
+    /**
+     * @throws InvalidConfigurationException if the values do not make a valid configuration
+     * @throws IllegalArgumentException if the input is not a JSON object with scalar members
+     */
+    public Reader readJson(java.io.Reader in) throws IOException
+    {
+        TextAssembler assembler= new TextAssembler(impl);
+        Input input= new Input(in);
+        StringBuilder token= new StringBuilder();
+        input.expect('{');
+        if (input.peekNonBlank() == '}') {
+            input.next();
+        }
+        else {
+            while (true) {
+                input.expect('"');
+                String key= input.jsonString(token);
+                input.expect(':');
+                PropertySlot slot= impl.property(key);
+                String value= input.jsonScalar(token, key);
+                if (slot != null) {
+                    assembler.accept(slot, value);
+                }
+                int c= input.nextNonBlank();
+                if (c == '}') break;
+                if (c != ',') throw input.error("expecting ',' or '}'");
+            }
+        }
+        if (input.peekNonBlank() >= 0) throw input.error("unexpected content after the object");
+        return impl.readerClass.cast(assembler.build(engine));
+    }
+
+    public Reader readJson(CharSequence text)
+    {
+        try {
+            return readJson(new StringReader(text.toString()));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads content in the format of Properties.load(Reader): comments, key=value, key:value or key value,
+     * escapes and continuation lines
+     * @throws InvalidConfigurationException if the values do not make a valid configuration
+     * @throws IllegalArgumentException for malformed escapes
+     */
+    public Reader readProperties(java.io.Reader in) throws IOException
+    {
+        TextAssembler assembler= new TextAssembler(impl);
+        Input input= new Input(in);
+        StringBuilder token= new StringBuilder();
+        while (true) {
+            int c= input.skipPropertiesBlank();
+            if (c < 0) break;
+            if (c == '#' || c == '!') {
+                input.skipLine();
+                continue;
+            }
+            String key= input.propertiesText(token, true);
+            String value= input.propertiesText(token, false);
+            PropertySlot slot= impl.property(key);
+            if (slot != null) {
+                assembler.accept(slot, value);
+            }
+        }
+        return impl.readerClass.cast(assembler.build(engine));
+    }
+
+    public Reader readProperties(CharSequence text)
+    {
+        try {
+            return readProperties(new StringReader(text.toString()));
+        }
+        catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Buffered characters with one character lookahead, and the tokenizers of both formats
+     */
+    private static final class Input {
+        private final java.io.Reader in;
+        private final char[] buffer= new char[4096];
+        private int pos;
+        private int limit;
+        /** characters consumed before the buffer, for error messages */
+        private long offset;
+
+        Input(java.io.Reader in_) {
+            this.in= in_;
+        }
+
+        /** @return the next character, not consumed, -1 at the end */
+        int peek() throws IOException {
+            if (pos == limit) {
+                offset+= limit;
+                pos= 0;
+                limit= Math.max(in.read(buffer), 0);
+                if (limit == 0) return -1;
+            }
+            return buffer[pos];
+        }
+
+        int next() throws IOException {
+            int c= peek();
+            if (c >= 0) { pos++; }
+            return c;
+        }
+
+        int peekNonBlank() throws IOException {
+            int c;
+            while ((c= peek()) >= 0 && Character.isWhitespace(c)) { pos++; }
+            return c;
+        }
+
+        int nextNonBlank() throws IOException {
+            int c= peekNonBlank();
+            if (c >= 0) { pos++; }
+            return c;
+        }
+
+        void expect(char expected) throws IOException {
+            if (nextNonBlank() != expected) throw error("expecting '" + expected + "'");
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid input at offset " + (offset + pos) + ": " + message);
+        }
+
+        /** the rest of a JSON string, after the opening quote */
+        String jsonString(StringBuilder token) throws IOException {
+            token.setLength(0);
+            while (true) {
+                int c= next();
+                if (c < 0) throw error("unterminated string");
+                if (c == '"') return token.toString();
+                if (c != '\\') {
+                    token.append((char) c);
+                    continue;
+                }
+                int escaped= next();
+                switch (escaped) {
+                    case 'n': token.append('\n'); break;
+                    case 't': token.append('\t'); break;
+                    case 'r': token.append('\r'); break;
+                    case 'b': token.append('\b'); break;
+                    case 'f': token.append('\f'); break;
+                    case 'u': token.append(unicodeEscape()); break;
+                    case -1:  throw error("unterminated string");
+                    default:  token.append((char) escaped);
+                }
+            }
+        }
+
+        /** @return the text of the value, null for a JSON null */
+        String jsonScalar(StringBuilder token, String key) throws IOException {
+            int c= peekNonBlank();
+            if (c == '"') {
+                pos++;
+                return jsonString(token);
+            }
+            if (c == '{' || c == '[') throw error("member '" + key + "' is not a scalar");
+            token.setLength(0);
+            while ((c= peek()) >= 0 && ",}] \t\r\n".indexOf(c) < 0) {
+                token.append((char) c);
+                pos++;
+            }
+            if (token.length() == 0) throw error("missing value for '" + key + "'");
+            String literal= token.toString();
+            if (literal.equals("null")) return null;
+            if (! literal.equals("true") && ! literal.equals("false") && ! isJsonNumber(literal)) {
+                throw error("member '" + key + "': " + literal + " is not a JSON value, strings are quoted");
+            }
+            return literal;
+        }
+
+        /** @return true if text follows the JSON number grammar: -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)? */
+        private static boolean isJsonNumber(String text) {
+            int i= 0, n= text.length();
+            if (i < n && text.charAt(i) == '-') { i++; }
+            if (i < n && text.charAt(i) == '0') { i++; }
+            else {
+                int start= i;
+                while (i < n && isDigit(text.charAt(i))) { i++; }
+                if (i == start) return false;
+            }
+            if (i < n && text.charAt(i) == '.') {
+                int start= ++i;
+                while (i < n && isDigit(text.charAt(i))) { i++; }
+                if (i == start) return false;
+            }
+            if (i < n && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+                i++;
+                if (i < n && (text.charAt(i) == '+' || text.charAt(i) == '-')) { i++; }
+                int start= i;
+                while (i < n && isDigit(text.charAt(i))) { i++; }
+                if (i == start) return false;
+            }
+            return i == n;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private char unicodeEscape() throws IOException {
+            int value= 0;
+            for (int i= 0; i < 4; i++) {
+                int digit= Character.digit(next(), 16);
+                if (digit < 0) throw error("bad unicode escape");
+                value= value * 16 + digit;
+            }
+            return (char) value;
+        }
+
+        /** skips blank lines and leading blanks, @return the first character of the next line, -1 at the end */
+        int skipPropertiesBlank() throws IOException {
+            int c;
+            while ((c= peek()) == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') { pos++; }
+            return c;
+        }
+
+        void skipLine() throws IOException {
+            int c;
+            while ((c= peek()) >= 0 && c != '\n' && c != '\r') { pos++; }
+        }
+
+        /**
+         * @param key the key ends at the first unescaped separator, consumed with the blanks around it;
+         * the value at the end of the line
+         */
+        String propertiesText(StringBuilder token, boolean key) throws IOException {
+            token.setLength(0);
+            while (true) {
+                int c= peek();
+                if (c < 0 || c == '\n' || c == '\r') break;
+                pos++;
+                if (key && (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f')) {
+                    skipSeparator(c);
+                    break;
+                }
+                if (c != '\\') {
+                    token.append((char) c);
+                    continue;
+                }
+                int escaped= next();
+                switch (escaped) {
+                    case 't': token.append('\t'); break;
+                    case 'n': token.append('\n'); break;
+                    case 'r': token.append('\r'); break;
+                    case 'f': token.append('\f'); break;
+                    case 'u': token.append(unicodeEscape()); break;
+                    case -1:  break;
+                    case '\r':
+                        if (peek() == '\n') { pos++; }
+                        // fall through, continuation line
+                    case '\n':
+                        int blank;
+                        while ((blank= peek()) == ' ' || blank == '\t' || blank == '\f') { pos++; }
+                        break;
+                    default:  token.append((char) escaped);
+                }
+            }
+            return token.toString();
+        }
+
+        private void skipSeparator(int first) throws IOException {
+            boolean explicit= first == '=' || first == ':';
+            int c;
+            while (true) {
+                c= peek();
+                if (c == ' ' || c == '\t' || c == '\f') { pos++; continue; }
+                if (! explicit && (c == '=' || c == ':')) { pos++; explicit= true; continue; }
+                return;
+            }
+        }
+    }
+}
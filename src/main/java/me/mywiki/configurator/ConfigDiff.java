@@ -0,0 +1,157 @@
+package me.mywiki.configurator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * <p>
+ * The properties that differ between two readers of the same pair, compared like the readers' equals() does:
+ * lazy @TransformBy values by their input, without running the transform, and @OffHeap values without a view.
+ * Readers derived through cloneBuilder() share the values they did not change, those are not compared again:
+ * only the properties set since the values both readers share are.
+ * </p>
+ * <pre>
+ *   ConfigDiff&lt;MyDbConfig&gt; diff= ConfigDiff.between(oldConfig, newConfig);
+ *   if (diff.isChanged(MyDbConfig::maxOpenConnections)) {
+ *       pool.resize(newConfig.maxOpenConnections());
+ *   }
+ * </pre>
+ */
+public final class ConfigDiff<Reader> {
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    private final Reader before;
+    private final Reader after;
+    /** by property ordinal */
+    private final BitSet changed;
+
+    private ConfigDiff(ReflectiveBuilderImpl<Reader, ?> impl_, Reader before_, Reader after_, BitSet changed_) {
+        this.impl= impl_;
+        this.before= before_;
+        this.after= after_;
+        this.changed= changed_;
+    }
+
+    /**
+     * @param before a reader built by this library
+     * @param after a reader of the same pair
+     */
+    @SuppressWarnings("unchecked")
+    public static <Reader> ConfigDiff<Reader> between(Reader before, Reader after) {
+        Validate.isTrue( before instanceof InternalReaderAccess && after instanceof InternalReaderAccess,
+                         "Only readers built by ReflectiveConfigurator can be compared");
+        ReflectiveBuilderImpl<Reader, ?> impl= (ReflectiveBuilderImpl<Reader, ?>) ((InternalReaderAccess) before).__pair();
+        Validate.isTrue( ((InternalReaderAccess) after).__pair() == impl,
+                         "Not readers of the same pair: %s, %s", before, after);
+        ValueStore beforeValues= ((InternalReaderAccess) before).__values();
+        ValueStore afterValues= ((InternalReaderAccess) after).__values();
+        BitSet changed= new BitSet(impl.properties.length);
+        if (beforeValues != afterValues) {
+            BitSet unshared= unshared(beforeValues, afterValues);
+            for (PropertySlot slot: impl.properties) {
+                if (unshared != null && ! unshared.get(slot.ordinal)) continue;
+                if (! Objects.equals(beforeValues.compared(slot), afterValues.compared(slot))) {
+                    changed.set(slot.ordinal);
+                }
+            }
+        }
+        return new ConfigDiff<>(impl, before, after, changed);
+    }
+
+    /**
+     * @return the properties set on the overlays above the nearest values both stores derive from,
+     * null if they do not derive from common values
+     */
+    private static BitSet unshared(ValueStore before, ValueStore after) {
+        ValueStore[] beforeChain= new ValueStore[before.depth() + 1];
+        ValueStore store= before;
+        for (int i= 0; i < beforeChain.length; i++) {
+            beforeChain[i]= store;
+            if (store instanceof OverlayValues) { store= ((OverlayValues) store).parent(); }
+        }
+        BitSet result= new BitSet();
+        for (store= after; ; store= ((OverlayValues) store).parent()) {
+            for (int i= 0; i < beforeChain.length; i++) {
+                if (beforeChain[i] == store) {
+                    for (int j= 0; j < i; j++) {
+                        setSlots(result, (OverlayValues) beforeChain[j]);
+                    }
+                    return result;
+                }
+            }
+            if (! (store instanceof OverlayValues)) return null;
+            setSlots(result, (OverlayValues) store);
+        }
+    }
+
+    private static void setSlots(BitSet result, OverlayValues overlay) {
+        for (PropertySlot slot: overlay.slots()) {
+            result.set(slot.ordinal);
+        }
+    }
+
+    public Reader before() {
+        return before;
+    }
+
+    public Reader after() {
+        return after;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty();
+    }
+
+    /**
+     * @return the names of the properties that changed, sorted
+     */
+    public List<String> changedProperties() {
+        List<String> result= new ArrayList<>(changed.cardinality());
+        for (int i= changed.nextSetBit(0); i >= 0; i= changed.nextSetBit(i + 1)) {
+            result.add(impl.properties[i].name);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pair has no such property
+     */
+    public boolean isChanged(String property) {
+        PropertySlot slot= impl.property(property);
+        Validate.isTrue(slot != null, "No property '%s' in %s", property, impl.readerClass.getName());
+        return changed.get(slot.ordinal);
+    }
+
+    /**
+     * @param getter a method reference to a getter of the reader, e.g. <code>MyDbConfig::maxOpenConnections</code>
+     */
+    public boolean isChanged(Function<? super Reader, ?> getter) {
+        return changed.get(impl.property(getter).ordinal);
+    }
+
+    boolean isChanged(PropertySlot slot) {
+        return changed.get(slot.ordinal);
+    }
+
+    @Override
+    public String toString() {
+        ValueStore beforeValues= ((InternalReaderAccess) before).__values();
+        ValueStore afterValues= ((InternalReaderAccess) after).__values();
+        StringBuilder result= new StringBuilder("{");
+        for (int i= changed.nextSetBit(0); i >= 0; i= changed.nextSetBit(i + 1)) {
+            PropertySlot slot= impl.properties[i];
+            if (result.length() > 1) { result.append(", "); }
+            result.append(slot.name).append(": ").append(beforeValues.get(slot)).append(" -> ").append(afterValues.get(slot));
+        }
+        return result.append('}').toString();
+    }
+}
@@ -0,0 +1,257 @@
+package me.mywiki.configurator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * Usage and cost counters, per (Reader, Builder) pair: getter reads per property, properties never read,
+ * number and duration of builds, of @TransformBy calls, and the time taken to validate the pair.
+ * </p>
+ * <p>
+ * Off by default. Readers created while metrics are disabled use the plain proxy handler, so their getters
+ * do exactly what they do without this class; readers created after {@link #enable()} count their reads
+ * in striped counters (LongAdder), and are always proxies since the generated readers have no hook to count with.
+ * </p>
+ * Each pair that records metrics is also published as an MXBean named
+ * <code>me.mywiki.configurator:type=ConfigMetrics,name="&lt;reader class&gt;",builder="&lt;builder class&gt;"</code>.
+ * Neither the MXBeans nor this class keep the pairs alive: once the classes of a pair are unloaded,
+ * e.g. on redeploy, its metrics go away and its MXBean is unregistered
+ */
+public final class ConfigMetrics {
+
+    private static volatile boolean enabled;
+
+    /** every pair that has recorded metrics, weakly referenced, guarded by itself */
+    private static final Set<PairMetrics> pairs= Collections.newSetFromMap(new WeakHashMap<>());
+    /** the MXBeans registered, guarded by {@link #pairs} */
+    private static final List<PublishedPair> published= new ArrayList<>();
+
+    private ConfigMetrics() { }
+
+    public static void enable() {
+        enabled= true;
+    }
+
+    /**
+     * stops recording for readers and builders created from now on, the counters are kept
+     */
+    public static void disable() {
+        enabled= false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The MXBean interface of a pair, see {@link Snapshot} for the meaning of each attribute
+     */
+    public static interface PairMXBean {
+        String getReaderClass();
+        String getBuilderClass();
+        Map<String, Long> getReads();
+        List<String> getNeverRead();
+        long getBuilds();
+        long getBuildNanos();
+        long getValidationNanos();
+        Map<String, Long> getTransformCalls();
+        Map<String, Long> getTransformNanos();
+    }
+
+    /**
+     * The metrics of one pair at some point in time
+     */
+    public static final class Snapshot {
+        private final String readerClass;
+        private final String builderClass;
+        private final Map<String, Long> reads;
+        private final List<String> neverRead;
+        private final long builds;
+        private final long buildNanos;
+        private final long validationNanos;
+        private final Map<String, Long> transformCalls;
+        private final Map<String, Long> transformNanos;
+
+        Snapshot(PairMXBean source) {
+            this.readerClass= source.getReaderClass();
+            this.builderClass= source.getBuilderClass();
+            this.reads= source.getReads();
+            this.neverRead= source.getNeverRead();
+            this.builds= source.getBuilds();
+            this.buildNanos= source.getBuildNanos();
+            this.validationNanos= source.getValidationNanos();
+            this.transformCalls= source.getTransformCalls();
+            this.transformNanos= source.getTransformNanos();
+        }
+
+        public String readerClass() { return readerClass; }
+
+        public String builderClass() { return builderClass; }
+
+        /** getter calls per property, on the readers created while metrics were enabled */
+        public Map<String, Long> reads() { return reads; }
+
+        /** the properties with no getter call, in property order */
+        public List<String> neverRead() { return neverRead; }
+
+        /** readers built by done(), doneAsync() and bulk loads */
+        public long builds() { return builds; }
+
+        /** total time spent in those builds, transforms included */
+        public long buildNanos() { return buildNanos; }
+
+        /** time spent checking the pair and collecting its metadata, once per pair */
+        public long validationNanos() { return validationNanos; }
+
+        /** number of @TransformBy calls per property, only the properties that have one */
+        public Map<String, Long> transformCalls() { return transformCalls; }
+
+        /** total time spent in @TransformBy calls per property */
+        public Map<String, Long> transformNanos() { return transformNanos; }
+
+        @Override
+        public String toString() {
+            return readerClass + "{reads=" + reads + ", neverRead=" + neverRead + ", builds=" + builds
+                   + ", buildNanos=" + buildNanos + ", validationNanos=" + validationNanos
+                   + ", transformCalls=" + transformCalls + ", transformNanos=" + transformNanos + "}";
+        }
+    }
+
+    /**
+     * @return the metrics of the pair, all zero if nothing has been recorded for it
+     */
+    public static Snapshot snapshot(Class<?> readerClass, Class<?> builderClass) {
+        ReflectiveBuilderImpl<?,?> impl;
+        try {
+            impl= ReflectiveBuilderImpl.forPair(readerClass, builderClass);
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+        PairMetrics metrics= impl.recordedMetrics();
+        return new Snapshot(metrics != null ? metrics : new PairMetrics(impl));
+    }
+
+    /**
+     * @return the metrics of every pair that has recorded some and is still loaded, in no particular order
+     */
+    public static List<Snapshot> snapshots() {
+        List<PairMetrics> current;
+        synchronized (pairs) {
+            current= new ArrayList<>(pairs);
+        }
+        List<Snapshot> result= new ArrayList<>();
+        for (PairMetrics metrics: current) {
+            result.add(new Snapshot(metrics));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    static void register(PairMetrics metrics) {
+        MBeanServer server= ManagementFactory.getPlatformMBeanServer();
+        synchronized (pairs) {
+            pairs.add(metrics);
+            // the MXBeans of the pairs that have been unloaded since the last registration
+            for (int i= published.size() - 1; i >= 0; i--) {
+                PublishedPair stale= published.get(i);
+                if (stale.pair.get() == null) {
+                    published.remove(i);
+                    try {
+                        server.unregisterMBean(stale.name);
+                    }
+                    catch (JMException ex) {
+                        // unregistered by someone else
+                    }
+                }
+            }
+            try {
+                PublishedPair bean= new PublishedPair(metrics);
+                if (! server.isRegistered(bean.name)) {
+                    server.registerMBean(bean, bean.name);
+                    published.add(bean);
+                }
+            }
+            catch (JMException ex) {
+                // the same pair from another class loader: the snapshot API still works
+            }
+        }
+    }
+
+    /**
+     * The MXBean of a pair, which only weakly references its metrics so that the MBean server does not
+     * keep the classes of the pair loaded; reports zeros once they are gone, until unregistered
+     */
+    private static final class PublishedPair implements PairMXBean {
+        final WeakReference<PairMetrics> pair;
+        final ObjectName name;
+        private final String readerClass;
+        private final String builderClass;
+
+        PublishedPair(PairMetrics metrics) throws JMException {
+            this.pair= new WeakReference<>(metrics);
+            this.readerClass= metrics.getReaderClass();
+            this.builderClass= metrics.getBuilderClass();
+            this.name= new ObjectName( "me.mywiki.configurator:type=ConfigMetrics,name=" + ObjectName.quote(readerClass)
+                                       + ",builder=" + ObjectName.quote(builderClass));
+        }
+
+        @Override public String getReaderClass() { return readerClass; }
+        @Override public String getBuilderClass() { return builderClass; }
+
+        @Override
+        public Map<String, Long> getReads() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? Collections.emptyMap() : metrics.getReads();
+        }
+
+        @Override
+        public List<String> getNeverRead() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? Collections.emptyList() : metrics.getNeverRead();
+        }
+
+        @Override
+        public long getBuilds() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? 0 : metrics.getBuilds();
+        }
+
+        @Override
+        public long getBuildNanos() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? 0 : metrics.getBuildNanos();
+        }
+
+        @Override
+        public long getValidationNanos() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? 0 : metrics.getValidationNanos();
+        }
+
+        @Override
+        public Map<String, Long> getTransformCalls() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? Collections.emptyMap() : metrics.getTransformCalls();
+        }
+
+        @Override
+        public Map<String, Long> getTransformNanos() {
+            PairMetrics metrics= pair.get();
+            return metrics == null ? Collections.emptyMap() : metrics.getTransformNanos();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package me.mywiki.configurator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * Overrides of a few properties of one reader for the duration of a call, seen by its getters in the calling
+ * thread, without building a new reader. Other readers of the pair, equal ones included, are not affected:
+ * </p>
+ * <pre>
+ *   ConfigOverrides&lt;MyDbConfig&gt; overrides= ConfigOverrides.of(MyDbConfig.class, MyDbConfigBuilder.class);
+ *   ConfigOverrides.Scope&lt;MyDbConfig&gt; canary= overrides.with(tenantConfig, MyDbConfig::maxOpenConnections, 2)
+ *                                                     .with(tenantConfig, MyDbConfig::url, canaryUrl);
+ *   ...
+ *   canary.run(() -&gt; handle(request));
+ * </pre>
+ * <p>
+ * A scope is immutable and meant to be prepared once, entering it costs a ThreadLocal update.
+ * Scopes nest, the inner one wins for the properties both override. The getters of the pair look the overrides
+ * up once it has a ConfigOverrides, then at the cost of a ThreadLocal read; cloneBuilder(), equals(),
+ * hashCode() and toString() keep working on the values of the reader itself, and @Interpolated properties
+ * referencing an overridden one are not expanded again.
+ * </p>
+ * Only {@link ReflectiveConfigurator.Engine#PROXY} readers can be overridden: the getters of
+ * {@link ReflectiveConfigurator.Engine#GENERATED} readers and of builders compiled by the annotation processor
+ * read their fields, build the readers to override with that engine.
+ * The scopes are bound to the thread, virtual threads included, but not inherited by the threads it starts
+ */
+public final class ConfigOverrides<Reader> {
+
+    /** marks the properties a scope does not override */
+    static final Object NONE= new Object();
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    /** 
+     * the overrides in effect in the thread, by reader handler then by property ordinal, 
+     * null outside of any scope
+     */
+    private final ThreadLocal<Map<Object, Object[]>> active= new ThreadLocal<>();
+
+    ConfigOverrides(ReflectiveBuilderImpl<Reader, ?> impl_) {
+        this.impl= impl_;
+    }
+
+    /**
+     * @return the overrides of the pair, the same instance for every call
+     */
+    public static <Reader, Builder>
+        ConfigOverrides<Reader> of( Class<Reader> readerClass,
+                                    Class<Builder> builderClass)
+    {
+        try {
+            return ReflectiveBuilderImpl.forPair(readerClass, builderClass).overrides();
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+    }
+
+    /**
+     * @param reader the reader whose getter is overridden, a {@link ReflectiveConfigurator.Engine#PROXY} reader of the pair
+     * @param getter a method reference to a getter of the reader, e.g. <code>MyDbConfig::maxOpenConnections</code>
+     * @param value the value the getter returns within the scope, transformed by the @TransformBy function of the property
+     * @return a scope overriding the property of the reader
+     * @throws IllegalArgumentException if the reader cannot be overridden, getter does not read exactly one property, 
+     * the value does not fit its type or violates its constraints, or the property is @OffHeap
+     */
+    public <V> Scope<Reader> with(Reader reader, Function<? super Reader, V> getter, V value) {
+        return new Scope<>(this, Collections.emptyMap()).with(reader, getter, value);
+    }
+
+    /** @return true within a scope overriding the reader with this handler */
+    boolean isActive(Object handler) {
+        Map<Object, Object[]> values= active.get();
+        return values != null && values.containsKey(handler);
+    }
+
+    /**
+     * @return the value of the property of the reader with this handler in the current scope, 
+     * {@link #NONE} if it is not overridden
+     */
+    Object overridden(Object handler, PropertySlot slot) {
+        Map<Object, Object[]> values= active.get();
+        if (values == null) return NONE;
+        Object[] own= values.get(handler);
+        return own == null ? NONE : own[slot.ordinal];
+    }
+
+    /**
+     * Properties of readers overridden together, immutable
+     */
+    public static final class Scope<Reader> {
+
+        private final ConfigOverrides<Reader> owner;
+        /** 
+         * by reader handler, then by property ordinal, {@link ConfigOverrides#NONE} where not overridden; 
+         * never modified
+         */
+        private final Map<Object, Object[]> values;
+
+        Scope(ConfigOverrides<Reader> owner_, Map<Object, Object[]> values_) {
+            this.owner= owner_;
+            this.values= values_;
+        }
+
+        /**
+         * @return a scope with the overrides of this one plus the property of the reader
+         * @see ConfigOverrides#with(Object, Function, Object)
+         */
+        public <V> Scope<Reader> with(Reader reader, Function<? super Reader, V> getter, V value) {
+            ReflectiveBuilderImpl<Reader, ?> impl= owner.impl;
+            Object handler= impl.overridableHandler(reader);
+            Validate.isTrue( handler != null, "Only PROXY readers of %s can be overridden, got a %s",
+                             impl.readerClass.getName(), reader == null ? null : reader.getClass().getName());
+            PropertySlot slot= impl.property(getter);
+            Validate.isTrue(slot.offHeap == null, "Property '%s': @OffHeap properties cannot be overridden", slot.name);
+            Object stored= value;
+            if (slot.transformer != null) {
+                stored= impl.transform(slot, stored);
+            }
+            Validate.isTrue( stored == null ? ! slot.type().isPrimitive() : ClassUtils.primitiveToWrapper(slot.type()).isInstance(stored),
+                             "Property '%s': %s is not a %s", slot.name, stored, slot.type().getName());
+            if (impl.constraints != null) {
+                List<String> violations= impl.constraints.violations(slot, stored);
+                Validate.isTrue(violations.isEmpty(), "Invalid override %s", violations);
+            }
+            Object[] own= values.get(handler);
+            if (own == null) {
+                own= new Object[impl.properties.length];
+                Arrays.fill(own, NONE);
+            }
+            else {
+                own= own.clone();
+            }
+            own[slot.ordinal]= slot.storable(stored);
+            Map<Object, Object[]> result= new IdentityHashMap<>(values);
+            result.put(handler, own);
+            return new Scope<>(owner, result);
+        }
+
+        /**
+         * Runs body with the overrides in effect in the current thread, on top of those of the enclosing scopes
+         */
+        public void run(Runnable body) {
+            call(() -> { body.run(); return null; });
+        }
+
+        /**
+         * @return what body returns, called with the overrides in effect in the current thread
+         */
+        public <T> T call(Supplier<T> body) {
+            Map<Object, Object[]> enclosing= owner.active.get();
+            owner.active.set(enclosing == null ? values : nested(enclosing));
+            try {
+                return body.get();
+            }
+            finally {
+                if (enclosing == null) { owner.active.remove(); }
+                else                   { owner.active.set(enclosing); }
+            }
+        }
+
+        private Map<Object, Object[]> nested(Map<Object, Object[]> enclosing) {
+            Map<Object, Object[]> result= new IdentityHashMap<>(enclosing);
+            for (Map.Entry<Object, Object[]> entry: values.entrySet()) {
+                Object[] outer= result.get(entry.getKey());
+                if (outer == null) {
+                    result.put(entry.getKey(), entry.getValue());
+                    continue;
+                }
+                Object[] merged= outer.clone();
+                Object[] inner= entry.getValue();
+                for (int i= 0; i < inner.length; i++) {
+                    if (inner[i] != NONE) { merged[i]= inner[i]; }
+                }
+                result.put(entry.getKey(), merged);
+            }
+            return result;
+        }
+    }
+}
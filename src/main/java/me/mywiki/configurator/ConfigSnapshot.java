@@ -0,0 +1,415 @@
+package me.mywiki.configurator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * <p>
+ * Binary snapshots of configurations, to skip parsing and the builder at startup.
+ * {@link #write(Object, Path)} dumps the values of a reader slot by slot, {@link #load(Class, Class, Path)}
+ * maps the file and fills the values of a new reader straight from it. The values are the ones the reader
+ * holds, i.e. after defaults, so loading does not go through the builder again.
+ * </p>
+ * <p>
+ * Transformed values are never written, they may be e.g. decrypted secrets: properties with a lazy @TransformBy
+ * are written as the value given to the setter and transformed again on first read after loading, pairs with
+ * an eager @TransformBy cannot be written. The templates of @Interpolated properties are written too, so that
+ * a builder cloned from a loaded reader expands again the properties depending on what it changes.
+ * </p>
+ * <p>
+ * String values are decoded on first access. Until then they point into the mapped file, which therefore
+ * must not be changed in place: {@link #write(Object, Path)} always writes a new file and moves it over the old one.
+ * </p>
+ * The file starts with a fingerprint of the pair (class names, property names and types),
+ * a snapshot written for another version of the interfaces is rejected with an {@link InvalidSnapshotException}.
+ *
+ * <pre>
+ *   MyDbConfig dbConfig;
+ *   try {
+ *       dbConfig= ConfigSnapshot.load(MyDbConfig.class, MyDbConfigBuilder.class, snapshotFile);
+ *   }
+ *   catch (InvalidSnapshotException | NoSuchFileException ex) {
+ *       dbConfig= parseTheSlowWay();
+ *       ConfigSnapshot.write(dbConfig, snapshotFile);
+ *   }
+ * </pre>
+ * Supported property types are the primitives, their wrappers, String and enums.
+ */
+public final class ConfigSnapshot {
+
+    private static final int   MAGIC= 0x534A4353; // "SJCS"
+    private static final short VERSION= 2;
+
+    private static final byte NULL=    0;
+    private static final byte INT=     1;
+    private static final byte LONG=    2;
+    private static final byte DOUBLE=  3;
+    private static final byte BOOLEAN= 4;
+    private static final byte STRING=  5;
+    private static final byte BYTE=    6;
+    private static final byte SHORT=   7;
+    private static final byte CHAR=    8;
+    private static final byte FLOAT=   9;
+    private static final byte ENUM=    10;
+    /** followed by the value given to the setter of a property with a lazy @TransformBy */
+    private static final byte RAW=     11;
+
+    private ConfigSnapshot() { }
+
+    /**
+     * The snapshot does not match the pair it is loaded for, or is not a snapshot at all
+     */
+    public static class InvalidSnapshotException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidSnapshotException(String message) {
+            super(message);
+        }
+
+        public InvalidSnapshotException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Writes the values of the reader to the file, replacing it
+     * @param reader a reader built by {@link ReflectiveConfigurator}
+     * @throws IllegalArgumentException if a property has a type the format does not support, or an eager @TransformBy
+     */
+    public static void write(Object reader, Path file) throws IOException
+    {
+        if (! (reader instanceof InternalReaderAccess)) {
+            throw new IllegalArgumentException("Not a reader built by ReflectiveConfigurator: " + reader.getClass().getName());
+        }
+        ReflectiveBuilderImpl<?,?> impl= ((InternalReaderAccess) reader).__pair();
+        SlotValues values= ((InternalReaderAccess) reader).__values().flat();
+        for (PropertySlot slot: impl.properties) {
+            if (slot.transformer != null && ! slot.lazyTransform) {
+                throw new IllegalArgumentException( "Property '" + slot.name + "': the results of an eager @TransformBy are not written "
+                                                    + "to snapshots, make it lazy to write the value given to the setter instead");
+            }
+        }
+
+        ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+        DataOutputStream out= new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(fingerprint(impl));
+        out.writeInt(impl.properties.length);
+        for (PropertySlot slot: impl.properties) {
+            switch (slot.kind) {
+                case INT:     out.writeByte(INT);     out.writeInt(values.ints[slot.index]); break;
+                case LONG:    out.writeByte(LONG);    out.writeLong(values.longs[slot.index]); break;
+                case DOUBLE:  out.writeByte(DOUBLE);  out.writeDouble(values.doubles[slot.index]); break;
+                case BOOLEAN: out.writeByte(BOOLEAN); out.writeBoolean(values.booleans[slot.index]); break;
+                default:      {
+                    Object value= values.refs[slot.index];
+                    if (value instanceof MemoizedTransform) {
+                        out.writeByte(RAW);
+                        writeRef(out, slot, ((MemoizedTransform) value).raw());
+                    }
+                    else {
+                        writeRef(out, slot, values.ref(slot.index));
+                    }
+                }
+            }
+        }
+        int templateCount= 0;
+        for (PropertySlot slot: impl.properties) {
+            if (values.template(slot) != null) { templateCount++; }
+        }
+        out.writeInt(templateCount);
+        for (PropertySlot slot: impl.properties) {
+            String template= values.template(slot);
+            if (template != null) {
+                out.writeInt(slot.ordinal);
+                writeString(out, template);
+            }
+        }
+        out.flush();
+
+        Path dir= file.toAbsolutePath().getParent();
+        Path tmp= Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, bytes.toByteArray());
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeRef(DataOutputStream out, PropertySlot slot, Object value) throws IOException
+    {
+        if (value == null)                   { out.writeByte(NULL); }
+        else if (value instanceof String)    { out.writeByte(STRING); writeString(out, (String) value); }
+        else if (value instanceof Integer)   { out.writeByte(INT); out.writeInt((Integer) value); }
+        else if (value instanceof Long)      { out.writeByte(LONG); out.writeLong((Long) value); }
+        else if (value instanceof Double)    { out.writeByte(DOUBLE); out.writeDouble((Double) value); }
+        else if (value instanceof Boolean)   { out.writeByte(BOOLEAN); out.writeBoolean((Boolean) value); }
+        else if (value instanceof Byte)      { out.writeByte(BYTE); out.writeByte((Byte) value); }
+        else if (value instanceof Short)     { out.writeByte(SHORT); out.writeShort((Short) value); }
+        else if (value instanceof Character) { out.writeByte(CHAR); out.writeChar((Character) value); }
+        else if (value instanceof Float)     { out.writeByte(FLOAT); out.writeFloat((Float) value); }
+        else if (value instanceof Enum)      { out.writeByte(ENUM); writeString(out, ((Enum<?>) value).name()); }
+        else {
+            throw new IllegalArgumentException( "Property '" + slot.name + "': values of type "
+                                                + value.getClass().getName() + " cannot be written to a snapshot");
+        }
+    }
+
+    /** unlike DataOutputStream.writeUTF, real UTF-8 and no 64k limit */
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] utf8= value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    public static <Reader, Builder>
+        Reader load( Class<Reader> readerClass,
+                     Class<Builder> builderClass,
+                     Path file)
+                         throws IOException
+    {
+        return load(readerClass, builderClass, Engine.PROXY, file);
+    }
+
+    /**
+     * Maps the snapshot and builds a reader out of it, without going through the builder.
+     * With {@link Engine#GENERATED} the strings are decoded right away, the generated readers keep them in fields
+     * @throws InvalidSnapshotException if the snapshot was written for a different version of the pair, or is corrupt
+     * @throws InvalidConfigurationException if the values violate the constraints of the pair, which are not part
+     * of the fingerprint and may have changed since the snapshot was written
+     */
+    public static <Reader, Builder>
+        Reader load( Class<Reader> readerClass,
+                     Class<Builder> builderClass,
+                     Engine engine,
+                     Path file)
+                         throws IOException
+    {
+        ReflectiveBuilderImpl<Reader, Builder> impl;
+        try {
+            impl= ReflectiveBuilderImpl.forPair(readerClass, builderClass);
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel= FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            mapped= channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            SlotValues values= readValues(impl, mapped, file);
+            if (impl.constraints != null) {
+                impl.constraints.check(values);
+            }
+            return impl.newReader(values, engine);
+        }
+        catch (BufferUnderflowException ex) {
+            throw new InvalidSnapshotException("Truncated snapshot " + file, ex);
+        }
+    }
+
+    private static SlotValues readValues(ReflectiveBuilderImpl<?,?> impl, ByteBuffer mapped, Path file)
+    {
+        ByteBuffer in= mapped.duplicate();
+        if (in.remaining() < 4 || in.getInt() != MAGIC) {
+            throw new InvalidSnapshotException("Not a configuration snapshot: " + file);
+        }
+        short version= in.getShort();
+        if (version != VERSION) {
+            throw new InvalidSnapshotException("Unsupported snapshot version " + version + " in " + file);
+        }
+        if (in.getLong() != fingerprint(impl) || in.getInt() != impl.properties.length) {
+            throw new InvalidSnapshotException( "Stale snapshot " + file + ", it was written for another version of "
+                                                + impl.readerClass.getName());
+        }
+
+        SlotValues values= impl.emptyValues.copy();
+        for (PropertySlot slot: impl.properties) {
+            byte tag= in.get();
+            switch (slot.kind) {
+                case INT:     expect(tag, INT, slot, file);     values.ints[slot.index]= in.getInt(); break;
+                case LONG:    expect(tag, LONG, slot, file);    values.longs[slot.index]= in.getLong(); break;
+                case DOUBLE:  expect(tag, DOUBLE, slot, file);  values.doubles[slot.index]= in.getDouble(); break;
+                case BOOLEAN: expect(tag, BOOLEAN, slot, file); values.booleans[slot.index]= in.get() != 0; break;
+                default:      {
+                    if (tag != RAW) {
+                        values.refs[slot.index]= readRef(in, mapped, tag, slot, file);
+                        break;
+                    }
+                    if (! slot.lazyTransform) throw corrupt(slot, file);
+                    Object raw= readRef(in, mapped, in.get(), slot, file);
+                    if (raw instanceof SlotValues.Lazy) { raw= ((SlotValues.Lazy) raw).resolve(); }
+                    values.refs[slot.index]= new MemoizedTransform(impl, slot, raw);
+                }
+            }
+        }
+        int templateCount= in.getInt();
+        for (int i= 0; i < templateCount; i++) {
+            int ordinal= in.getInt();
+            if (ordinal < 0 || ordinal >= impl.properties.length || impl.properties[ordinal].type() != String.class) {
+                throw new InvalidSnapshotException("Corrupt snapshot " + file + ", template of no String property");
+            }
+            int length= in.getInt();
+            if (length < 0 || length > in.remaining()) throw new BufferUnderflowException();
+            byte[] utf8= new byte[length];
+            in.get(utf8);
+            values.setTemplate(impl.properties[ordinal], new String(utf8, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static Object readRef(ByteBuffer in, ByteBuffer mapped, byte tag, PropertySlot slot, Path file)
+    {
+        Object value;
+        Class<?> valueType;
+        switch (tag) {
+            case NULL:    return null;
+            case STRING:  {
+                int length= in.getInt();
+                int offset= in.position();
+                if (length < 0 || length > in.remaining()) throw new BufferUnderflowException();
+                ((Buffer) in).position(offset + length);
+                value= new LazyString(mapped, offset, length);
+                valueType= String.class;
+                break;
+            }
+            case INT:     value= in.getInt(); valueType= Integer.class; break;
+            case LONG:    value= in.getLong(); valueType= Long.class; break;
+            case DOUBLE:  value= in.getDouble(); valueType= Double.class; break;
+            case BOOLEAN: value= in.get() != 0; valueType= Boolean.class; break;
+            case BYTE:    value= in.get(); valueType= Byte.class; break;
+            case SHORT:   value= in.getShort(); valueType= Short.class; break;
+            case CHAR:    value= in.getChar(); valueType= Character.class; break;
+            case FLOAT:   value= in.getFloat(); valueType= Float.class; break;
+            case ENUM:    {
+                valueType= slot.type();
+                if (! valueType.isEnum()) throw corrupt(slot, file);
+                int length= in.getInt();
+                if (length < 0 || length > in.remaining()) throw new BufferUnderflowException();
+                byte[] utf8= new byte[length];
+                in.get(utf8);
+                value= enumConstant(valueType, new String(utf8, StandardCharsets.UTF_8), slot, file);
+                break;
+            }
+            default:      throw corrupt(slot, file);
+        }
+        if (! boxed(slot.type()).isAssignableFrom(valueType)) throw corrupt(slot, file);
+        return value;
+    }
+
+    /** only the primitive types kept in the reference array, see {@link PropertySlot.Kind} */
+    private static Class<?> boxed(Class<?> type)
+    {
+        if (type == byte.class)  return Byte.class;
+        if (type == short.class) return Short.class;
+        if (type == char.class)  return Character.class;
+        if (type == float.class) return Float.class;
+        return type;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object enumConstant(Class<?> enumType, String name, PropertySlot slot, Path file)
+    {
+        try {
+            return Enum.valueOf((Class<? extends Enum>) enumType, name);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new InvalidSnapshotException( "Stale snapshot " + file + ", property '" + slot.name
+                                                + "': " + enumType.getName() + " has no constant " + name, ex);
+        }
+    }
+
+    private static void expect(byte tag, byte expected, PropertySlot slot, Path file)
+    {
+        if (tag != expected) throw corrupt(slot, file);
+    }
+
+    private static InvalidSnapshotException corrupt(PropertySlot slot, Path file)
+    {
+        return new InvalidSnapshotException("Corrupt snapshot " + file + " at property '" + slot.name + "'");
+    }
+
+    /**
+     * FNV-1a over everything the layout depends on: the pair and the name, type and lazy transform of each property,
+     * in slot order
+     */
+    static long fingerprint(ReflectiveBuilderImpl<?,?> impl)
+    {
+        long hash= 0xcbf29ce484222325L;
+        hash= fnv(hash, impl.readerClass.getName());
+        hash= fnv(hash, impl.builderClass.getName());
+        for (PropertySlot slot: impl.properties) {
+            hash= fnv(hash, slot.name);
+            hash= fnv(hash, slot.type().getName());
+            if (slot.lazyTransform) { hash= fnv(hash, slot.transformer.getClass().getName()); }
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, String s)
+    {
+        for (int i= 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // separator, so that ("ab","c") and ("a","bc") differ
+        hash ^= 0xff;
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * A string still in the mapped file
+     */
+    private static final class LazyString implements SlotValues.Lazy {
+        private final ByteBuffer mapped;
+        private final int offset;
+        private final int length;
+
+        LazyString(ByteBuffer mapped_, int offset_, int length_) {
+            this.mapped= mapped_;
+            this.offset= offset_;
+            this.length= length_;
+        }
+
+        @Override
+        public Object resolve() {
+            byte[] utf8= new byte[length];
+            // a private view, the shared buffer's position is never touched
+            ByteBuffer view= mapped.duplicate();
+            ((Buffer) view).position(offset);
+            view.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package me.mywiki.configurator;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * Listeners on individual properties of a configuration that gets replaced over time.
+ * Each {@link #publish(Object)} compares the new reader with the previous one, see {@link ConfigDiff},
+ * and only notifies the listeners of the properties whose value changed, so that the components
+ * depending on the other properties keep their state.
+ * </p>
+ * <pre>
+ *   ConfigSubscriptions&lt;MyDbConfig&gt; subscriptions= ConfigSubscriptions.of(MyDbConfig.class, MyDbConfigBuilder.class);
+ *   subscriptions.subscribe(MyDbConfig::maxOpenConnections, (before, after) -&gt; pool.resize(after));
+ *   ...
+ *   subscriptions.publish(newConfig);
+ * </pre>
+ * Listeners run in the thread calling publish(), one publish at a time. {@link LiveConfig#subscriptions()}
+ * publishes every configuration it reloads.
+ */
+public final class ConfigSubscriptions<Reader> {
+
+    /**
+     * Returned by the subscribe methods, close() removes the listener
+     */
+    public static interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    private final List<Listener<Reader>> listeners= new CopyOnWriteArrayList<>();
+    private volatile Reader current;
+
+    ConfigSubscriptions(ReflectiveBuilderImpl<Reader, ?> impl_) {
+        this.impl= impl_;
+    }
+
+    public static <Reader, Builder>
+        ConfigSubscriptions<Reader> of( Class<Reader> readerClass,
+                                        Class<Builder> builderClass)
+    {
+        try {
+            return new ConfigSubscriptions<>(ReflectiveBuilderImpl.forPair(readerClass, builderClass));
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+    }
+
+    /** one listener, on one property or on any change if slot is null */
+    private static final class Listener<Reader> {
+        final PropertySlot slot;
+        final Consumer<ConfigDiff<Reader>> action;
+
+        Listener(PropertySlot slot_, Consumer<ConfigDiff<Reader>> action_) {
+            this.slot= slot_;
+            this.action= action_;
+        }
+    }
+
+    /**
+     * @param getter a method reference to a getter of the reader, e.g. <code>MyDbConfig::maxOpenConnections</code>
+     * @param listener receives the previous and the new value of the property, each time it changes
+     * @throws IllegalArgumentException if getter does not read exactly one property
+     */
+    public <V> Subscription subscribe(Function<? super Reader, V> getter, BiConsumer<? super V, ? super V> listener) {
+        PropertySlot slot= impl.property(getter);
+        return add(new Listener<>(slot, diff -> listener.accept(getter.apply(diff.before()), getter.apply(diff.after()))));
+    }
+
+    /**
+     * @param listener receives the diff each time a published reader differs from the previous one
+     */
+    public Subscription subscribeAll(Consumer<ConfigDiff<Reader>> listener) {
+        return add(new Listener<>(null, listener));
+    }
+
+    private Subscription add(Listener<Reader> listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * @return the last reader published, null before the first one
+     */
+    public Reader current() {
+        return current;
+    }
+
+    /**
+     * Makes reader the current configuration and notifies the listeners of what changed.
+     * The first reader published notifies nobody, there is nothing to compare it with.
+     * A listener that throws does not keep the others from being notified, the first
+     * exception is rethrown once they all have been, the next ones added to it as suppressed
+     * @return the differences with the previous reader, null for the first one
+     */
+    public synchronized ConfigDiff<Reader> publish(Reader reader) {
+        Reader previous= current;
+        current= reader;
+        if (previous == null) {
+            return null;
+        }
+        ConfigDiff<Reader> diff= ConfigDiff.between(previous, reader);
+        if (diff.isEmpty()) {
+            return diff;
+        }
+        RuntimeException failure= null;
+        for (Listener<Reader> listener: listeners) {
+            if (listener.slot != null && ! diff.isChanged(listener.slot)) continue;
+            try {
+                listener.action.accept(diff);
+            }
+            catch (RuntimeException ex) {
+                if (failure == null) { failure= ex; }
+                else                 { failure.addSuppressed(ex); }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return diff;
+    }
+}
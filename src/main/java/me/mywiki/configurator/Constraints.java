@@ -0,0 +1,182 @@
+package me.mywiki.configurator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.NotEmpty;
+import me.mywiki.configurator.ReflectiveConfigurator.Pattern;
+import me.mywiki.configurator.ReflectiveConfigurator.Range;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ValidateBy;
+
+/**
+ * <p>
+ * The constraint annotations of a pair, @Range, @Pattern, @NotEmpty and @ValidateBy, turned once into a
+ * list of checks per property: patterns are compiled and validators instantiated when the pair is validated.
+ * </p>
+ * done() runs the checks of every property in one pass over the values, after defaults, transforms and
+ * interpolation, and reports all the violations together; a reader cloned through cloneBuilder() only
+ * checks the properties set on the clone, the others have been checked already
+ */
+final class Constraints {
+
+    /**
+     * One rule on the value of a property
+     */
+    private interface Check {
+        /** @return the description of the violation, null if the value is fine */
+        String violation(Object value);
+    }
+
+    /** by property ordinal, null for the properties without constraints */
+    private final Check[][] checks;
+    /** the constrained properties, in property order */
+    private final PropertySlot[] slots;
+
+    private Constraints(Check[][] checks_, PropertySlot[] slots_) {
+        this.checks= checks_;
+        this.slots= slots_;
+    }
+
+    /**
+     * @return the constraints of the pair, null if it has none
+     * @throws IllegalArgumentException for constraints that do not apply to the type of their property, invalid patterns,
+     * validators that cannot be instantiated, and constrained properties with a lazy @TransformBy
+     */
+    static Constraints forPair(ReflectiveBuilderImpl<?,?> impl) throws Exception
+    {
+        Check[][] checks= new Check[impl.properties.length][];
+        List<PropertySlot> slots= new ArrayList<>();
+        for (PropertySlot slot: impl.properties) {
+            List<Check> own= new ArrayList<>();
+            Class<?> type= ClassUtils.primitiveToWrapper(slot.type());
+
+            NotEmpty notEmpty= slot.getter.getDeclaredAnnotation(NotEmpty.class);
+            if (notEmpty != null) {
+                Validate.isTrue( type == String.class || Collection.class.isAssignableFrom(type)
+                                 || Map.class.isAssignableFrom(type),
+                                 "Property '%s': @NotEmpty requires a String, Collection or Map property, got %s", slot.name, type.getName());
+                own.add(value -> value == null                                               ? "null"
+                               : (value instanceof String && ((String) value).isEmpty())
+                                 || (value instanceof Collection && ((Collection<?>) value).isEmpty())
+                                 || (value instanceof Map && ((Map<?,?>) value).isEmpty())    ? "empty"
+                               : null);
+            }
+            Range range= slot.getter.getDeclaredAnnotation(Range.class);
+            if (range != null) {
+                Validate.isTrue( Number.class.isAssignableFrom(type),
+                                 "Property '%s': @Range requires a numeric property, got %s", slot.name, type.getName());
+                Validate.isTrue(range.min() <= range.max(), "Property '%s': @Range min is above max", slot.name);
+                double min= range.min(), max= range.max();
+                String bounds= "[" + format(min) + ", " + format(max) + "]";
+                own.add(value -> {
+                    if (value == null) return null;
+                    double number= ((Number) value).doubleValue();
+                    return number >= min && number <= max ? null : value + " is not in " + bounds;
+                });
+            }
+            Pattern pattern= slot.getter.getDeclaredAnnotation(Pattern.class);
+            if (pattern != null) {
+                Validate.isTrue( type == String.class,
+                                 "Property '%s': @Pattern requires a String property, got %s", slot.name, type.getName());
+                java.util.regex.Pattern compiled;
+                try {
+                    compiled= java.util.regex.Pattern.compile(pattern.regex());
+                }
+                catch (java.util.regex.PatternSyntaxException ex) {
+                    throw new IllegalArgumentException("Property '" + slot.name + "': invalid @Pattern: " + ex.getMessage(), ex);
+                }
+                own.add(value -> value == null || compiled.matcher((String) value).matches() ? null
+                               : "\"" + value + "\" does not match " + pattern.regex());
+            }
+            ValidateBy validateBy= slot.getter.getDeclaredAnnotation(ValidateBy.class);
+            if (validateBy != null) {
+                Function<Object, String> validator;
+                try {
+                    validator= validateBy.value().getDeclaredConstructor().newInstance();
+                }
+                catch (InvocationTargetException ex) {
+                    Throwable cause= ex.getCause();
+                    if (cause instanceof Exception) { throw (Exception) cause; }
+                    else                            { throw new RuntimeException(cause); }
+                }
+                own.add(validator::apply);
+            }
+
+            if (! own.isEmpty()) {
+                Validate.isTrue( ! slot.lazyTransform, "Property '%s': constraints cannot check a lazy @TransformBy", slot.name);
+                checks[slot.ordinal]= own.toArray(new Check[0]);
+                slots.add(slot);
+            }
+        }
+        return slots.isEmpty() ? null : new Constraints(checks, slots.toArray(new PropertySlot[0]));
+    }
+
+    private static String format(double bound) {
+        return bound == Math.rint(bound) && Math.abs(bound) < 1e15 ? Long.toString((long) bound) : Double.toString(bound);
+    }
+
+    /**
+     * @throws InvalidConfigurationException listing every violation, in property order
+     */
+    void check(ValueStore values)
+    {
+        List<String> problems= null;
+        for (PropertySlot slot: slots) {
+            problems= check(slot, values.get(slot), problems);
+        }
+        if (problems != null) {
+            throw new InvalidConfigurationException(problems);
+        }
+    }
+
+    /**
+     * Checks only the properties set on a clone
+     * @throws InvalidConfigurationException listing every violation, in property order
+     */
+    void check(PropertySlot[] changedSlots, Object[] changedValues, int count)
+    {
+        List<String> problems= null;
+        for (PropertySlot slot: slots) {
+            for (int i= 0; i < count; i++) {
+                if (changedSlots[i] == slot) {
+                    problems= check(slot, changedValues[i], problems);
+                    break;
+                }
+            }
+        }
+        if (problems != null) {
+            throw new InvalidConfigurationException(problems);
+        }
+    }
+
+    /**
+     * @return the violations of one value of the property, empty if there are none
+     */
+    List<String> violations(PropertySlot slot, Object value)
+    {
+        if (checks[slot.ordinal] == null) return new ArrayList<>();
+        List<String> problems= check(slot, value, null);
+        return problems == null ? new ArrayList<>() : problems;
+    }
+
+    private List<String> check(PropertySlot slot, Object value, List<String> problems)
+    {
+        for (Check check: checks[slot.ordinal]) {
+            String violation= check.violation(value);
+            if (violation != null) {
+                if (problems == null) { problems= new ArrayList<>(); }
+                problems.add(slot.name + ": " + violation);
+            }
+        }
+        return problems;
+    }
+}
@@ -0,0 +1,96 @@
+package me.mywiki.configurator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * The @Derived default methods of a reader interface. The proxy readers call the default
+ * implementation through a method handle and keep the result, one per reader, see
+ * {@link ReflectiveConfigurator.ReflectiveBuilderImpl.ConfigReaderHandler}
+ */
+final class DerivedProperties {
+
+    /** MethodHandles.privateLookupIn(Class, Lookup), null when running on Java 8 */
+    private static final Method privateLookupIn= findPrivateLookupIn();
+
+    /** position of each method in {@link #handles} */
+    private final Map<Method, Integer> indexes;
+    /** the default implementations, taking the reader as their only argument */
+    private final MethodHandle[] handles;
+
+    private DerivedProperties(Map<Method, Integer> indexes_, MethodHandle[] handles_) {
+        this.indexes= indexes_;
+        this.handles= handles_;
+    }
+
+    /**
+     * @param methods the @Derived methods of the reader interface
+     * @return null if there are none
+     * @throws IllegalArgumentException for methods that are not default methods without parameters returning a value
+     */
+    static DerivedProperties forPair(List<Method> methods)
+    {
+        if (methods.isEmpty()) {
+            return null;
+        }
+        Map<Method, Integer> indexes= new HashMap<>();
+        MethodHandle[] handles= new MethodHandle[methods.size()];
+        for (Method m: methods) {
+            Validate.isTrue( m.isDefault() && m.getParameterCount() == 0 && m.getReturnType() != void.class,
+                             "@Derived %s must be a default method with no parameter returning a value", m.getName());
+            try {
+                handles[indexes.size()]= lookupIn(m.getDeclaringClass()).unreflectSpecial(m, m.getDeclaringClass());
+            }
+            catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException("@Derived " + m.getName() + " cannot be called: " + ex, ex);
+            }
+            indexes.put(m, indexes.size());
+        }
+        return new DerivedProperties(indexes, handles);
+    }
+
+    /** @return the position of the method, null if it is not @Derived */
+    Integer index(Method m) {
+        return indexes.get(m);
+    }
+
+    int size() {
+        return handles.length;
+    }
+
+    /** runs the default implementation of the method at index on the reader */
+    Object compute(int index, Object reader) throws Throwable {
+        return handles[index].invoke(reader);
+    }
+
+    /**
+     * @return a lookup with private access to the interface, which unreflectSpecial() requires
+     */
+    private static MethodHandles.Lookup lookupIn(Class<?> type) throws ReflectiveOperationException
+    {
+        if (privateLookupIn != null) {
+            return (MethodHandles.Lookup) privateLookupIn.invoke(null, type, MethodHandles.lookup());
+        }
+        // Java 8 has no public way to get one
+        Constructor<MethodHandles.Lookup> constructor= MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(type, MethodHandles.Lookup.PRIVATE);
+    }
+
+    private static Method findPrivateLookupIn()
+    {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        }
+        catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
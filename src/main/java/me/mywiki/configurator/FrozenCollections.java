@@ -0,0 +1,568 @@
+package me.mywiki.configurator;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * <p>
+ * The immutable copies the values of @Indexed properties are frozen into, laid out for lookups
+ * by the type of their elements:
+ * </p>
+ * <ul>
+ * <li>sets of one enum type: a bit set over the ordinals</li>
+ * <li>sets of Integer or of Long: a sorted long[], contains() is a binary search</li>
+ * <li>other sets and maps: open addressing over an int[] of positions in the element arrays,
+ *     which keep the iteration order of the collection given to the setter</li>
+ * <li>maps keyed by one enum type: the values in an array by ordinal</li>
+ * <li>lists of Integer or of Long: a primitive array, other lists an Object[]</li>
+ * </ul>
+ * All of them compute their hash code when frozen, readers holding them hash without walking the elements
+ */
+final class FrozenCollections {
+
+    private FrozenCollections() { }
+
+    /** implemented by the frozen collections, so that freezing one again is a no-op */
+    private interface Frozen { }
+
+    /**
+     * @return an immutable copy of the List, Set or Map given to the setter of the property, null for null
+     * @throws IllegalArgumentException for null set elements or map keys
+     */
+    static Object freeze(PropertySlot slot, Object value)
+    {
+        if (value == null || value instanceof Frozen) return value;
+        if (slot.type() == Set.class)  return freezeSet(slot, (Set<?>) value);
+        if (slot.type() == List.class) return freezeList((List<?>) value);
+        return freezeMap(slot, (Map<?,?>) value);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Set<?> freezeSet(PropertySlot slot, Set<?> set)
+    {
+        Object[] elements= set.toArray();
+        for (Object e: elements) {
+            Validate.isTrue(e != null, "Property '%s': @Indexed sets cannot contain null", slot.name);
+        }
+        Class<?> common= commonType(elements);
+        if (common != null && common.isEnum()) return new EnumBitSet(common, elements);
+        if (common == Integer.class || common == Long.class) return new SortedNumberSet(common, elements);
+        return new HashIndexSet<>(elements);
+    }
+
+    private static List<?> freezeList(List<?> list)
+    {
+        Object[] elements= list.toArray();
+        Class<?> common= commonType(elements);
+        if (common == Integer.class) {
+            int[] ints= new int[elements.length];
+            for (int i= 0; i < ints.length; i++) { ints[i]= (Integer) elements[i]; }
+            return new IntList(ints);
+        }
+        if (common == Long.class) {
+            long[] longs= new long[elements.length];
+            for (int i= 0; i < longs.length; i++) { longs[i]= (Long) elements[i]; }
+            return new LongList(longs);
+        }
+        return new ObjectList(elements);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Map<?,?> freezeMap(PropertySlot slot, Map<?,?> map)
+    {
+        Object[] keys= new Object[map.size()];
+        Object[] values= new Object[keys.length];
+        int n= 0;
+        for (Map.Entry<?,?> entry: map.entrySet()) {
+            Validate.isTrue(entry.getKey() != null, "Property '%s': @Indexed maps cannot have a null key", slot.name);
+            keys[n]= entry.getKey();
+            values[n++]= entry.getValue();
+        }
+        Class<?> common= commonType(keys);
+        if (common != null && common.isEnum()) return new EnumKeyMap(common, keys, values);
+        return new HashIndexMap<>(keys, values);
+    }
+
+    /**
+     * @return the class all the elements share, enums counted by their declaring class;
+     * null if they do not share one or there are none
+     */
+    private static Class<?> commonType(Object[] elements)
+    {
+        Class<?> result= null;
+        for (Object e: elements) {
+            if (e == null) return null;
+            Class<?> type= e instanceof Enum ? ((Enum<?>) e).getDeclaringClass() : e.getClass();
+            if (result == null)      { result= type; }
+            else if (result != type) { return null; }
+        }
+        return result;
+    }
+
+    /**
+     * @return the open addressing table of the elements: power of two sized, at most half full,
+     * each used entry the position of an element plus one
+     */
+    private static int[] hashTable(Object[] elements)
+    {
+        int[] table= new int[Integer.highestOneBit(Math.max(2, elements.length * 2 - 1)) << 1];
+        int mask= table.length - 1;
+        for (int i= 0; i < elements.length; i++) {
+            int slot= spread(elements[i].hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot= (slot + 1) & mask;
+            }
+            table[slot]= i + 1;
+        }
+        return table;
+    }
+
+    /** @return the position of the element in elements, -1 if it is not there */
+    private static int find(int[] table, Object[] elements, Object element)
+    {
+        if (element == null) return -1;
+        int mask= table.length - 1;
+        int slot= spread(element.hashCode()) & mask;
+        int position;
+        while ((position= table[slot]) != 0) {
+            if (elements[position - 1].equals(element)) return position - 1;
+            slot= (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** iterates an array, the iterator of most of the frozen collections */
+    private static final class ArrayIterator<E> implements Iterator<E> {
+        private final Object[] elements;
+        private int next;
+
+        ArrayIterator(Object[] elements_) {
+            this.elements= elements_;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < elements.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (next == elements.length) throw new NoSuchElementException();
+            return (E) elements[next++];
+        }
+    }
+
+    private static final class HashIndexSet<E> extends AbstractSet<E> implements Frozen {
+        private final Object[] elements;
+        private final int[] table;
+        private final int hash;
+
+        HashIndexSet(Object[] elements_) {
+            this.elements= elements_;
+            this.table= hashTable(elements_);
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return find(table, elements, o) >= 0;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new ArrayIterator<>(elements);
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || (o instanceof Set && (! (o instanceof Frozen) || o.hashCode() == hash) && super.equals(o));
+        }
+    }
+
+    private static final class EnumBitSet<E extends Enum<E>> extends AbstractSet<E> implements Frozen {
+        private final Class<E> type;
+        private final long[] words;
+        private final int size;
+        private final int hash;
+
+        EnumBitSet(Class<E> type_, Object[] elements) {
+            this.type= type_;
+            this.words= new long[(type_.getEnumConstants().length + 63) >>> 6];
+            for (Object e: elements) {
+                int ordinal= ((Enum<?>) e).ordinal();
+                words[ordinal >>> 6]|= 1L << ordinal;
+            }
+            this.size= elements.length;
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (! (o instanceof Enum) || ((Enum<?>) o).getDeclaringClass() != type) return false;
+            int ordinal= ((Enum<?>) o).ordinal();
+            return (words[ordinal >>> 6] & (1L << ordinal)) != 0;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            E[] constants= type.getEnumConstants();
+            Object[] present= new Object[size];
+            int n= 0;
+            for (E constant: constants) {
+                if (contains(constant)) { present[n++]= constant; }
+            }
+            return new ArrayIterator<>(present);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof EnumBitSet) {
+                return type == ((EnumBitSet<?>) o).type && Arrays.equals(words, ((EnumBitSet<?>) o).words);
+            }
+            return super.equals(o);
+        }
+    }
+
+    /** a set of Integer or of Long, sorted */
+    private static final class SortedNumberSet extends AbstractSet<Number> implements Frozen {
+        private final Class<?> type;
+        private final long[] sorted;
+        private final int hash;
+
+        SortedNumberSet(Class<?> type_, Object[] elements) {
+            this.type= type_;
+            this.sorted= new long[elements.length];
+            for (int i= 0; i < sorted.length; i++) {
+                sorted[i]= ((Number) elements[i]).longValue();
+            }
+            Arrays.sort(sorted);
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && o.getClass() == type && Arrays.binarySearch(sorted, ((Number) o).longValue()) >= 0;
+        }
+
+        @Override
+        public Iterator<Number> iterator() {
+            return new Iterator<Number>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < sorted.length;
+                }
+
+                @Override
+                public Number next() {
+                    if (next == sorted.length) throw new NoSuchElementException();
+                    long value= sorted[next++];
+                    return type == Integer.class ? (Number) (int) value : (Number) value;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return sorted.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof SortedNumberSet) {
+                return type == ((SortedNumberSet) o).type && Arrays.equals(sorted, ((SortedNumberSet) o).sorted);
+            }
+            return super.equals(o);
+        }
+    }
+
+    private static final class HashIndexMap<K,V> extends AbstractMap<K,V> implements Frozen {
+        private final Object[] keys;
+        private final Object[] values;
+        private final int[] table;
+        private final int hash;
+
+        HashIndexMap(Object[] keys_, Object[] values_) {
+            this.keys= keys_;
+            this.values= values_;
+            this.table= hashTable(keys_);
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            int position= find(table, keys, key);
+            return position < 0 ? null : (V) values[position];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(table, keys, key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public Set<Map.Entry<K,V>> entrySet() {
+            return new EntrySet<>(keys, values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || (o instanceof Map && (! (o instanceof Frozen) || o.hashCode() == hash) && super.equals(o));
+        }
+    }
+
+    private static final class EnumKeyMap<K extends Enum<K>,V> extends AbstractMap<K,V> implements Frozen {
+        private final Class<K> type;
+        /** by ordinal */
+        private final Object[] values;
+        private final EnumBitSet<K> keySet;
+        private final int hash;
+
+        EnumKeyMap(Class<K> type_, Object[] keys, Object[] values_) {
+            this.type= type_;
+            this.values= new Object[type_.getEnumConstants().length];
+            for (int i= 0; i < keys.length; i++) {
+                values[((Enum<?>) keys[i]).ordinal()]= values_[i];
+            }
+            this.keySet= new EnumBitSet<>(type_, keys);
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            return containsKey(key) ? (V) values[((Enum<?>) key).ordinal()] : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keySet.contains(key);
+        }
+
+        @Override
+        public int size() {
+            return keySet.size();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return keySet;
+        }
+
+        @Override
+        public Set<Map.Entry<K,V>> entrySet() {
+            Object[] keys= keySet.toArray();
+            Object[] present= new Object[keys.length];
+            for (int i= 0; i < keys.length; i++) {
+                present[i]= values[((Enum<?>) keys[i]).ordinal()];
+            }
+            return new EntrySet<>(keys, present);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof EnumKeyMap) {
+                return type == ((EnumKeyMap<?,?>) o).type && keySet.equals(((EnumKeyMap<?,?>) o).keySet)
+                    && Arrays.equals(values, ((EnumKeyMap<?,?>) o).values);
+            }
+            return super.equals(o);
+        }
+    }
+
+    /** the entries of a frozen map, keys and values in parallel arrays */
+    private static final class EntrySet<K,V> extends AbstractSet<Map.Entry<K,V>> {
+        private final Object[] keys;
+        private final Object[] values;
+
+        EntrySet(Object[] keys_, Object[] values_) {
+            this.keys= keys_;
+            this.values= values_;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new Iterator<Map.Entry<K,V>>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < keys.length;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Map.Entry<K,V> next() {
+                    if (next == keys.length) throw new NoSuchElementException();
+                    int i= next++;
+                    return new AbstractMap.SimpleImmutableEntry<>((K) keys[i], (V) values[i]);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+    }
+
+    private static final class ObjectList extends AbstractList<Object> implements RandomAccess, Frozen {
+        private final Object[] elements;
+        private final int hash;
+
+        ObjectList(Object[] elements_) {
+            this.elements= elements_;
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public Object get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return elements.clone();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof ObjectList) {
+                return hash == ((ObjectList) o).hash && Arrays.equals(elements, ((ObjectList) o).elements);
+            }
+            return super.equals(o);
+        }
+    }
+
+    private static final class IntList extends AbstractList<Integer> implements RandomAccess, Frozen {
+        private final int[] elements;
+        private final int hash;
+
+        IntList(int[] elements_) {
+            this.elements= elements_;
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public Integer get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof IntList) {
+                return Arrays.equals(elements, ((IntList) o).elements);
+            }
+            return super.equals(o);
+        }
+    }
+
+    private static final class LongList extends AbstractList<Long> implements RandomAccess, Frozen {
+        private final long[] elements;
+        private final int hash;
+
+        LongList(long[] elements_) {
+            this.elements= elements_;
+            this.hash= super.hashCode();
+        }
+
+        @Override
+        public Long get(int index) {
+            return elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof LongList) {
+                return Arrays.equals(elements, ((LongList) o).elements);
+            }
+            return super.equals(o);
+        }
+    }
+}
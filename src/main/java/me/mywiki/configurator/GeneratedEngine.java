@@ -0,0 +1,640 @@
+package me.mywiki.configurator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.BuilderState;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * <p>
+ * Alternative to the java.lang.reflect.Proxy based implementation: for a (Reader, Builder) pair
+ * it generates one concrete reader class, with a final field per property and getters that just
+ * return the field, and one concrete builder class whose setters call straight into
+ * {@link GeneratedBuilder} without going through an InvocationHandler.
+ * The reader's constructor copies its fields out of the {@link SlotValues} arrays, primitive
+ * properties are never boxed on the way.
+ * </p>
+ * The classes are defined in this package through MethodHandles.Lookup.defineClass, which
+ * only exists from Java 9 onwards; on Java 8, when the pair uses types that a class in this
+ * package cannot access, or lazy transforms, {@link #generate(ReflectiveBuilderImpl)} returns null 
+ * and the caller falls back to the proxy implementation.
+ */
+class GeneratedEngine {
+
+    private static final AtomicInteger classCounter= new AtomicInteger();
+
+    /** MethodHandles.Lookup.defineClass(byte[]), null when running on Java 8 */
+    private static final Method defineClass= findDefineClass();
+
+    private static final String PACKAGE_PREFIX= GeneratedEngine.class.getPackage().getName().replace('.', '/') + "/";
+    private static final String READER_BASE= internalName(GeneratedReader.class);
+    private static final String BUILDER_BASE= internalName(GeneratedBuilder.class);
+    private static final String IMPL_DESC= descriptor(ReflectiveBuilderImpl.class);
+    private static final String STATE_DESC= descriptor(BuilderState.class);
+    private static final String VALUES= internalName(SlotValues.class);
+    private static final String VALUES_DESC= descriptor(SlotValues.class);
+    private static final String DONE_ASYNC_DESC= "(" + descriptor(Executor.class) + ")" + descriptor(CompletableFuture.class);
+
+    /**
+     * The generated classes of one pair
+     */
+    static final class Classes {
+        private final Constructor<?> builderConstructor;
+        private final Constructor<?> readerConstructor;
+
+        Classes(Constructor<?> builderConstructor_, Constructor<?> readerConstructor_) {
+            this.builderConstructor= builderConstructor_;
+            this.readerConstructor= readerConstructor_;
+        }
+
+        Object newBuilder(ReflectiveBuilderImpl<?,?> impl, BuilderState state) {
+            return newInstance(builderConstructor, impl, state);
+        }
+
+        Object newReader(ReflectiveBuilderImpl<?,?> impl, ValueStore values) {
+            // the generated constructor reads the arrays directly, into typed fields
+            return newInstance(readerConstructor, impl, values.flat().resolveAll());
+        }
+
+        private static Object newInstance(Constructor<?> constructor, Object ... args) {
+            try {
+                return constructor.newInstance(args);
+            }
+            catch (ReflectiveOperationException ex) {
+                throw new IllegalStateException("Cannot instantiate "+constructor.getDeclaringClass().getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Common part of the generated readers: everything except the getters,
+     * behaves exactly like the proxy based reader
+     */
+    abstract static class GeneratedReader implements InternalReaderAccess {
+        final ReflectiveBuilderImpl<?,?> impl;
+        /** computed on first use, 0 until then */
+        private int hash;
+
+        GeneratedReader(ReflectiveBuilderImpl<?,?> impl_) {
+            this.impl= impl_;
+        }
+
+        /** 
+         * Implemented by the generated class: copies the fields back into {@link SlotValues},
+         * only used by the rarely called methods, so the reader does not keep its values twice
+         */
+        @Override
+        public abstract SlotValues __values();
+
+        final SlotValues __newValues() {
+            return impl.emptyValues.copy();
+        }
+
+        @Override
+        public ReflectiveBuilderImpl<?,?> __pair() {
+            return impl;
+        }
+
+        final Object __cloneBuilder() {
+            return impl.generatedClasses().newBuilder(impl, new BuilderState(impl, __values()));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (other == this) return true;
+            return impl.readerEquals(__values(), other);
+        }
+
+        @Override
+        public int __hash() {
+            int h= hash;
+            if (h == 0) {
+                h= impl.readerHash(__values());
+                hash= h;
+            }
+            return h;
+        }
+
+        @Override
+        public int hashCode() {
+            return __hash();
+        }
+
+        @Override
+        public String toString() {
+            return impl.describe(__values());
+        }
+    }
+
+    /**
+     * Common part of the generated builders, the generated setters call {@link #__set(int, Object)}
+     */
+    abstract static class GeneratedBuilder {
+        final ReflectiveBuilderImpl<?,?> impl;
+        final BuilderState state;
+
+        GeneratedBuilder(ReflectiveBuilderImpl<?,?> impl_, BuilderState state_) {
+            this.impl= impl_;
+            this.state= state_;
+        }
+
+        final void __set(int ordinal, Object val) {
+            state.set(impl.properties[ordinal], val);
+        }
+
+        /** @param executor null for the common pool */
+        final CompletableFuture<?> __doneAsync(Executor executor) {
+            return impl.buildAsync(state, executor == null ? ForkJoinPool.commonPool() : executor, ReflectiveConfigurator.Engine.GENERATED);
+        }
+
+        final Object __done() {
+            return impl.buildTheReader(state, ReflectiveConfigurator.Engine.GENERATED);
+        }
+    }
+
+    /**
+     * @return the generated classes for the pair, or null if they cannot be generated in this JVM
+     */
+    static Classes generate(ReflectiveBuilderImpl<?,?> impl)
+    {
+        if (defineClass == null) return null;
+        try {
+            if (! isAccessible(impl.readerClass) || ! isAccessible(impl.builderClass)) return null;
+            // the fields have no room for the templates of the expanded values
+            if (impl.interpolation != null) return null;
+            // the generated readers would inherit the default methods, without keeping their results
+            if (impl.derived != null) return null;
+
+            Method cloneBuilder= null;
+            for (Method m: impl.readerClass.getMethods()) {
+                if (m.getName().equals("cloneBuilder")) { cloneBuilder= m; }
+                // closing needs a state the generated readers do not have
+                if (m.getName().equals("close")) return null;
+            }
+            for (PropertySlot slot: impl.properties) {
+                if (! isAccessible(slot.type())) return null;
+                // the fields would force the transform in the constructor
+                if (slot.lazyTransform) return null;
+                // a new view on every read
+                if (slot.offHeap != null) return null;
+            }
+
+            int id= classCounter.incrementAndGet();
+            String builderName= PACKAGE_PREFIX + "GeneratedBuilder$" + impl.builderClass.getSimpleName() + "$" + id;
+            String readerName= PACKAGE_PREFIX + "GeneratedReader$" + impl.readerClass.getSimpleName() + "$" + id;
+
+            byte[] builderBytes= builderClassFile(impl, builderName);
+            if (builderBytes == null) return null;
+            byte[] readerBytes= readerClassFile(impl, readerName, cloneBuilder);
+
+            Constructor<?> builderConstructor= define(builderBytes).getDeclaredConstructor(ReflectiveBuilderImpl.class, BuilderState.class);
+            Constructor<?> readerConstructor= define(readerBytes).getDeclaredConstructor(ReflectiveBuilderImpl.class, SlotValues.class);
+            builderConstructor.setAccessible(true);
+            readerConstructor.setAccessible(true);
+            return new Classes(builderConstructor, readerConstructor);
+        }
+        catch (ReflectiveOperationException | LinkageError ex) {
+            // most likely the reader or builder is not visible from this class loader
+            return null;
+        }
+    }
+
+    private static byte[] builderClassFile(ReflectiveBuilderImpl<?,?> impl, String className)
+    {
+        ClassFile cf= new ClassFile();
+
+        // constructor(ReflectiveBuilderImpl impl, BuilderState state) { super(impl, state); }
+        String ctorDesc= "(" + IMPL_DESC + STATE_DESC + ")V";
+        Code ctor= cf.method(0, "<init>", ctorDesc, 3);
+        ctor.op(ALOAD_0).op(ALOAD_1).op(ALOAD_2)
+            .op2(INVOKESPECIAL, cf.methodRef(BUILDER_BASE, "<init>", ctorDesc))
+            .op(RETURN);
+
+        Map<Method, PropertySlot> setterSlots= impl.setterSlots;
+        for (Method m: impl.builderClass.getMethods()) {
+            String mName= m.getName();
+            if (mName.equals("done") && 0 == m.getParameterCount()) {
+                // public Reader done() { return (Reader) __done(); }
+                cf.method(Modifier.PUBLIC, mName, methodDescriptor(m), 1)
+                  .op(ALOAD_0)
+                  .op2(INVOKEVIRTUAL, cf.methodRef(BUILDER_BASE, "__done", "()Ljava/lang/Object;"))
+                  .op2(CHECKCAST, cf.classRef(internalName(impl.readerClass)))
+                  .op(ARETURN);
+                continue;
+            }
+            if (mName.equals("doneAsync")) {
+                // public CompletableFuture doneAsync([Executor executor]) { return __doneAsync(executor or null); }
+                boolean withExecutor= m.getParameterCount() == 1;
+                Code doneAsync= cf.method(Modifier.PUBLIC, mName, methodDescriptor(m), withExecutor ? 2 : 1);
+                doneAsync.op(ALOAD_0)
+                         .op(withExecutor ? ALOAD_1 : ACONST_NULL)
+                         .op2(INVOKEVIRTUAL, cf.methodRef(BUILDER_BASE, "__doneAsync", DONE_ASYNC_DESC))
+                         .op(ARETURN);
+                continue;
+            }
+            PropertySlot slot= setterSlots.get(m);
+            if (slot == null) {
+                // not something the engine knows how to implement
+                return null;
+            }
+            // public Builder prop(PropType val) { __set(ordinal, box(val)); return this; }
+            Class<?> propType= m.getParameterTypes()[0];
+            Code setter= cf.method(Modifier.PUBLIC, mName, methodDescriptor(m), 1 + slotSize(propType));
+            setter.op(ALOAD_0)
+                  .pushInt(slot.ordinal)
+                  .op1(loadOpcode(propType), 1);
+            box(cf, setter, propType);
+            setter.op2(INVOKEVIRTUAL, cf.methodRef(BUILDER_BASE, "__set", "(ILjava/lang/Object;)V"))
+                  .op(ALOAD_0)
+                  .op(ARETURN);
+        }
+        return cf.toBytes(className, BUILDER_BASE, internalName(impl.builderClass));
+    }
+
+    private static byte[] readerClassFile( ReflectiveBuilderImpl<?,?> impl, String className, Method cloneBuilder)
+    {
+        ClassFile cf= new ClassFile();
+        for (PropertySlot slot: impl.properties) {
+            cf.field(Modifier.PRIVATE | Modifier.FINAL, fieldName(slot), descriptor(slot.type()));
+        }
+
+        // constructor(ReflectiveBuilderImpl impl, SlotValues values) { super(impl); p0= values.refs[0]; ... }
+        Code ctor= cf.method(0, "<init>", "(" + IMPL_DESC + VALUES_DESC + ")V", 3);
+        ctor.op(ALOAD_0).op(ALOAD_1)
+            .op2(INVOKESPECIAL, cf.methodRef(READER_BASE, "<init>", "(" + IMPL_DESC + ")V"));
+        for (PropertySlot slot: impl.properties) {
+            ctor.op(ALOAD_0).op(ALOAD_2)
+                .op2(GETFIELD, valuesArrayRef(cf, slot.kind))
+                .pushInt(slot.index)
+                .op(arrayLoadOpcode(slot.kind));
+            if (slot.kind == PropertySlot.Kind.REF) {
+                unbox(cf, ctor, slot.type());
+            }
+            ctor.op2(PUTFIELD, cf.fieldRef(className, fieldName(slot), descriptor(slot.type())));
+        }
+        ctor.op(RETURN);
+
+        // public PropType prop() { return this.p0; }
+        for (PropertySlot slot: impl.properties) {
+            Class<?> propType= slot.type();
+            cf.method(Modifier.PUBLIC, slot.name, methodDescriptor(slot.getter), 1)
+              .op(ALOAD_0)
+              .op2(GETFIELD, cf.fieldRef(className, fieldName(slot), descriptor(propType)))
+              .op(returnOpcode(propType));
+        }
+
+        // public SlotValues __values() { SlotValues values= __newValues(); values.refs[0]= p0; ...; return values; }
+        Code values= cf.method(Modifier.PUBLIC, "__values", "()" + VALUES_DESC, 2);
+        values.op(ALOAD_0)
+              .op2(INVOKEVIRTUAL, cf.methodRef(READER_BASE, "__newValues", "()" + VALUES_DESC))
+              .op(ASTORE_1);
+        for (PropertySlot slot: impl.properties) {
+            values.op(ALOAD_1)
+                  .op2(GETFIELD, valuesArrayRef(cf, slot.kind))
+                  .pushInt(slot.index)
+                  .op(ALOAD_0)
+                  .op2(GETFIELD, cf.fieldRef(className, fieldName(slot), descriptor(slot.type())));
+            if (slot.kind == PropertySlot.Kind.REF) {
+                box(cf, values, slot.type());
+            }
+            values.op(arrayStoreOpcode(slot.kind));
+        }
+        values.op(ALOAD_1).op(ARETURN);
+
+        if (cloneBuilder != null) {
+            // public Builder cloneBuilder() { return (Builder) __cloneBuilder(); }
+            cf.method(Modifier.PUBLIC, "cloneBuilder", methodDescriptor(cloneBuilder), 1)
+              .op(ALOAD_0)
+              .op2(INVOKEVIRTUAL, cf.methodRef(READER_BASE, "__cloneBuilder", "()Ljava/lang/Object;"))
+              .op2(CHECKCAST, cf.classRef(internalName(impl.builderClass)))
+              .op(ARETURN);
+        }
+        return cf.toBytes(className, READER_BASE, internalName(impl.readerClass));
+    }
+
+    private static Class<?> define(byte[] classBytes) throws ReflectiveOperationException
+    {
+        return (Class<?>) defineClass.invoke(MethodHandles.lookup(), classBytes);
+    }
+
+    private static Method findDefineClass()
+    {
+        try {
+            return MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+        }
+        catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Conservative check that a class in this package can link against the type
+     */
+    private static boolean isAccessible(Class<?> type)
+    {
+        while (type.isArray()) { type= type.getComponentType(); }
+        if (type.isPrimitive()) return true;
+        if (type.getPackage() != null && type.getPackage().equals(GeneratedEngine.class.getPackage())) {
+            return ! Modifier.isPrivate(type.getModifiers());
+        }
+        return Modifier.isPublic(type.getModifiers());
+    }
+
+    private static String fieldName(PropertySlot slot) { return "p" + slot.ordinal; }
+
+    private static int valuesArrayRef(ClassFile cf, PropertySlot.Kind kind)
+    {
+        switch (kind) {
+            case INT:     return cf.fieldRef(VALUES, "ints", "[I");
+            case LONG:    return cf.fieldRef(VALUES, "longs", "[J");
+            case DOUBLE:  return cf.fieldRef(VALUES, "doubles", "[D");
+            case BOOLEAN: return cf.fieldRef(VALUES, "booleans", "[Z");
+            default:      return cf.fieldRef(VALUES, "refs", "[Ljava/lang/Object;");
+        }
+    }
+
+    private static int arrayLoadOpcode(PropertySlot.Kind kind)
+    {
+        switch (kind) {
+            case INT:     return IALOAD;
+            case LONG:    return LALOAD;
+            case DOUBLE:  return DALOAD;
+            case BOOLEAN: return BALOAD;
+            default:      return AALOAD;
+        }
+    }
+
+    private static int arrayStoreOpcode(PropertySlot.Kind kind)
+    {
+        switch (kind) {
+            case INT:     return IASTORE;
+            case LONG:    return LASTORE;
+            case DOUBLE:  return DASTORE;
+            case BOOLEAN: return BASTORE;
+            default:      return AASTORE;
+        }
+    }
+
+    // ------- boxing and type descriptors -------
+
+    private static final Map<Class<?>, Class<?>> WRAPPERS= new HashMap<>();
+    static {
+        WRAPPERS.put(boolean.class, Boolean.class);
+        WRAPPERS.put(byte.class, Byte.class);
+        WRAPPERS.put(char.class, Character.class);
+        WRAPPERS.put(short.class, Short.class);
+        WRAPPERS.put(int.class, Integer.class);
+        WRAPPERS.put(long.class, Long.class);
+        WRAPPERS.put(float.class, Float.class);
+        WRAPPERS.put(double.class, Double.class);
+    }
+
+    private static void box(ClassFile cf, Code code, Class<?> type)
+    {
+        if (! type.isPrimitive()) return;
+        String wrapper= internalName(WRAPPERS.get(type));
+        code.op2(INVOKESTATIC, cf.methodRef(wrapper, "valueOf", "(" + descriptor(type) + ")L" + wrapper + ";"));
+    }
+
+    private static void unbox(ClassFile cf, Code code, Class<?> type)
+    {
+        if (! type.isPrimitive()) {
+            if (! type.equals(Object.class)) {
+                code.op2(CHECKCAST, cf.classRef(internalName(type)));
+            }
+            return;
+        }
+        String wrapper= internalName(WRAPPERS.get(type));
+        code.op2(CHECKCAST, cf.classRef(wrapper))
+            .op2(INVOKEVIRTUAL, cf.methodRef(wrapper, type.getName() + "Value", "()" + descriptor(type)));
+    }
+
+    private static int slotSize(Class<?> type)
+    {
+        return (type == long.class || type == double.class) ? 2 : 1;
+    }
+
+    private static int loadOpcode(Class<?> type)
+    {
+        if (type == long.class)   return LLOAD;
+        if (type == float.class)  return FLOAD;
+        if (type == double.class) return DLOAD;
+        if (type.isPrimitive())   return ILOAD;
+        return ALOAD;
+    }
+
+    private static int returnOpcode(Class<?> type)
+    {
+        if (type == long.class)   return LRETURN;
+        if (type == float.class)  return FRETURN;
+        if (type == double.class) return DRETURN;
+        if (type.isPrimitive())   return IRETURN;
+        return ARETURN;
+    }
+
+    /** class name as used by CONSTANT_Class entries, arrays use their descriptor */
+    private static String internalName(Class<?> type)
+    {
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Class<?> type)
+    {
+        if (type.isArray())        return "[" + descriptor(type.getComponentType());
+        if (! type.isPrimitive())  return "L" + internalName(type) + ";";
+        if (type == void.class)    return "V";
+        if (type == boolean.class) return "Z";
+        if (type == byte.class)    return "B";
+        if (type == char.class)    return "C";
+        if (type == short.class)   return "S";
+        if (type == int.class)     return "I";
+        if (type == long.class)    return "J";
+        if (type == float.class)   return "F";
+        return "D";
+    }
+
+    private static String methodDescriptor(Method m)
+    {
+        StringBuilder result= new StringBuilder("(");
+        for (Class<?> paramType: m.getParameterTypes()) {
+            result.append(descriptor(paramType));
+        }
+        return result.append(')').append(descriptor(m.getReturnType())).toString();
+    }
+
+    // ------- a minimal class file writer -------
+
+    private static final int ILOAD= 0x15, LLOAD= 0x16, FLOAD= 0x17, DLOAD= 0x18, ALOAD= 0x19;
+    private static final int ALOAD_0= 0x2a, ALOAD_1= 0x2b, ALOAD_2= 0x2c, ASTORE_1= 0x4c;
+    private static final int IALOAD= 0x2e, LALOAD= 0x2f, DALOAD= 0x31, AALOAD= 0x32, BALOAD= 0x33;
+    private static final int IASTORE= 0x4f, LASTORE= 0x50, DASTORE= 0x52, AASTORE= 0x53, BASTORE= 0x54;
+    private static final int ACONST_NULL= 0x01, BIPUSH= 0x10, SIPUSH= 0x11, ICONST_0= 0x03;
+    private static final int IRETURN= 0xac, LRETURN= 0xad, FRETURN= 0xae, DRETURN= 0xaf, ARETURN= 0xb0, RETURN= 0xb1;
+    private static final int GETFIELD= 0xb4, PUTFIELD= 0xb5;
+    private static final int INVOKEVIRTUAL= 0xb6, INVOKESPECIAL= 0xb7, INVOKESTATIC= 0xb8;
+    private static final int CHECKCAST= 0xc0;
+
+    /**
+     * Writes version 49 class files: that is the last version that does not require StackMapTable
+     * attributes, which we can afford because none of the generated methods has branches
+     */
+    private static final class ClassFile {
+        private static final int MAX_STACK= 8;
+
+        private final ByteArrayOutputStream poolBytes= new ByteArrayOutputStream();
+        private final DataOutputStream pool= new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndex= new HashMap<>();
+        private int poolCount= 1;
+
+        private final List<byte[]> fields= new ArrayList<>();
+        private final List<Code> methods= new ArrayList<>();
+
+        void field(int access, String name, String desc) {
+            ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+            DataOutputStream out= new DataOutputStream(bytes);
+            try {
+                out.writeShort(access);
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(desc));
+                out.writeShort(0);
+            }
+            catch (IOException ex) { throw new IllegalStateException(ex); }
+            fields.add(bytes.toByteArray());
+        }
+
+        Code method(int access, String name, String desc, int maxLocals) {
+            Code code= new Code(access, utf8(name), utf8(desc), maxLocals);
+            methods.add(code);
+            return code;
+        }
+
+        int utf8(String s) {
+            return constant("U" + s, 1, s);
+        }
+
+        int classRef(String internalName) {
+            return constant("C" + internalName, 7, utf8(internalName));
+        }
+
+        int fieldRef(String owner, String name, String desc) {
+            return constant("F" + owner + "." + name + desc, 9, classRef(owner), nameAndType(name, desc));
+        }
+
+        int methodRef(String owner, String name, String desc) {
+            return constant("M" + owner + "." + name + desc, 10, classRef(owner), nameAndType(name, desc));
+        }
+
+        private int nameAndType(String name, String desc) {
+            return constant("N" + name + desc, 12, utf8(name), utf8(desc));
+        }
+
+        private int constant(String key, int tag, Object ... parts) {
+            Integer existing= poolIndex.get(key);
+            if (existing != null) return existing;
+            try {
+                pool.writeByte(tag);
+                for (Object part: parts) {
+                    if (part instanceof String) { pool.writeUTF((String) part); }
+                    else                        { pool.writeShort((Integer) part); }
+                }
+            }
+            catch (IOException ex) { throw new IllegalStateException(ex); }
+            int index= poolCount++;
+            poolIndex.put(key, index);
+            return index;
+        }
+
+        byte[] toBytes(String thisName, String superName, String interfaceName) {
+            int thisIndex= classRef(thisName);
+            int superIndex= classRef(superName);
+            int interfaceIndex= classRef(interfaceName);
+            int codeIndex= utf8("Code");
+            ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+            DataOutputStream out= new DataOutputStream(bytes);
+            try {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(49);
+                out.writeShort(poolCount);
+                out.write(poolBytes.toByteArray());
+                out.writeShort(Modifier.FINAL | 0x0020 /* ACC_SUPER */);
+                out.writeShort(thisIndex);
+                out.writeShort(superIndex);
+                out.writeShort(1);
+                out.writeShort(interfaceIndex);
+                out.writeShort(fields.size());
+                for (byte[] field: fields) { out.write(field); }
+                out.writeShort(methods.size());
+                for (Code method: methods) {
+                    byte[] code= method.bytes.toByteArray();
+                    out.writeShort(method.access);
+                    out.writeShort(method.nameIndex);
+                    out.writeShort(method.descIndex);
+                    out.writeShort(1);
+                    out.writeShort(codeIndex);
+                    out.writeInt(12 + code.length);
+                    out.writeShort(MAX_STACK);
+                    out.writeShort(method.maxLocals);
+                    out.writeInt(code.length);
+                    out.write(code);
+                    out.writeShort(0); // exception table
+                    out.writeShort(0); // attributes
+                }
+                out.writeShort(0);
+            }
+            catch (IOException ex) { throw new IllegalStateException(ex); }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Code {
+        final int access, nameIndex, descIndex, maxLocals;
+        final ByteArrayOutputStream bytes= new ByteArrayOutputStream();
+
+        Code(int access_, int nameIndex_, int descIndex_, int maxLocals_) {
+            this.access= access_;
+            this.nameIndex= nameIndex_;
+            this.descIndex= descIndex_;
+            this.maxLocals= maxLocals_;
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code op1(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand);
+            return this;
+        }
+
+        Code op2(int opcode, int operand) {
+            bytes.write(opcode);
+            bytes.write(operand >>> 8);
+            bytes.write(operand);
+            return this;
+        }
+
+        Code pushInt(int value) {
+            if (value <= 5)   return op(ICONST_0 + value);
+            if (value < 128)  return op1(BIPUSH, value);
+            return op2(SIPUSH, value);
+        }
+    }
+}
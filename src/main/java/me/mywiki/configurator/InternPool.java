@@ -0,0 +1,85 @@
+package me.mywiki.configurator;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.InternalReaderAccess;
+
+/**
+ * The canonical readers of an @Interned pair, one per distinct set of values.
+ * Readers are only weakly referenced, a configuration nobody uses anymore is dropped from the pool
+ */
+final class InternPool {
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    private final ConcurrentMap<Entry, Entry> table= new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected= new ReferenceQueue<>();
+
+    InternPool(ReflectiveBuilderImpl<?,?> impl_) {
+        this.impl= impl_;
+    }
+
+    /**
+     * @param reader a reader of the pair, just built
+     * @return the reader already in the pool with the same values, or the reader itself, which is now in the pool
+     */
+    Object intern(Object reader) {
+        expungeCollected();
+        Entry fresh= new Entry(reader, ((InternalReaderAccess) reader).__hash(), collected);
+        while (true) {
+            Entry existing= table.putIfAbsent(fresh, fresh);
+            if (existing == null) return reader;
+            Object canonical= existing.get();
+            if (canonical != null) return canonical;
+            // collected in the meantime, make room for the new one
+            table.remove(existing, existing);
+        }
+    }
+
+    int size() {
+        expungeCollected();
+        return table.size();
+    }
+
+    private void expungeCollected() {
+        Reference<?> ref;
+        while ((ref= collected.poll()) != null) {
+            table.remove(ref, ref);
+        }
+    }
+
+    private final class Entry extends WeakReference<Object> {
+        /** the reader's hash, kept since it must not change once the reader is gone */
+        private final int hash;
+
+        Entry(Object reader, int hash_, ReferenceQueue<Object> queue) {
+            super(reader, queue);
+            this.hash= hash_;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /**
+         * compares the values, reader.equals() is an identity check for interned pairs
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (! (obj instanceof Entry)) return false;
+            Entry other= (Entry) obj;
+            if (other.hash != hash) return false;
+            Object mine= get();
+            Object theirs= other.get();
+            return mine != null && theirs != null
+                && impl.sameValues( ((InternalReaderAccess) mine).__values(),
+                                    ((InternalReaderAccess) theirs).__values());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package me.mywiki.configurator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToString;
+import me.mywiki.configurator.ReflectiveConfigurator.Interpolated;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * The @Interpolated properties of a pair: <code>${otherProperty}</code> is replaced by the value of
+ * the other property, <code>${env:NAME}</code> by the environment variable, <code>$${</code> stands for
+ * a literal <code>${</code>.
+ * </p>
+ * <p>
+ * Values are expanded once, when the configuration is built, in dependency order; the reader keeps
+ * the expanded value in its slot and the template next to it in {@link SlotValues#template}, so that
+ * a builder cloned from the reader only expands again the properties depending on what it changed.
+ * </p>
+ * The references between the @DefaultsToString values are checked when the pair is validated,
+ * those between values set on the builder when the configuration is built
+ */
+final class Interpolation {
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    /** the interpolated properties, in property order */
+    private final PropertySlot[] slots;
+
+    private Interpolation(ReflectiveBuilderImpl<?,?> impl_, PropertySlot[] slots_) {
+        this.impl= impl_;
+        this.slots= slots_;
+    }
+
+    /**
+     * @return the interpolation of the pair, null if it has no @Interpolated property
+     * @throws IllegalArgumentException for @Interpolated properties that are not Strings or have a lazy transform,
+     * and for @DefaultsToString values that reference unknown properties or each other in a cycle
+     */
+    static Interpolation forPair(ReflectiveBuilderImpl<?,?> impl)
+    {
+        boolean allStrings= impl.readerClass.isAnnotationPresent(Interpolated.class);
+        List<PropertySlot> slots= new ArrayList<>();
+        for (PropertySlot slot: impl.properties) {
+            boolean annotated= slot.getter.isAnnotationPresent(Interpolated.class);
+            Validate.isTrue( ! annotated || slot.type() == String.class,
+                             "Property '%s': @Interpolated requires a String property, got %s", slot.name, slot.type().getName());
+            if (annotated || (allStrings && slot.type() == String.class)) {
+                Validate.isTrue( ! slot.lazyTransform, "Property '%s': @Interpolated cannot have a lazy @TransformBy", slot.name);
+                slots.add(slot);
+            }
+        }
+        if (slots.isEmpty()) {
+            return null;
+        }
+        Interpolation result= new Interpolation(impl, slots.toArray(new PropertySlot[0]));
+
+        String[] defaults= new String[impl.properties.length];
+        for (PropertySlot slot: result.slots) {
+            DefaultsToString def= slot.getter.getDeclaredAnnotation(DefaultsToString.class);
+            if (def != null && isTemplate(def.val())) { defaults[slot.ordinal]= def.val(); }
+        }
+        List<String> problems= new ArrayList<>();
+        result.order(defaults, problems);
+        Validate.isTrue(problems.isEmpty(), "Invalid @DefaultsToString references: %s", problems);
+        return result;
+    }
+
+    private static boolean isTemplate(String value) {
+        return value != null && value.contains("${");
+    }
+
+    /**
+     * Expands the interpolated properties in place
+     * @param touched the properties set on the builder, null if they all were
+     * @param cloned the values come from an existing reader, only what depends on the touched properties is expanded again
+     * @throws InvalidConfigurationException for unknown or null references, unset environment variables and cycles
+     */
+    void resolve(SlotValues values, BitSet touched, boolean cloned)
+    {
+        String[] templates= new String[impl.properties.length];
+        for (PropertySlot slot: slots) {
+            String stored= values.template(slot);
+            String template= (touched == null || touched.get(slot.ordinal) || stored == null) ? (String) values.get(slot) : stored;
+            if (isTemplate(template)) { templates[slot.ordinal]= template; }
+            else                      { values.setTemplate(slot, null); }
+        }
+        List<String> problems= new ArrayList<>();
+        List<PropertySlot> order= order(templates, problems);
+        if (! problems.isEmpty()) {
+            throw new InvalidConfigurationException(problems);
+        }
+        BitSet dirty= new BitSet(impl.properties.length);
+        for (PropertySlot slot: order) {
+            if (cloned && touched != null && ! touched.get(slot.ordinal) && ! dependsOn(templates[slot.ordinal], touched, dirty)) {
+                // same template, same referenced values: the expanded value of the original reader holds
+                continue;
+            }
+            dirty.set(slot.ordinal);
+            String expanded= expand(slot, templates[slot.ordinal], values, problems);
+            if (expanded != null) {
+                values.set(slot, expanded);
+                values.setTemplate(slot, templates[slot.ordinal]);
+            }
+        }
+        if (! problems.isEmpty()) {
+            throw new InvalidConfigurationException(problems);
+        }
+    }
+
+    private boolean dependsOn(String template, BitSet touched, BitSet dirty)
+    {
+        for (String ref: references(template)) {
+            PropertySlot other= ref.startsWith("env:") ? null : impl.property(ref);
+            if (other != null && (touched.get(other.ordinal) || dirty.get(other.ordinal))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the properties with a template, each after the ones it references
+     */
+    private List<PropertySlot> order(String[] templates, List<String> problems)
+    {
+        List<PropertySlot> order= new ArrayList<>();
+        byte[] state= new byte[impl.properties.length]; // 0 not visited, 1 on the path, 2 done
+        List<PropertySlot> path= new ArrayList<>();
+        for (PropertySlot slot: slots) {
+            if (templates[slot.ordinal] != null && state[slot.ordinal] == 0) {
+                visit(slot, templates, state, path, order, problems);
+            }
+        }
+        return order;
+    }
+
+    private void visit( PropertySlot slot, String[] templates, byte[] state, List<PropertySlot> path,
+                        List<PropertySlot> order, List<String> problems)
+    {
+        state[slot.ordinal]= 1;
+        path.add(slot);
+        for (String ref: references(templates[slot.ordinal])) {
+            if (ref.startsWith("env:")) continue;
+            PropertySlot other= impl.property(ref);
+            if (other == null) {
+                problems.add(slot.name + ": no property '" + ref + "'");
+            }
+            else if (templates[other.ordinal] == null || state[other.ordinal] == 2) {
+                continue;
+            }
+            else if (state[other.ordinal] == 1) {
+                StringBuilder cycle= new StringBuilder();
+                for (PropertySlot onPath: path.subList(path.indexOf(other), path.size())) {
+                    cycle.append(onPath.name).append(" -> ");
+                }
+                problems.add(other.name + ": cyclic reference " + cycle.append(other.name));
+            }
+            else {
+                visit(other, templates, state, path, order, problems);
+            }
+        }
+        path.remove(path.size() - 1);
+        state[slot.ordinal]= 2;
+        order.add(slot);
+    }
+
+    /**
+     * @return the names between ${ and }, in order
+     */
+    private static List<String> references(String template)
+    {
+        List<String> result= new ArrayList<>();
+        int i= 0;
+        while ((i= template.indexOf("${", i)) >= 0) {
+            if (i > 0 && template.charAt(i - 1) == '$') { i+= 2; continue; }
+            int end= template.indexOf('}', i + 2);
+            if (end < 0) break;
+            result.add(template.substring(i + 2, end));
+            i= end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the expanded template, null after adding the problems to the list
+     */
+    private String expand(PropertySlot slot, String template, SlotValues values, List<String> problems)
+    {
+        StringBuilder result= new StringBuilder(template.length() + 32);
+        int problemCount= problems.size();
+        int i= 0;
+        while (i < template.length()) {
+            if (template.startsWith("$${", i)) {
+                result.append("${");
+                i+= 3;
+                continue;
+            }
+            if (! template.startsWith("${", i)) {
+                result.append(template.charAt(i++));
+                continue;
+            }
+            int end= template.indexOf('}', i + 2);
+            if (end < 0) {
+                problems.add(slot.name + ": unterminated ${ in \"" + template + "\"");
+                break;
+            }
+            String ref= template.substring(i + 2, end);
+            Object value;
+            if (ref.startsWith("env:")) {
+                value= System.getenv(ref.substring(4));
+                if (value == null) { problems.add(slot.name + ": environment variable " + ref.substring(4) + " is not set"); }
+            }
+            else {
+                // unknown names have been reported by order()
+                value= values.get(impl.property(ref));
+                if (value == null) { problems.add(slot.name + ": ${" + ref + "} is null"); }
+            }
+            result.append(value);
+            i= end + 1;
+        }
+        return problems.size() == problemCount ? result.toString() : null;
+    }
+}
@@ -0,0 +1,239 @@
+package me.mywiki.configurator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * <p>
+ * A configuration backed by a local file, rebuilt whenever the file changes.
+ * The file is either a .properties file or, if its name ends with .json, a JSON object
+ * with scalar members; keys are property names, keys that are not properties are ignored.
+ * </p>
+ * Each reload goes through the same checks as done() (defaults, transforms, missing properties)
+ * and publishes the new reader with a single volatile write, so {@link #get()} costs one
+ * volatile read and never blocks. A reload that fails keeps the last good reader and reports
+ * the problem to the error handler; so does the watch when the directory of the file can no longer
+ * be watched, it stops then. Exceptions thrown by the error handler itself go to the uncaught exception
+ * handler of the thread. Components that only depend on some of the properties can listen to those
+ * through {@link #subscriptions()}.
+ *
+ * <pre>
+ *   LiveConfig&lt;MyDbConfig&gt; dbConfig= LiveConfig.watch( MyDbConfig.class, MyDbConfigBuilder.class,
+ *                                                    Paths.get("/etc/myapp/db.properties"),
+ *                                                    ex -&gt; log.warn("bad db config, keeping the old one", ex));
+ *   // on the request path
+ *   int max= dbConfig.get().maxOpenConnections();
+ * </pre>
+ */
+public final class LiveConfig<Reader> implements Supplier<Reader>, Closeable {
+
+    private final ReflectiveBuilderImpl<Reader, ?> impl;
+    private final ConfigCodec<Reader> codec;
+    private final Path file;
+    private final Consumer<? super Exception> errorHandler;
+
+    private volatile Reader current;
+    private volatile Exception lastError;
+    private final ConfigSubscriptions<Reader> subscriptions;
+
+    private final WatchService watcher;
+    private final Thread watchThread;
+
+    public static <Reader, Builder>
+        LiveConfig<Reader> watch( Class<Reader> readerClass,
+                                  Class<Builder> builderClass,
+                                  Path file,
+                                  Consumer<? super Exception> errorHandler)
+                                      throws IOException
+    {
+        return watch(readerClass, builderClass, Engine.PROXY, file, errorHandler);
+    }
+
+    /**
+     * Loads the file and starts watching it
+     * @throws IOException if the file cannot be read or watched
+     * @throws InvalidConfigurationException if the initial content does not make a valid configuration,
+     * there is no last good configuration to fall back to at that point
+     */
+    public static <Reader, Builder>
+        LiveConfig<Reader> watch( Class<Reader> readerClass,
+                                  Class<Builder> builderClass,
+                                  Engine engine,
+                                  Path file,
+                                  Consumer<? super Exception> errorHandler)
+                                      throws IOException
+    {
+        ReflectiveBuilderImpl<Reader, Builder> impl;
+        try {
+            impl= ReflectiveBuilderImpl.forPair(readerClass, builderClass);
+        }
+        catch (Exception ex) {
+            if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+            else                                { throw new RuntimeException(ex); }
+        }
+        return new LiveConfig<>(impl, engine, file.toAbsolutePath(), errorHandler);
+    }
+
+    private LiveConfig( ReflectiveBuilderImpl<Reader, ?> impl_, Engine engine_, Path file_,
+                        Consumer<? super Exception> errorHandler_) throws IOException
+    {
+        this.impl= impl_;
+        this.codec= new ConfigCodec<>(impl_, engine_);
+        this.file= file_;
+        this.errorHandler= errorHandler_;
+        this.current= load();
+        this.subscriptions= new ConfigSubscriptions<>(impl);
+        subscriptions.publish(current);
+
+        this.watcher= FileSystems.getDefault().newWatchService();
+        try {
+            file.getParent().register( watcher,
+                                       StandardWatchEventKinds.ENTRY_CREATE,
+                                       StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (IOException | RuntimeException ex) {
+            // e.g. the directory is gone or cannot be watched, nobody else will close the watcher
+            try {
+                watcher.close();
+            }
+            catch (IOException closing) {
+                ex.addSuppressed(closing);
+            }
+            throw ex;
+        }
+        this.watchThread= new Thread(this::watchLoop, "simpleJconfig-live-" + file.getFileName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * @return the last configuration successfully loaded
+     */
+    @Override
+    public Reader get() {
+        return current;
+    }
+
+    /**
+     * @return the problem with the last reload, null if it succeeded
+     */
+    public Exception lastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the listeners notified of the properties changed by each reload, in the thread that reloads
+     */
+    public ConfigSubscriptions<Reader> subscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Reloads the file now, without waiting for the file system notification
+     * @return true if the new content has been published
+     */
+    public synchronized boolean reload() {
+        Reader loaded;
+        try {
+            loaded= load();
+        }
+        catch (IOException | RuntimeException ex) {
+            lastError= ex;
+            report(ex);
+            return false;
+        }
+        current= loaded;
+        lastError= null;
+        try {
+            subscriptions.publish(loaded);
+        }
+        catch (RuntimeException ex) {
+            // the new configuration is in place all the same
+            report(ex);
+        }
+        return true;
+    }
+
+    /**
+     * Stops watching the file, {@link #get()} keeps returning the last configuration
+     */
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    private Reader load() throws IOException {
+        try (java.io.Reader in= Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return file.getFileName().toString().endsWith(".json") ? codec.readJson(in) : codec.readProperties(in);
+        }
+    }
+
+    /**
+     * passes the problem to the error handler, which must not stop the watch nor propagate out of reload()
+     */
+    private void report(Exception problem) {
+        try {
+            errorHandler.accept(problem);
+        }
+        catch (Throwable ex) {
+            ex.addSuppressed(problem);
+            Thread thread= Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key= watcher.take();
+            }
+            catch (ClosedWatchServiceException | InterruptedException ex) {
+                // closed, we're done
+                return;
+            }
+            try {
+                boolean changed= false;
+                for (WatchEvent<?> event: key.pollEvents()) {
+                    Object context= event.context();
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                               || (context instanceof Path && file.getFileName().equals(context));
+                }
+                boolean valid= key.reset();
+                if (changed) {
+                    reload();
+                }
+                if (! valid) {
+                    // the directory is gone or cannot be read, no more events will come
+                    report(new IOException("Cannot watch " + file.getParent() + " any more, stopped watching " + file));
+                    watcher.close();
+                    return;
+                }
+            }
+            catch (ClosedWatchServiceException ex) {
+                return;
+            }
+            catch (Throwable ex) {
+                // e.g. an Error while loading, keep watching: the next edit may well load
+                Exception problem= ex instanceof Exception ? (Exception) ex : new RuntimeException("Reloading " + file + " failed", ex);
+                lastError= problem;
+                report(problem);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package me.mywiki.configurator;
+
+import java.util.Objects;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * The raw value of a property with a lazy @TransformBy, transformed on first read.
+ * The instance travels with the value through cloneBuilder(), so the transform runs
+ * at most once for the original reader and all the readers derived from it.
+ * The values keep it after the first read, rather than the result, so that snapshots
+ * can store the raw value instead of e.g. a decrypted secret
+ */
+final class MemoizedTransform implements SlotValues.Lazy {
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    private final PropertySlot slot;
+    /** the value given to the setter */
+    private final Object raw;
+    private volatile boolean done;
+    private Object result;
+
+    MemoizedTransform(ReflectiveBuilderImpl<?,?> impl_, PropertySlot slot_, Object raw_) {
+        this.impl= impl_;
+        this.slot= slot_;
+        this.raw= raw_;
+    }
+
+    /** @return the value given to the setter, before the transform */
+    Object raw() {
+        return raw;
+    }
+
+    @Override
+    public Object resolve() {
+        if (! done) {
+            // locks this value only, other properties and readers are not held up
+            synchronized (this) {
+                if (! done) {
+                    result= impl.transform(slot, raw);
+                    done= true;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same transform, same input, same result: readers compare and hash the inputs of their lazy transforms,
+     * so that equals() and hashCode() never run them
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (! (obj instanceof MemoizedTransform)) return false;
+        MemoizedTransform other= (MemoizedTransform) obj;
+        return other.slot == slot && Objects.equals(raw, other.raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(raw);
+    }
+}
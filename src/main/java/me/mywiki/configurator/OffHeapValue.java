@@ -0,0 +1,88 @@
+package me.mywiki.configurator;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * The value of an @OffHeap property: a region of direct memory, stored as is in {@link SlotValues#refs}
+ * and in overlays, so that every reader cloned from the one built shares it without copying.
+ * The getters get a fresh read-only view of the whole region on each call, see {@link ValueStore#get}.
+ * </p>
+ * Secret regions count the readers holding them and are zeroed when the last one is closed.
+ * Values are compared by identity: their contents may be changed by the supplier of a direct buffer
+ * or wiped, which must not change the hash of the readers holding them
+ */
+final class OffHeapValue {
+
+    private static final ByteBuffer WIPED= ByteBuffer.allocateDirect(0).asReadOnlyBuffer();
+
+    /** read-only, position 0 and limit the size of the value */
+    private final ByteBuffer region;
+    /** the same memory, writable, for zeroing it; null unless secret */
+    private final ByteBuffer secret;
+    /** readers holding the secret, -1 once it has been wiped */
+    private final AtomicInteger holders= new AtomicInteger();
+    private volatile boolean wiped;
+
+    private OffHeapValue(ByteBuffer region_, ByteBuffer secret_) {
+        this.region= region_;
+        this.secret= secret_;
+    }
+
+    /**
+     * Direct buffers that are not secret are used in place, from their position to their limit,
+     * the caller must not change them afterwards. Other values are copied once into direct memory
+     * owned by the configuration, the caller may then wipe its own copy of a secret
+     */
+    static OffHeapValue of(ByteBuffer supplied, boolean secret)
+    {
+        if (supplied.isDirect() && ! secret) {
+            return new OffHeapValue(supplied.slice().asReadOnlyBuffer(), null);
+        }
+        ByteBuffer copy= ByteBuffer.allocateDirect(supplied.remaining());
+        copy.put(supplied.duplicate());
+        copy.flip();
+        return new OffHeapValue(copy.asReadOnlyBuffer(), secret ? copy : null);
+    }
+
+    /** @return the value to store for the property: supplied buffers of @OffHeap properties moved off-heap, other values as is */
+    static Object wrap(PropertySlot slot, Object value)
+    {
+        if (slot.offHeap == null || ! (value instanceof ByteBuffer)) return value;
+        return of((ByteBuffer) value, slot.offHeap.secret());
+    }
+
+    /** @return a new read-only view of the value, empty once the secret has been wiped */
+    ByteBuffer view() {
+        return wiped ? WIPED.duplicate() : region.duplicate();
+    }
+
+    /**
+     * @throws IllegalStateException if the secret has already been wiped, the last reader holding it being closed
+     */
+    void retain(PropertySlot slot) {
+        if (secret == null) return;
+        int count;
+        do {
+            count= holders.get();
+            if (count < 0) throw new IllegalStateException("The secret value of property " + slot.name + " has been wiped");
+        } while (! holders.compareAndSet(count, count + 1));
+    }
+
+    /** zeroes a secret once no reader holds it anymore, does nothing if none does */
+    void release() {
+        if (secret == null) return;
+        int count;
+        do {
+            count= holders.get();
+            if (count <= 0) return;
+        } while (! holders.compareAndSet(count, count == 1 ? -1 : count - 1));
+        if (count == 1) {
+            wiped= true;
+            for (int i= 0; i < secret.capacity(); i++) {
+                secret.put(i, (byte) 0);
+            }
+        }
+    }
+}
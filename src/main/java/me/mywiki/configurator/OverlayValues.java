@@ -0,0 +1,129 @@
+package me.mywiki.configurator;
+
+/**
+ * <p>
+ * The values of a reader derived through cloneBuilder(): a pointer to the values of the original reader
+ * plus the few properties that were set on the clone. Deriving a variant that changes k properties costs
+ * O(k) time and memory instead of a copy of every property.
+ * </p>
+ * Every overlay adds a step to the getters of its readers, so {@link #derive} flattens
+ * the chain once it gets deeper than {@link #MAX_DEPTH}, or when so many properties change
+ * that the flat arrays are about as cheap as the overlay
+ */
+final class OverlayValues extends ValueStore {
+
+    static final int MAX_DEPTH= 8;
+
+    private final ValueStore parent;
+    /** the properties set on the clone, in the order they were first set */
+    private final PropertySlot[] slots;
+    /** boxed, in the same order as {@link #slots} */
+    private final Object[] values;
+    private final int depth;
+
+    private OverlayValues(ValueStore parent_, PropertySlot[] slots_, Object[] values_) {
+        this.parent= parent_;
+        this.slots= slots_;
+        this.values= values_;
+        this.depth= parent_.depth() + 1;
+    }
+
+    /**
+     * @param changedSlots the properties set on the clone, each at most once
+     * @param changedValues their values, already transformed
+     * @param propertyCount number of properties of the pair
+     * @return the values of the derived reader, an overlay or flat values depending on which is cheaper
+     */
+    static ValueStore derive( ValueStore parent, int propertyCount,
+                              PropertySlot[] changedSlots, Object[] changedValues, int count)
+    {
+        if (count == 0) {
+            return parent;
+        }
+        if (parent.depth() >= MAX_DEPTH || count * 4 > propertyCount) {
+            SlotValues result= parent.flat().copy();
+            for (int i= 0; i < count; i++) {
+                result.set(changedSlots[i], changedValues[i]);
+            }
+            return result;
+        }
+        PropertySlot[] slots= new PropertySlot[count];
+        Object[] values= new Object[count];
+        System.arraycopy(changedSlots, 0, slots, 0, count);
+        System.arraycopy(changedValues, 0, values, 0, count);
+        return new OverlayValues(parent, slots, values);
+    }
+
+    @Override
+    Object get(PropertySlot slot) {
+        ValueStore store= this;
+        while (store instanceof OverlayValues) {
+            OverlayValues overlay= (OverlayValues) store;
+            PropertySlot[] own= overlay.slots;
+            for (int i= 0; i < own.length; i++) {
+                if (own[i] == slot) {
+                    Object value= overlay.values[i];
+                    if (value instanceof MemoizedTransform) {
+                        return ((MemoizedTransform) value).resolve();
+                    }
+                    if (value instanceof SlotValues.Lazy) {
+                        value= ((SlotValues.Lazy) value).resolve();
+                        overlay.values[i]= value;
+                    }
+                    else if (value instanceof OffHeapValue) {
+                        return ((OffHeapValue) value).view();
+                    }
+                    return value;
+                }
+            }
+            store= overlay.parent;
+        }
+        return store.get(slot);
+    }
+
+    @Override
+    Object stored(PropertySlot slot) {
+        ValueStore store= this;
+        while (store instanceof OverlayValues) {
+            OverlayValues overlay= (OverlayValues) store;
+            for (int i= 0; i < overlay.slots.length; i++) {
+                if (overlay.slots[i] == slot) return overlay.values[i];
+            }
+            store= overlay.parent;
+        }
+        return store.stored(slot);
+    }
+
+    @Override
+    SlotValues flat() {
+        OverlayValues[] chain= new OverlayValues[depth];
+        ValueStore store= this;
+        int n= 0;
+        while (store instanceof OverlayValues) {
+            chain[n++]= (OverlayValues) store;
+            store= ((OverlayValues) store).parent;
+        }
+        // one copy of the flat values at the root, then the overlays from the oldest to this one
+        SlotValues result= store.flat().copy();
+        for (int c= n - 1; c >= 0; c--) {
+            for (int i= 0; i < chain[c].slots.length; i++) {
+                result.set(chain[c].slots[i], chain[c].values[i]);
+            }
+        }
+        return result;
+    }
+
+    ValueStore parent() {
+        return parent;
+    }
+
+    /** @return the properties set on this overlay, not to be modified */
+    PropertySlot[] slots() {
+        return slots;
+    }
+
+    @Override
+    int depth() {
+        return depth;
+    }
+}
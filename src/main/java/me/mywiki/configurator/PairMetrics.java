@@ -0,0 +1,116 @@
+package me.mywiki.configurator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+
+/**
+ * The counters of one pair, created the first time the pair is used while {@link ConfigMetrics} is enabled,
+ * and held by the pair only.
+ * Every counter is a LongAdder, so that readers used from many cores do not contend on a single cache line
+ */
+final class PairMetrics implements ConfigMetrics.PairMXBean {
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    /** by property ordinal */
+    private final LongAdder[] reads;
+    private final LongAdder[] transformCalls;
+    private final LongAdder[] transformNanos;
+    private final LongAdder builds= new LongAdder();
+    private final LongAdder buildNanos= new LongAdder();
+
+    PairMetrics(ReflectiveBuilderImpl<?,?> impl_) {
+        this.impl= impl_;
+        int count= impl.properties.length;
+        this.reads= newAdders(count);
+        this.transformCalls= newAdders(count);
+        this.transformNanos= newAdders(count);
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] result= new LongAdder[count];
+        for (int i= 0; i < count; i++) {
+            result[i]= new LongAdder();
+        }
+        return result;
+    }
+
+    void read(PropertySlot slot) {
+        reads[slot.ordinal].increment();
+    }
+
+    void transformed(PropertySlot slot, long nanos) {
+        transformCalls[slot.ordinal].increment();
+        transformNanos[slot.ordinal].add(nanos);
+    }
+
+    void built(long nanos) {
+        builds.increment();
+        buildNanos.add(nanos);
+    }
+
+    @Override
+    public String getReaderClass() {
+        return impl.readerClass.getName();
+    }
+
+    @Override
+    public String getBuilderClass() {
+        return impl.builderClass.getName();
+    }
+
+    @Override
+    public Map<String, Long> getReads() {
+        Map<String, Long> result= new LinkedHashMap<>();
+        for (PropertySlot slot: impl.properties) {
+            result.put(slot.name, reads[slot.ordinal].sum());
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> getNeverRead() {
+        List<String> result= new ArrayList<>();
+        for (PropertySlot slot: impl.properties) {
+            if (reads[slot.ordinal].sum() == 0) { result.add(slot.name); }
+        }
+        return result;
+    }
+
+    @Override
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    @Override
+    public long getBuildNanos() {
+        return buildNanos.sum();
+    }
+
+    @Override
+    public long getValidationNanos() {
+        return impl.validationNanos;
+    }
+
+    @Override
+    public Map<String, Long> getTransformCalls() {
+        return perTransformedProperty(transformCalls);
+    }
+
+    @Override
+    public Map<String, Long> getTransformNanos() {
+        return perTransformedProperty(transformNanos);
+    }
+
+    private Map<String, Long> perTransformedProperty(LongAdder[] adders) {
+        Map<String, Long> result= new LinkedHashMap<>();
+        for (PropertySlot slot: impl.properties) {
+            if (slot.transformer != null) { result.put(slot.name, adders[slot.ordinal].sum()); }
+        }
+        return result;
+    }
+}
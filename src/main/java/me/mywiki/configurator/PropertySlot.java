@@ -0,0 +1,86 @@
+package me.mywiki.configurator;
+
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Indexed;
+import me.mywiki.configurator.ReflectiveConfigurator.OffHeap;
+
+/**
+ * Metadata of one property of a (Reader, Builder) pair, computed once when the pair is validated.
+ * The property's value lives at {@link #index} in the {@link SlotValues} array of its {@link Kind}
+ */
+final class PropertySlot {
+
+    /**
+     * Which array of {@link SlotValues} holds the property, primitive getters other than
+     * int/long/double/boolean are rare enough that they are kept boxed in the reference array
+     */
+    enum Kind {
+        REF, INT, LONG, DOUBLE, BOOLEAN;
+
+        static Kind of(Class<?> type) {
+            if (type == int.class)     return INT;
+            if (type == long.class)    return LONG;
+            if (type == double.class)  return DOUBLE;
+            if (type == boolean.class) return BOOLEAN;
+            return REF;
+        }
+    }
+
+    final String name;
+    /** position of the property in the pair's property order (sorted by name) */
+    final int ordinal;
+    final Kind kind;
+    /** position of the value inside the array of its kind */
+    final int index;
+    /** the reader getter, its return type is the property type */
+    final Method getter;
+    /** the @TransformBy function, null if the property has none */
+    final Function<Object,Object> transformer;
+    /** the transformer runs on first read rather than in the setter, see {@link MemoizedTransform} */
+    final boolean lazyTransform;
+    /** the @OffHeap annotation of the getter, null if the value is kept on the heap, see {@link OffHeapValue} */
+    final OffHeap offHeap;
+    /** the List, Set or Map value is frozen, see {@link FrozenCollections} */
+    final boolean indexed;
+    /** parses the textual form of the value, null if the type has none, see {@link ValueConverters} */
+    final Function<String,Object> converter;
+    /** the textual form of a non null value, parsed back by {@link #converter} */
+    final Function<Object,String> formatter;
+
+    PropertySlot( String name_, int ordinal_, Kind kind_, int index_,
+                  Method getter_, Function<Object,Object> transformer_, boolean lazyTransform_)
+    {
+        this.name= name_;
+        this.ordinal= ordinal_;
+        this.kind= kind_;
+        this.index= index_;
+        this.getter= getter_;
+        this.transformer= transformer_;
+        this.lazyTransform= lazyTransform_;
+        this.offHeap= getter_.getDeclaredAnnotation(OffHeap.class);
+        this.indexed= getter_.isAnnotationPresent(Indexed.class);
+        this.converter= ValueConverters.forType(getter_.getReturnType(), getter_.getDeclaringClass().getClassLoader());
+        this.formatter= ValueConverters.formatterForType(getter_.getReturnType());
+    }
+
+    Class<?> type() {
+        return getter.getReturnType();
+    }
+
+    /**
+     * @return the value to keep for a value given to the setter, once transformed:
+     * moved off-heap for @OffHeap properties, frozen for @Indexed ones
+     */
+    Object storable(Object value) {
+        if (offHeap != null) return OffHeapValue.wrap(this, value);
+        if (indexed)         return FrozenCollections.freeze(this, value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -5,13 +5,34 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Function;
 
 import org.apache.commons.lang3.Validate;
@@ -59,6 +80,9 @@ import org.apache.commons.lang3.Validate;
  *      // done finishes the building phase, and constructs the finished product
  *      // It'll throw IllegalStateException if not all properties have been set
  *      MyConfiguration done();
+ *      // optional, same as done() with the @TransformBy functions running in parallel
+ *      // on the executor, or on the common fork-join pool without one
+ *      CompletableFuture&lt;MyConfiguration&gt; doneAsync(Executor executor);
  *    }
  *    </pre>
  *    
@@ -86,6 +110,33 @@ public class ReflectiveConfigurator {
             int val();
         }
         
+        /**
+         * Declare default value for long propety that it annotates
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface DefaultsToLong {
+            long val();
+        }
+        
+        /**
+         * Declare default value for double propety that it annotates
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface DefaultsToDouble {
+            double val();
+        }
+        
+        /**
+         * Declare default value for boolean propety that it annotates
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface DefaultsToBoolean {
+            boolean val();
+        }
+        
         /**
          * When the configuration value is a class
          * provides the default value in case the property is not set in the builder
@@ -97,29 +148,338 @@ public class ReflectiveConfigurator {
         }
         
         /**
-         * Apply a function to the supplied value
+         * Declares, on the reader interface, the builder interface that goes with it.
+         * Only needed by the optional simpleJconfig-processor annotation processor, which then checks
+         * the pair at compile time and generates plain Java implementations of both interfaces
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.TYPE}) 
+        public static @interface ConfigPair {
+            Class<?> builder();
+
+            /** @see ReflectiveConfigurator#compiledBuilderName(Class) */
+            String GENERATED_SUFFIX= "_GeneratedConfig";
+        }
+        
+        /**
+         * Apply a function to the supplied value, when the configuration is built.
+         * With lazy = true the builder keeps the supplied value and the function runs on the first read
+         * of the property, once, no matter how many readers are cloned from the one built; equals() and hashCode()
+         * compare the supplied values instead, so they never run the function.
+         * Only for properties of a non primitive type, readers of such pairs always use {@link Engine#PROXY}
          */
         @Retention(RetentionPolicy.RUNTIME) 
         @Target({ElementType.METHOD}) 
         public static @interface TransformBy {
             Class<? extends Function<Object,Object>> _fun() default IdFun.class;
+            boolean lazy() default false;
+        }
+
+        /**
+         * Put on a reader interface, makes done() return one shared instance for all the readers with equal values.
+         * equals() is then an identity check and duplicates collapse into a single object, at the cost of
+         * hashing the values and a lookup in a concurrent table on every done(). 
+         * Meant for configurations used as keys in caches and pools
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.TYPE}) 
+        public static @interface Interned {
+        }
+
+        /**
+         * Expands <code>${otherProperty}</code> and <code>${env:VARIABLE}</code> in the value of the String property,
+         * or of every String property when put on the reader interface; <code>$${</code> is a literal <code>${</code>.
+         * Values are expanded once, by done(), in dependency order, cycles are rejected.
+         * Readers of such pairs always use {@link Engine#PROXY}
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.TYPE, ElementType.METHOD}) 
+        public static @interface Interpolated {
+        }
+
+        /**
+         * Keeps the value of the ByteBuffer property in direct memory, for large blobs and secrets.
+         * Direct buffers given to the setter are used in place, heap ones are copied once; readers cloned
+         * through cloneBuilder() share the memory, and the getter returns a new read-only view of it on each call.
+         * <p>
+         * A secret is always copied, and zeroed once every reader holding it has been closed: such readers
+         * declare <code>void close()</code>, e.g. by extending AutoCloseable. A closed reader throws
+         * IllegalStateException from the getters of its @OffHeap properties and from cloneBuilder().
+         * </p>
+         * equals() and hashCode() of the readers compare the memory they hold, not its contents, and @OffHeap
+         * properties have no textual form in {@link ConfigCodec}.
+         * Readers of such pairs always use {@link Engine#PROXY}, secrets cannot be put on an @Interned reader
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface OffHeap {
+            boolean secret() default false;
+        }
+
+        /**
+         * Freezes the List, Set or Map given to the setter of the property into an immutable copy laid out for lookups:
+         * bit sets for enums, sorted primitive arrays for Integer and Long sets, open addressing tables for other sets 
+         * and maps, primitive arrays for Integer and Long lists. The copy is taken by the setter, later changes to the 
+         * collection given are not seen; it computes its hash code once, so the readers holding it hash cheaply.
+         * Set elements and map keys cannot be null
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface Indexed {
+        }
+
+        /**
+         * Marks a default method of the reader interface as computed from the properties rather than set on the builder:
+         * <pre>
+         *   &#64;Derived
+         *   default URI endpoint() { return URI.create(baseUrl() + path()); }
+         * </pre>
+         * The method runs at most once per reader, on first call, and its result is returned from then on;
+         * readers built through cloneBuilder() compute it again. Readers of such pairs always use {@link Engine#PROXY}
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface Derived {
+        }
+
+        /**
+         * Rejects, in done(), values of the numeric property outside of [min, max]. 
+         * Null values of wrapper types are let through, like for the other constraints but @NotEmpty; 
+         * done() reports the violations of all the constraints together in an {@link InvalidConfigurationException}
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface Range {
+            double min() default Double.NEGATIVE_INFINITY;
+            double max() default Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * Rejects, in done(), values of the String property that do not entirely match the regular expression,
+         * compiled once when the pair is validated
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface Pattern {
+            String regex();
+        }
+
+        /**
+         * Rejects, in done(), null and empty values of the String, Collection or Map property
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface NotEmpty {
+        }
+
+        /**
+         * Checks, in done(), the value of the property with a function returning null for valid values
+         * and the description of the problem otherwise; it is instantiated once, when the pair is validated
+         */
+        @Retention(RetentionPolicy.RUNTIME) 
+        @Target({ElementType.METHOD}) 
+        public static @interface ValidateBy {
+            Class<? extends Function<Object, String>> value();
         }
         
      
         
+        /**
+         * How the builders and readers of a pair are implemented
+         */
+        public static enum Engine {
+            /** java.lang.reflect.Proxy instances, works on any JVM and for any pair */
+            PROXY,
+            /**
+             * Classes generated at runtime, with a final field per property. 
+             * Needs Java 9 or later and public reader/builder interfaces visible from this library's 
+             * class loader, when that is not the case, or when the pair has lazy transforms, @Interpolated, @OffHeap or @Derived properties, 
+             * the pair silently falls back to {@link #PROXY}
+             */
+            GENERATED
+        }
+
+        /**
+         * Which value a builder from {@link ReflectiveConfigurator#concurrentBuilderFor} keeps 
+         * when several threads set the same property
+         */
+        public static enum WritePolicy {
+            /** the value of the setter call that completes last */
+            LAST_WRITER_WINS,
+            /** the value of the first setter call, later calls for the property are ignored */
+            FIRST_WRITER_WINS
+        }
+
+        /**
+         * @return the builder generated by simpleJconfig-processor for the pair if there is one, and the pair
+         * does not need a runtime engine to count reads for {@link ConfigMetrics}; otherwise a {@link Engine#PROXY} builder
+         */
         public static <Reader, Builder> 
             Builder configBuilderFor( Class<Reader>  readerClass, 
                                       Class<Builder> builderClass ) 
         {
             try {
-                return new  ReflectiveBuilderImpl <Reader, Builder>( readerClass, builderClass)
-                                        .makeBuilder();
+                ReflectiveBuilderImpl<Reader, Builder> impl= ReflectiveBuilderImpl.forPair( readerClass, builderClass);
+                Builder compiled= impl.makeCompiledBuilder();
+                return compiled != null ? compiled : impl.makeBuilder(Engine.PROXY);
+            }
+            catch (Exception ex) {
+                if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+                else                                { throw new RuntimeException(ex); }
+            }
+        }
+
+        /**
+         * @return a builder of the runtime engine asked for, even if simpleJconfig-processor generated one for the pair
+         */
+        public static <Reader, Builder> 
+            Builder configBuilderFor( Class<Reader>  readerClass, 
+                                      Class<Builder> builderClass,
+                                      Engine engine ) 
+        {
+            try {
+                return ReflectiveBuilderImpl.forPair( readerClass, builderClass).makeBuilder(engine);
+            }
+            catch (Exception ex) {
+                if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+                else                                { throw new RuntimeException(ex); }
+            }
+        }
+
+        /**
+         * A builder whose setters can be called from many threads at once without locking, e.g. to load
+         * the sections of a configuration in parallel. done() builds from a consistent snapshot of the 
+         * values set so far, the builder can keep being used afterwards. Builders are always proxies,
+         * the engine applies to the readers built
+         */
+        public static <Reader, Builder> 
+            Builder concurrentBuilderFor( Class<Reader>  readerClass, 
+                                          Class<Builder> builderClass,
+                                          WritePolicy policy,
+                                          Engine engine ) 
+        {
+            try {
+                return ReflectiveBuilderImpl.forPair( readerClass, builderClass)
+                                            .makeConcurrentBuilder(policy, engine);
+            }
+            catch (Exception ex) {
+                if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+                else                                { throw new RuntimeException(ex); }
+            }
+        }
+
+        public static <Reader, Builder> 
+            Builder concurrentBuilderFor( Class<Reader>  readerClass, 
+                                          Class<Builder> builderClass ) 
+        {
+            return concurrentBuilderFor(readerClass, builderClass, WritePolicy.LAST_WRITER_WINS, Engine.PROXY);
+        }
+
+        /**
+         * Validates the reader/builder pair and caches its metadata (property names, 
+         * transformer instances, defaults and proxy constructors), so that later calls to
+         * {@link #configBuilderFor(Class, Class)} for the same pair skip the reflective checks.
+         * Services can call this at startup to fail fast on a malformed pair and to keep
+         * the first configBuilderFor off the request path.
+         */
+        public static <Reader, Builder> 
+            void precompile( Class<Reader>  readerClass, 
+                             Class<Builder> builderClass ) 
+        {
+            try {
+                ReflectiveBuilderImpl.forPair( readerClass, builderClass);
+            }
+            catch (Exception ex) {
+                if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
+                else                                { throw new RuntimeException(ex); }
+            }
+        }
+        
+        /**
+         * Builds a configuration out of string values, e.g. a parsed .properties file, looking up each property
+         * by its name. Values are converted to the getter types (primitives and their wrappers, String, enums,
+         * Class, java.time.Duration, java.nio.file.Path), then go through @TransformBy and @DefaultsTo* as if 
+         * they had been set on the builder. Keys that are not properties are ignored
+         * @throws InvalidConfigurationException listing every missing or malformed property
+         */
+        public static <Reader, Builder> 
+            Reader load( Class<Reader>  readerClass, 
+                         Class<Builder> builderClass,
+                         Map<String, String> source ) 
+        {
+            return load(readerClass, builderClass, source, "");
+        }
+
+        /**
+         * Same as {@link #load(Class, Class, Map)}, with the property names prefixed. 
+         * A property also matches the upper case form of the prefixed name, so that
+         * <code>load(DbConfig.class, DbConfig.Builder.class, System.getenv(), "db.")</code> 
+         * reads maxOpenConnections from DB_MAX_OPEN_CONNECTIONS
+         */
+        public static <Reader, Builder> 
+            Reader load( Class<Reader>  readerClass, 
+                         Class<Builder> builderClass,
+                         Map<String, String> source,
+                         String prefix ) 
+        {
+            return load(readerClass, builderClass, source::get, prefix);
+        }
+
+        /**
+         * Same as {@link #load(Class, Class, Map)}, for Properties including their defaults, e.g. System.getProperties()
+         */
+        public static <Reader, Builder> 
+            Reader load( Class<Reader>  readerClass, 
+                         Class<Builder> builderClass,
+                         Properties source ) 
+        {
+            return load(readerClass, builderClass, source::getProperty, "");
+        }
+
+        private static <Reader, Builder> 
+            Reader load( Class<Reader>  readerClass, 
+                         Class<Builder> builderClass,
+                         Function<String, String> lookup,
+                         String prefix ) 
+        {
+            try {
+                return ReflectiveBuilderImpl.forPair( readerClass, builderClass)
+                                            .load(lookup, prefix, Engine.PROXY);
             }
             catch (Exception ex) {
                 if (ex instanceof RuntimeException) { throw (RuntimeException) ex; }
                 else                                { throw new RuntimeException(ex); }
             }
         }
+
+        /**
+         * The builder classes generated at compile time by the simpleJconfig-processor annotation processor,
+         * keyed by reader interface. configBuilderFor without an engine prefers them to the runtime engines when present, unless
+         * the pair needs a feature only the runtime engines implement, see {@link ReflectiveBuilderImpl#makeCompiledBuilder()}
+         */
+        private static final ClassValue<Optional<Constructor<?>>> COMPILED_BUILDERS= 
+                new ClassValue<Optional<Constructor<?>>>() {
+                    @Override
+                    protected Optional<Constructor<?>> computeValue(Class<?> readerClass) {
+                        try {
+                            Class<?> compiled= Class.forName(compiledBuilderName(readerClass), true, readerClass.getClassLoader());
+                            return Optional.<Constructor<?>>of(compiled.getConstructor());
+                        }
+                        catch (ClassNotFoundException | NoSuchMethodException ex) {
+                            return Optional.empty();
+                        }
+                    }
+                };
+
+        /**
+         * @return the name of the builder class the annotation processor generates for a reader interface:
+         * same package, nested class names joined by '_', followed by {@link ConfigPair#GENERATED_SUFFIX}
+         */
+        public static String compiledBuilderName(Class<?> readerClass) {
+            String name= readerClass.getName();
+            int packageEnd= name.lastIndexOf('.') + 1;
+            return name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + ConfigPair.GENERATED_SUFFIX;
+        }
         
         public static class MissingPropertyException extends RuntimeException 
         {
@@ -137,16 +497,96 @@ public class ReflectiveConfigurator {
         }
 
 
-        private static class ReflectiveBuilderImpl<Reader, Builder>
+        /**
+         * The values supplied for a configuration are incomplete or cannot be converted,
+         * {@link #getProblems()} lists all of them, one entry per property
+         */
+        public static class InvalidConfigurationException extends RuntimeException 
+        {
+            private static final long serialVersionUID = 1L;
+
+            private final List<String> problems;
+
+            public InvalidConfigurationException(List<String> problems_) {
+                super("Invalid configuration: " + String.join("; ", problems_));
+                this.problems= Collections.unmodifiableList(new ArrayList<>(problems_));
+            }
+
+            public List<String> getProblems() {
+                return problems;
+            }
+        }
+
+        /**
+         * One instance per (Reader, Builder) pair, validated once and then shared by every builder
+         * and reader of that pair, so it must stay immutable after construction
+         */
+        static class ReflectiveBuilderImpl<Reader, Builder>
         {
      
+            /**
+             * Validated pairs, keyed first by the builder class and then by the reader class.
+             * The builder is the key because its done() method references the reader,
+             * so the builder's class loader can always see the reader and caching the reader 
+             * inside the builder's ClassValue does not pin any foreign class loader.
+             */
+            private static final ClassValue<ConcurrentMap<Class<?>, ReflectiveBuilderImpl<?,?>>> REGISTRY=
+                    new ClassValue<ConcurrentMap<Class<?>, ReflectiveBuilderImpl<?,?>>>() {
+                        @Override
+                        protected ConcurrentMap<Class<?>, ReflectiveBuilderImpl<?,?>> computeValue(Class<?> builderClass_) {
+                            return new ConcurrentHashMap<>();
+                        }
+                    };
+
             final Class<Builder> builderClass;
             final Class<Reader>  readerClass;
             
-            //final Map<String,Object> valueMap= new HashMap<>();
-            final Set<String> propNames;
-            final Map<String, Function> transformers;
-            final Map<String, Object> defaults;
+            /** all the properties, sorted by name, properties[i].ordinal == i */
+            final PropertySlot[] properties;
+            final Map<Method, PropertySlot> getterSlots;
+            final Map<Method, PropertySlot> setterSlots;
+            /** no values set, used as a template for the layout of new instances */
+            final SlotValues emptyValues;
+            /** the values declared via @DefaultsTo* annotations, meaningful only where {@link #defaulted} is set */
+            final SlotValues defaults;
+            final BitSet defaulted;
+
+            /** null when the interfaces are not visible from this library and the pair has a compiled builder to use instead */
+            final Constructor<?> builderProxyConstructor;
+            final Constructor<?> readerProxyConstructor;
+
+            /** the canonical readers if the reader is @Interned, null otherwise */
+            final InternPool internPool;
+            /** null if the pair has no @Interpolated property */
+            final Interpolation interpolation;
+            /** null if no property has a constraint annotation */
+            final Constraints constraints;
+            /** null if the reader has no @Derived method */
+            final DerivedProperties derived;
+            /** the @OffHeap(secret= true) properties, held by each reader until it is closed */
+            final PropertySlot[] secretSlots;
+            /** 
+             * true if the builder declares doneAsync(): its eager @TransformBy functions wait for the build
+             * to run in parallel, those of the other builders run in the setter
+             */
+            final boolean deferredTransforms;
+
+            /** time taken by {@link #checkAgainstSpec}, see {@link ConfigMetrics} */
+            final long validationNanos;
+            /** created on first use while {@link ConfigMetrics} is enabled */
+            private volatile PairMetrics metrics;
+            /** created by {@link ConfigOverrides#of}, null until then */
+            private volatile ConfigOverrides<Reader> overrides;
+
+            /** 
+             * the constructor of the builder generated by the annotation processor, null if there is none for this builder 
+             * or the pair has annotations the generated code does not implement
+             */
+            private final Constructor<?> compiledBuilder;
+
+            /** generated on first use of {@link Engine#GENERATED}, {@link #NOT_GENERATED} if that's not possible */
+            private volatile Object generatedClasses;
+            private static final Object NOT_GENERATED= new Object();
 
             ReflectiveBuilderImpl( Class<Reader> readerClass_,
                                    Class<Builder> builderClass_)
@@ -154,30 +594,110 @@ public class ReflectiveConfigurator {
             {
                 this.builderClass= builderClass_;
                 this.readerClass= readerClass_;
+                long validationStart= System.nanoTime();
                 Metadata metadataCheck= checkAgainstSpec(readerClass, builderClass);
 
-                this.propNames= metadataCheck.propNames;
-                this.transformers= metadataCheck.transformers;
+                this.properties= metadataCheck.properties;
+                this.getterSlots= metadataCheck.getterSlots;
+                this.setterSlots= metadataCheck.setterSlots;
+                this.emptyValues= metadataCheck.defaults.emptyCopy();
                 this.defaults= metadataCheck.defaults;
+                this.defaulted= metadataCheck.defaulted;
+                this.derived= metadataCheck.derived;
+                this.interpolation= Interpolation.forPair(this);
+                this.constraints= Constraints.forPair(this);
+                this.validationNanos= System.nanoTime() - validationStart;
+
+                this.internPool= readerClass.isAnnotationPresent(Interned.class) ? new InternPool(this) : null;
+                this.secretSlots= Arrays.stream(properties)
+                                        .filter(slot -> slot.offHeap != null && slot.offHeap.secret())
+                                        .toArray(PropertySlot[]::new);
+                Validate.isTrue( internPool == null || secretSlots.length == 0,
+                                 "%s: @Interned readers cannot have @OffHeap(secret= true) properties", readerClass.getName());
+                this.deferredTransforms= Arrays.stream(builderClass.getMethods())
+                                               .anyMatch(m -> m.getName().equals("doneAsync"));
+                Constructor<?> compiled= COMPILED_BUILDERS.get(readerClass).orElse(null);
+                this.compiledBuilder= compiled != null && builderClass.isAssignableFrom(compiled.getDeclaringClass())
+                                      && ! needsRuntimeEngine() ? compiled : null;
+
+                Constructor<?> builderProxy= null, readerProxy= null;
+                try {
+                    builderProxy= proxyConstructor(builderClass);
+                    readerProxy= proxyConstructor(readerClass, InternalReaderAccess.class);
+                }
+                catch (IllegalArgumentException ex) {
+                    // interfaces from a class loader this library cannot see, only a compiled builder works for them
+                    if (compiledBuilder == null) throw ex;
+                }
+                this.builderProxyConstructor= builderProxy;
+                this.readerProxyConstructor= readerProxy;
+            }
+
+            /**
+             * @return true if the pair uses an annotation the builders generated by the annotation processor do not implement
+             */
+            private boolean needsRuntimeEngine()
+            {
+                if (internPool != null || interpolation != null || constraints != null || derived != null) return true;
+                for (PropertySlot slot: properties) {
+                    if (slot.lazyTransform || slot.offHeap != null || slot.indexed) return true;
+                }
+                return false;
+            }
+
+            /**
+             * @return the cached implementation for the pair, validating it on first use
+             */
+            @SuppressWarnings("unchecked")
+            static <Reader, Builder>
+                ReflectiveBuilderImpl<Reader, Builder> 
+                    forPair( Class<Reader> readerClass_,
+                             Class<Builder> builderClass_)
+                                 throws Exception
+            {
+                ConcurrentMap<Class<?>, ReflectiveBuilderImpl<?,?>> byReader= REGISTRY.get(builderClass_);
+                ReflectiveBuilderImpl<?,?> result= byReader.get(readerClass_);
+                if (result == null) {
+                    // two threads may race to validate the same pair, that's harmless: the first one wins
+                    ReflectiveBuilderImpl<?,?> fresh= new ReflectiveBuilderImpl<>(readerClass_, builderClass_);
+                    result= byReader.putIfAbsent(readerClass_, fresh);
+                    if (result == null) { result= fresh; }
+                }
+                return (ReflectiveBuilderImpl<Reader, Builder>) result;
+            }
+
+            @SuppressWarnings("deprecation")
+            private static Constructor<?> proxyConstructor(Class<?> ... interfaces) throws Exception
+            {
+                return Proxy.getProxyClass( ReflectiveBuilderImpl.class.getClassLoader(), interfaces)
+                            .getConstructor(InvocationHandler.class);
             }
 
             private static class Metadata {
-                final Set<String> propNames;
-                final Map<String, Function> transformers;
-                final Map<String, Object> defaults;
-                Metadata(Set<String> propNames_, Map<String, Function> transformers_, Map<String, Object> defaults_) {
-                    this.propNames= propNames_;
-                    this.transformers= transformers_;
+                final PropertySlot[] properties;
+                final Map<Method, PropertySlot> getterSlots;
+                final Map<Method, PropertySlot> setterSlots;
+                final SlotValues defaults;
+                final BitSet defaulted;
+                final DerivedProperties derived;
+                Metadata( PropertySlot[] properties_, Map<Method, PropertySlot> getterSlots_, Map<Method, PropertySlot> setterSlots_,
+                          SlotValues defaults_, BitSet defaulted_, DerivedProperties derived_) {
+                    this.properties= properties_;
+                    this.getterSlots= getterSlots_;
+                    this.setterSlots= setterSlots_;
                     this.defaults= defaults_;
+                    this.defaulted= defaulted_;
+                    this.derived= derived_;
                 }
             }
 
 
             /**
              * Checks that the builder interface matches the reader interface
-             * @return metadata containing all the property names, the optional transforming
-             * functions, and the defaults declared via @DefaultsTo* annotations
+             * @return metadata containing all the properties with their value slots and the optional 
+             * transforming functions, and the defaults declared via @DefaultsTo* annotations
              */
+            @SuppressWarnings("unchecked")
             private static
                 Metadata
                     checkAgainstSpec( Class<?> readerClass_,
@@ -185,8 +705,7 @@ public class ReflectiveConfigurator {
             {
                 Validate.isTrue(builderClass_.isInterface(), "builder should be an interface"); 
                 
-                Set<String> builderPropNames= new HashSet<>();
-                Map<String, Class<?>> builderPropTypes= new HashMap<>();
+                Map<String, Method> setters= new HashMap<>();
 
                 for (Method m: builderClass_.getDeclaredMethods()) {
                     String mName= m.getName();
@@ -195,17 +714,26 @@ public class ReflectiveConfigurator {
                     	Validate.isTrue(m.getReturnType().equals(readerClass_), "done returns the reader object");
                         continue;
                     }
+                    if (mName.equals("doneAsync")) {
+                        Validate.isTrue( 0 == m.getParameterCount() 
+                                         || (1 == m.getParameterCount() && m.getParameterTypes()[0].equals(Executor.class)),
+                                         "doneAsync takes no parameter or an Executor");
+                        Type returnType= m.getGenericReturnType();
+                        Validate.isTrue( returnType instanceof ParameterizedType
+                                         && ((ParameterizedType) returnType).getRawType().equals(CompletableFuture.class)
+                                         && ((ParameterizedType) returnType).getActualTypeArguments()[0].equals(readerClass_),
+                                         "doneAsync returns a CompletableFuture of the reader object");
+                        continue;
+                    }
                     // all other methods are setter of form Builder propertyName(PropType val);
                     Validate.isTrue(1 == m.getParameterCount(), "setter method: "+mName );
                     Validate.isTrue(builderClass_.equals(m.getReturnType()), "returning a builder for"+mName );
-                    builderPropNames.add(mName);
-                    builderPropTypes.put(mName, m.getParameterTypes()[0]);
+                    setters.put(mName, m);
                 }
 
-                
-                Set <String> readerPropNames=  new HashSet<String>();
-                Map<String, Function> transformers= new HashMap<>();
-                Map<String, Object> defaults= new HashMap<>();
+                // sorted, so that the slot assignment does not depend on the order of getMethods()
+                Map<String, Method> getters= new TreeMap<>();
+                Map<String, Method> derived= new TreeMap<>();
 
                 for (Method m: readerClass_.getMethods()) {
                     String mName= m.getName();
@@ -214,138 +742,862 @@ public class ReflectiveConfigurator {
                     	Validate.isTrue( m.getReturnType().equals(builderClass_), "cloneBuilder returns the builder");
                         continue;
                     }
+                    if (mName.equals("close") && m.getReturnType() == void.class) {
+                        Validate.isTrue(  0 == m.getParameterCount(), "close is a method with 0 paramters" );
+                        continue;
+                    }
+                    if (m.isAnnotationPresent(Derived.class)) {
+                        derived.put(mName, m);
+                        continue;
+                    }
                     // all other methods are setter of form Builder propertyName(PropType val);
                     Validate.isTrue( 0== m.getParameterCount() ,"getter method has 0 params "+mName );
-                    readerPropNames.add(mName);
-                    TransformBy transform= m.getDeclaredAnnotation(TransformBy.class);
-                    if (transform != null) {
-                       transformers.put(mName, transform._fun().newInstance());
-                    }
+                    getters.put(mName, m);
                     Class<?> getterType= m.getReturnType();
                     // type-check: builder setter parameter type must match reader getter return type
-                    Class<?> setterType= builderPropTypes.get(mName);
-                    if (setterType != null) {
+                    Method setter= setters.get(mName);
+                    if (setter != null) {
+                        Class<?> setterType= setter.getParameterTypes()[0];
                         Validate.isTrue( getterType.equals(setterType),
                             "Property '%s': builder setter type (%s) must match reader getter type (%s)",
                             mName, setterType.getName(), getterType.getName());
                     }
-                    // collect @DefaultsTo* annotations, validating type compatibility against the getter
-                    DefaultsToString defStr= m.getDeclaredAnnotation(DefaultsToString.class);
-                    DefaultsToInteger defInt= m.getDeclaredAnnotation(DefaultsToInteger.class);
-                    DefaultsToClass defCls= m.getDeclaredAnnotation(DefaultsToClass.class);
-                    int defCount= (defStr != null ? 1 : 0) + (defInt != null ? 1 : 0) + (defCls != null ? 1 : 0);
-                    Validate.isTrue(defCount <= 1,
-                        "Property '%s': at most one @DefaultsTo* annotation allowed", mName);
-                    if (defStr != null) {
-                        Validate.isTrue(getterType.equals(String.class),
-                            "Property '%s': @DefaultsToString requires String getter, got %s",
-                            mName, getterType.getName());
-                        defaults.put(mName, defStr.val());
+                }
+
+                Validate.isTrue( getters.keySet().equals(setters.keySet()), "Reader properties match builder properties");
+
+                // assign each property its slot
+                PropertySlot[] properties= new PropertySlot[getters.size()];
+                Map<Method, PropertySlot> getterSlots= new HashMap<>();
+                Map<Method, PropertySlot> setterSlots= new HashMap<>();
+                int[] kindCounts= new int[PropertySlot.Kind.values().length];
+                int ordinal= 0;
+                for (Method m: getters.values()) {
+                    String mName= m.getName();
+                    TransformBy transform= m.getDeclaredAnnotation(TransformBy.class);
+                    Function<Object,Object> transformer= transform == null ? null : transform._fun().newInstance();
+                    boolean lazy= transform != null && transform.lazy();
+                    Validate.isTrue( ! lazy || ! m.getReturnType().isPrimitive(),
+                        "Property '%s': lazy @TransformBy requires a non primitive type, got %s", mName, m.getReturnType().getName());
+                    OffHeap offHeap= m.getDeclaredAnnotation(OffHeap.class);
+                    Validate.isTrue( offHeap == null || m.getReturnType() == ByteBuffer.class,
+                        "Property '%s': @OffHeap requires a ByteBuffer property, got %s", mName, m.getReturnType().getName());
+                    Validate.isTrue( offHeap == null || ! lazy, "Property '%s': @OffHeap cannot have a lazy @TransformBy", mName);
+                    boolean indexed= m.isAnnotationPresent(Indexed.class);
+                    Validate.isTrue( ! indexed || m.getReturnType() == List.class || m.getReturnType() == Set.class 
+                                               || m.getReturnType() == Map.class,
+                        "Property '%s': @Indexed requires a List, Set or Map property, got %s", mName, m.getReturnType().getName());
+                    Validate.isTrue( ! indexed || ! lazy, "Property '%s': @Indexed cannot have a lazy @TransformBy", mName);
+                    Validate.isTrue( ! indexed || offHeap == null, "Property '%s': @Indexed and @OffHeap do not mix", mName);
+                    PropertySlot.Kind kind= PropertySlot.Kind.of(m.getReturnType());
+                    PropertySlot slot= new PropertySlot(mName, ordinal, kind, kindCounts[kind.ordinal()]++, m, transformer, lazy);
+                    properties[ordinal++]= slot;
+                    getterSlots.put(m, slot);
+                    setterSlots.put(setters.get(mName), slot);
+                }
+
+                SlotValues defaults= new SlotValues( kindCounts[PropertySlot.Kind.REF.ordinal()], 
+                                                     kindCounts[PropertySlot.Kind.INT.ordinal()],
+                                                     kindCounts[PropertySlot.Kind.LONG.ordinal()],
+                                                     kindCounts[PropertySlot.Kind.DOUBLE.ordinal()],
+                                                     kindCounts[PropertySlot.Kind.BOOLEAN.ordinal()]);
+                BitSet defaulted= new BitSet(properties.length);
+                for (PropertySlot slot: properties) {
+                    if (collectDefault(slot, defaults)) {
+                        defaulted.set(slot.ordinal);
+                    }
+                }
+                return new Metadata( properties, getterSlots, setterSlots, defaults, defaulted,
+                                     DerivedProperties.forPair(new ArrayList<>(derived.values())));
+            }
+
+            /**
+             * Collects the @DefaultsTo* annotation of the property, validating type compatibility against the getter.
+             * Primitive defaults are stored in the primitive arrays, so they never get boxed
+             * @return true if the property declares a default
+             */
+            private static boolean collectDefault(PropertySlot slot, SlotValues defaults) throws Exception
+            {
+                Method m= slot.getter;
+                String mName= slot.name;
+                Class<?> getterType= slot.type();
+                DefaultsToString defStr= m.getDeclaredAnnotation(DefaultsToString.class);
+                DefaultsToInteger defInt= m.getDeclaredAnnotation(DefaultsToInteger.class);
+                DefaultsToLong defLong= m.getDeclaredAnnotation(DefaultsToLong.class);
+                DefaultsToDouble defDouble= m.getDeclaredAnnotation(DefaultsToDouble.class);
+                DefaultsToBoolean defBool= m.getDeclaredAnnotation(DefaultsToBoolean.class);
+                DefaultsToClass defCls= m.getDeclaredAnnotation(DefaultsToClass.class);
+                int defCount= (defStr != null ? 1 : 0) + (defInt != null ? 1 : 0) + (defLong != null ? 1 : 0) 
+                            + (defDouble != null ? 1 : 0) + (defBool != null ? 1 : 0) + (defCls != null ? 1 : 0);
+                Validate.isTrue(defCount <= 1,
+                    "Property '%s': at most one @DefaultsTo* annotation allowed", mName);
+                if (defStr != null) {
+                    Validate.isTrue(getterType.equals(String.class),
+                        "Property '%s': @DefaultsToString requires String getter, got %s",
+                        mName, getterType.getName());
+                    defaults.refs[slot.index]= defStr.val();
+                }
+                else if (defInt != null) {
+                    Validate.isTrue(getterType.equals(int.class) || getterType.equals(Integer.class),
+                        "Property '%s': @DefaultsToInteger requires int/Integer getter, got %s",
+                        mName, getterType.getName());
+                    if (slot.kind == PropertySlot.Kind.INT) { defaults.ints[slot.index]= defInt.val(); }
+                    else                                    { defaults.refs[slot.index]= defInt.val(); }
+                }
+                else if (defLong != null) {
+                    Validate.isTrue(getterType.equals(long.class) || getterType.equals(Long.class),
+                        "Property '%s': @DefaultsToLong requires long/Long getter, got %s",
+                        mName, getterType.getName());
+                    if (slot.kind == PropertySlot.Kind.LONG) { defaults.longs[slot.index]= defLong.val(); }
+                    else                                     { defaults.refs[slot.index]= defLong.val(); }
+                }
+                else if (defDouble != null) {
+                    Validate.isTrue(getterType.equals(double.class) || getterType.equals(Double.class),
+                        "Property '%s': @DefaultsToDouble requires double/Double getter, got %s",
+                        mName, getterType.getName());
+                    if (slot.kind == PropertySlot.Kind.DOUBLE) { defaults.doubles[slot.index]= defDouble.val(); }
+                    else                                       { defaults.refs[slot.index]= defDouble.val(); }
+                }
+                else if (defBool != null) {
+                    Validate.isTrue(getterType.equals(boolean.class) || getterType.equals(Boolean.class),
+                        "Property '%s': @DefaultsToBoolean requires boolean/Boolean getter, got %s",
+                        mName, getterType.getName());
+                    if (slot.kind == PropertySlot.Kind.BOOLEAN) { defaults.booleans[slot.index]= defBool.val(); }
+                    else                                        { defaults.refs[slot.index]= defBool.val(); }
+                }
+                else if (defCls != null) {
+                    Class<?> defValueClass= defCls.val();
+                    Validate.isTrue(getterType.isAssignableFrom(defValueClass),
+                        "Property '%s': @DefaultsToClass value (%s) not assignable to getter type (%s)",
+                        mName, defValueClass.getName(), getterType.getName());
+                    defaults.refs[slot.index]= defValueClass.newInstance();
+                }
+                return defCount == 1;
+            }
+
+            /**
+             * @return the classes generated for this pair, or null if the pair has to use proxies
+             */
+            GeneratedEngine.Classes generatedClasses()
+            {
+                Object result= generatedClasses;
+                if (result == null) {
+                    synchronized (this) {
+                        result= generatedClasses;
+                        if (result == null) {
+                            result= GeneratedEngine.generate(this);
+                            if (result == null) { result= NOT_GENERATED; }
+                            generatedClasses= result;
+                        }
+                    }
+                }
+                return result == NOT_GENERATED ? null : (GeneratedEngine.Classes) result;
+            }
+
+            /**
+             * The handler of the builders from {@link ReflectiveConfigurator#concurrentBuilderFor}
+             */
+            private class ConcurrentBuilderHandler implements InvocationHandler {
+                final ConcurrentBuilderState state;
+                final Engine engine;
+
+                ConcurrentBuilderHandler(ConcurrentBuilderState state_, Engine engine_) {
+                    this.state= state_;
+                    this.engine= engine_;
+                }
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    PropertySlot slot= setterSlots.get(method);
+                    if (slot != null) {
+                        state.set(slot, args[0]);
+                        return proxy;
                     }
-                    else if (defInt != null) {
-                        Validate.isTrue(getterType.equals(int.class) || getterType.equals(Integer.class),
-                            "Property '%s': @DefaultsToInteger requires int/Integer getter, got %s",
-                            mName, getterType.getName());
-                        defaults.put(mName, defInt.val());
+                    if (method.getName().equals("done")) {
+                        return buildTheReader(state.snapshot(), engine);
                     }
-                    else if (defCls != null) {
-                        Class<?> defValueClass= defCls.val();
-                        Validate.isTrue(getterType.isAssignableFrom(defValueClass),
-                            "Property '%s': @DefaultsToClass value (%s) not assignable to getter type (%s)",
-                            mName, defValueClass.getName(), getterType.getName());
-                        defaults.put(mName, defValueClass.newInstance());
+                    if (method.getName().equals("doneAsync")) {
+                        Executor executor= args == null ? ForkJoinPool.commonPool() : (Executor) args[0];
+                        return buildAsync(state.snapshot(), executor, engine);
                     }
+                    throw new IllegalStateException("Expecting propety setter, of type XXXBuilder propertyName( PropertyType val_)");
                 }
+            }
 
-                Validate.isTrue( readerPropNames.equals(builderPropNames), "Reader properties match builder properties");
-                return new Metadata(readerPropNames, transformers, defaults);
+            Builder makeConcurrentBuilder(WritePolicy policy, Engine engine)
+            {
+                return builderClass.cast( newProxy( builderProxyConstructor,
+                                                    new ConcurrentBuilderHandler(new ConcurrentBuilderState(this, policy), engine)));
+            }
+
+            /**
+             * @return a new instance of the builder generated by the annotation processor, null if there is none,
+             * the pair needs a runtime engine, or {@link ConfigMetrics} is enabled: the generated readers cannot count reads
+             */
+            Builder makeCompiledBuilder() throws ReflectiveOperationException
+            {
+                if (compiledBuilder == null) return null;
+                if (ConfigMetrics.isEnabled() && builderProxyConstructor != null) return null;
+                return builderClass.cast(compiledBuilder.newInstance());
+            }
+
+            public  Builder makeBuilder(Engine engine)
+            {
+                if (engine == Engine.GENERATED) {
+                    GeneratedEngine.Classes generated= generatedClasses();
+                    if (generated != null) {
+                        return builderClass.cast( generated.newBuilder(this, new BuilderState(this)));
+                    }
+                }
+                return makeBuilder();
             }
 
-            @SuppressWarnings("unchecked")
             public  Builder makeBuilder() 
             {
-                return (Builder) 
-                        Proxy.newProxyInstance(  this.getClass().getClassLoader(), 
-                                                 new Class<?> [] {builderClass}, 
-                                                 new ConfigBuilderHandler());
+                return builderClass.cast( newProxy( builderProxyConstructor, new ConfigBuilderHandler(new BuilderState(this))));
             }
 
-            @SuppressWarnings("unchecked")
-            public  Builder makeBuilder(Map<String,Object> initialValues) 
+            public  Builder makeBuilder(ValueStore initialValues) 
             {
-                return (Builder) 
-                        Proxy.newProxyInstance(  this.getClass().getClassLoader(), 
-                                                 new Class<?> [] { builderClass }, 
-                                                 new ConfigBuilderHandler(initialValues));
+                return builderClass.cast( newProxy( builderProxyConstructor, new ConfigBuilderHandler(new BuilderState(this, initialValues))));
+            }
+
+            private Object newProxy(Constructor<?> proxyConstructor, InvocationHandler handler)
+            {
+                if (proxyConstructor == null) {
+                    throw new IllegalStateException( readerClass.getName() + " is not visible from the class loader of " 
+                                                     + ReflectiveConfigurator.class.getName() + ", only its compiled builder can be used");
+                }
+                try {
+                    return proxyConstructor.newInstance(handler);
+                }
+                catch (ReflectiveOperationException ex) {
+                    throw new IllegalStateException("Cannot instantiate proxy "+proxyConstructor.getDeclaringClass().getName(), ex);
+                }
             }
      
-            @SuppressWarnings("unchecked")
-            public Reader buildTheReader(Map<String, Object> valueMap)
+            public Reader buildTheReader(BuilderState state)
             {
-                // fill in any unset properties from the @DefaultsTo* annotations
-                for (Map.Entry<String, Object> e : defaults.entrySet()) {
-                    if (!valueMap.containsKey(e.getKey())) {
-                        valueMap.put(e.getKey(), e.getValue());
-                    }
-                }
-                // verify that we have values for all needed properties
-                Set<String> suppliedKeys= valueMap.keySet();
-                Set<String> toBeResolved=  new HashSet<String>(propNames);
-                toBeResolved.removeAll(suppliedKeys);
-
-                //check that all properties are assigned
-                if (toBeResolved.isEmpty())
-                    return (Reader)
-                            Proxy.newProxyInstance(  this.getClass().getClassLoader(), 
-                                                     new Class<?> [] { readerClass , InternalReaderAccess.class}, 
-                                                     new ConfigReaderHandler( valueMap) );
-                else {
-                    //TODO: supply a list of what is missing
-                    throw new MissingPropertyException("Configuration missing the following properties: " + toBeResolved.toString());
+                return buildTheReader(state, Engine.PROXY);
+            }
+
+            /**
+             * Builds a reader straight from collected values, for the facilities that populate
+             * configurations without going through the builder interface
+             */
+            Reader buildTheReader(BuilderState state, Engine engine)
+            {
+                PairMetrics recording= metrics();
+                if (recording == null) {
+                    return newReader(state.complete(), engine);
+                }
+                long start= System.nanoTime();
+                Reader result= newReader(state.complete(), engine);
+                recording.built(System.nanoTime() - start);
+                return result;
+            }
+
+            /**
+             * @return the metrics to record into, null if {@link ConfigMetrics} is disabled
+             */
+            PairMetrics metrics()
+            {
+                if (! ConfigMetrics.isEnabled()) return null;
+                PairMetrics result= metrics;
+                if (result == null) {
+                    synchronized (this) {
+                        result= metrics;
+                        if (result == null) {
+                            result= new PairMetrics(this);
+                            ConfigMetrics.register(result);
+                            metrics= result;
+                        }
+                    }
+                }
+                return result;
+            }
+
+            /**
+             * @return the overrides of the pair, created on first use; from then on the proxy getters consult them
+             */
+            ConfigOverrides<Reader> overrides()
+            {
+                ConfigOverrides<Reader> result= overrides;
+                if (result == null) {
+                    synchronized (this) {
+                        result= overrides;
+                        if (result == null) {
+                            result= new ConfigOverrides<>(this);
+                            overrides= result;
+                        }
+                    }
+                }
+                return result;
+            }
+
+            /**
+             * @return the handler of the reader if it is a proxy reader of the pair, whose getters look the
+             * {@link ConfigOverrides} up; null for the other readers
+             */
+            Object overridableHandler(Object reader)
+            {
+                if (! (reader instanceof InternalReaderAccess) || ((InternalReaderAccess) reader).__pair() != this
+                    || ! Proxy.isProxyClass(reader.getClass())) return null;
+                return Proxy.getInvocationHandler(reader);
+            }
+
+            /**
+             * @return the metrics recorded so far, null if none were
+             */
+            PairMetrics recordedMetrics()
+            {
+                return metrics;
+            }
+
+            /**
+             * Applies the @TransformBy function of the property, timing it when metrics are enabled
+             */
+            Object transform(PropertySlot slot, Object raw)
+            {
+                PairMetrics recording= metrics();
+                if (recording == null) {
+                    return slot.transformer.apply(raw);
+                }
+                long start= System.nanoTime();
+                try {
+                    return slot.transformer.apply(raw);
+                }
+                finally {
+                    recording.transformed(slot, System.nanoTime() - start);
+                }
+            }
+
+            /**
+             * Every reader of the pair is created here, so that @Interned pairs never have two equal readers
+             * @return a reader owning the values, which must already be complete
+             */
+            Reader newReader(ValueStore values, Engine engine)
+            {
+                Object reader= null;
+                PairMetrics recording= metrics();
+                // generated getters have nowhere to count reads
+                if (engine == Engine.GENERATED && recording == null) {
+                    GeneratedEngine.Classes generated= generatedClasses();
+                    if (generated != null) {
+                        reader= generated.newReader(this, values);
+                    }
+                }
+                if (reader == null) {
+                    reader= newProxy( readerProxyConstructor,
+                                      recording == null ? new ConfigReaderHandler( values)
+                                                        : new InstrumentedReaderHandler( values, recording));
+                }
+                if (internPool != null) {
+                    reader= internPool.intern(reader);
+                }
+                retainSecrets(values);
+                return readerClass.cast(reader);
+            }
+
+            /**
+             * Registers a new reader as a holder of the secrets among its values
+             * @throws IllegalStateException if one of them has been wiped already
+             */
+            private void retainSecrets(ValueStore values)
+            {
+                for (int i= 0; i < secretSlots.length; i++) {
+                    OffHeapValue secret= (OffHeapValue) values.stored(secretSlots[i]);
+                    if (secret == null) continue;
+                    try {
+                        secret.retain(secretSlots[i]);
+                    }
+                    catch (IllegalStateException ex) {
+                        for (int j= 0; j < i; j++) {
+                            OffHeapValue retained= (OffHeapValue) values.stored(secretSlots[j]);
+                            if (retained != null) { retained.release(); }
+                        }
+                        throw ex;
+                    }
+                }
+            }
+
+            /** the reader holding the values has been closed, its secrets are wiped unless other readers hold them */
+            void releaseSecrets(ValueStore values)
+            {
+                for (PropertySlot slot: secretSlots) {
+                    OffHeapValue secret= (OffHeapValue) values.stored(slot);
+                    if (secret != null) { secret.release(); }
+                }
+            }
+
+            /**
+             * Builds a reader from textual values, see {@link ReflectiveConfigurator#load(Class, Class, Map, String)}
+             * @param lookup returns the value of a key, null if there is none
+             * @throws InvalidConfigurationException with all the problems found
+             */
+            Reader load(Function<String, String> lookup, String prefix, Engine engine)
+            {
+                TextAssembler assembler= new TextAssembler(this);
+                for (PropertySlot slot: properties) {
+                    String key= prefix + slot.name;
+                    String text= lookup.apply(key);
+                    if (text == null) {
+                        text= lookup.apply(ValueConverters.environmentName(key));
+                    }
+                    if (text != null) {
+                        assembler.accept(slot, text);
+                    }
+                }
+                return readerClass.cast(assembler.build(engine));
+            }
+
+            /**
+             * Runs the pending transforms of the builder in parallel on the executor, then builds the reader.
+             * The builder can be used again right away, the build works on a copy of its values
+             * @return a future failing with an InvalidConfigurationException naming every property whose
+             * transform failed, or with the MissingPropertyException done() would throw
+             */
+            CompletableFuture<Reader> buildAsync(BuilderState builderState, Executor executor, Engine engine)
+            {
+                long start= System.nanoTime();
+                BuilderState state= builderState.copy();
+                try {
+                    // no point transforming the values of a configuration that cannot be built
+                    state.checkAssigned();
+                }
+                catch (MissingPropertyException ex) {
+                    CompletableFuture<Reader> failed= new CompletableFuture<>();
+                    failed.completeExceptionally(ex);
+                    return failed;
+                }
+                PropertySlot[] slots= state.pendingTransforms();
+                @SuppressWarnings("unchecked")
+                CompletableFuture<Object>[] transforms= new CompletableFuture[slots.length];
+                for (int i= 0; i < slots.length; i++) {
+                    PropertySlot slot= slots[i];
+                    Object raw= state.pendingValue(slot);
+                    transforms[i]= CompletableFuture.supplyAsync(() -> transform(slot, raw), executor);
+                }
+                return CompletableFuture.allOf(transforms).handle( (ignored, notUsed) -> {
+                    List<String> problems= new ArrayList<>();
+                    List<Throwable> causes= new ArrayList<>();
+                    for (int i= 0; i < slots.length; i++) {
+                        try {
+                            state.transformed(slots[i], transforms[i].join());
+                        }
+                        catch (CompletionException | CancellationException ex) {
+                            Throwable cause= ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                            problems.add(slots[i].name + ": transform failed: " + cause);
+                            causes.add(cause);
+                        }
+                    }
+                    if (! problems.isEmpty()) {
+                        InvalidConfigurationException failure= new InvalidConfigurationException(problems);
+                        causes.forEach(failure::addSuppressed);
+                        throw failure;
+                    }
+                    Reader result= newReader(state.complete(), engine);
+                    PairMetrics recording= metrics();
+                    if (recording != null) { recording.built(System.nanoTime() - start); }
+                    return result;
+                });
+            }
+
+            /**
+             * @return the property with the given name, null if there is none
+             */
+            PropertySlot property(String name)
+            {
+                int low= 0, high= properties.length - 1;
+                while (low <= high) {
+                    int mid= (low + high) >>> 1;
+                    int cmp= properties[mid].name.compareTo(name);
+                    if (cmp == 0) return properties[mid];
+                    if (cmp < 0) { low= mid + 1; }
+                    else         { high= mid - 1; }
+                }
+                return null;
+            }
+
+            /**
+             * Finds out which property a method reference such as <code>MyConfig::port</code> reads,
+             * by calling it on a reader that records the getter invoked
+             * @throws IllegalArgumentException unless the function calls exactly one getter of the pair
+             */
+            PropertySlot property(Function<? super Reader, ?> getter)
+            {
+                PropertySlot[] called= new PropertySlot[1];
+                Object recorder= newProxy( readerProxyConstructor, (proxy, m, args) -> {
+                    PropertySlot slot= getterSlots.get(m);
+                    Validate.isTrue(slot != null, "Not a getter of %s: %s", readerClass.getName(), m.getName());
+                    Validate.isTrue(called[0] == null, "More than one getter called: %s, %s", called[0], slot);
+                    called[0]= slot;
+                    Object zero= emptyValues.get(slot);
+                    if (zero == null && slot.type().isPrimitive()) {
+                        // byte, short, char and float are kept in the reference array, null there
+                        zero= Array.get(Array.newInstance(slot.type(), 1), 0);
+                    }
+                    return zero;
+                });
+                getter.apply(readerClass.cast(recorder));
+                Validate.isTrue(called[0] != null, "No getter of %s called", readerClass.getName());
+                return called[0];
+            }
+
+            /**
+             * The values collected by a builder, shared by the proxy and the generated builders
+             */
+            static final class BuilderState {
+                final ReflectiveBuilderImpl<?,?> impl;
+                /** the values set so far, null while the builder only records changes to {@link #base} */
+                SlotValues values;
+                final BitSet assigned;
+
+                /** the values of the reader this builder was cloned from, null for a fresh builder */
+                private ValueStore base;
+                private PropertySlot[] changedSlots;
+                private Object[] changedValues;
+                private int changedCount;
+
+                /** 
+                 * values supplied for properties with an eager @TransformBy, by ordinal, waiting for the build
+                 * to transform them; null unless {@link ReflectiveBuilderImpl#deferredTransforms} and such a property is set
+                 */
+                private Object[] pendingRaw;
+                private BitSet pending;
+
+                /** the properties set on this builder, kept only for pairs with @Interpolated properties */
+                private final BitSet touched;
+                private final boolean cloned;
+
+                BuilderState(ReflectiveBuilderImpl<?,?> impl_) {
+                    this.impl= impl_;
+                    this.values= impl_.emptyValues.copy();
+                    this.assigned= new BitSet(impl_.properties.length);
+                    this.touched= impl_.interpolation == null ? null : new BitSet(impl_.properties.length);
+                    this.cloned= false;
+                }
+
+                /** 
+                 * starts from the complete values of an existing reader, which are shared rather than copied:
+                 * the builder only records the properties set on it, see {@link OverlayValues}.
+                 * Except for pairs with @Interpolated properties, whose templates are only kept in flat values
+                 */
+                BuilderState(ReflectiveBuilderImpl<?,?> impl_, ValueStore initialValues) {
+                    this.impl= impl_;
+                    if (impl_.interpolation == null) {
+                        this.base= initialValues;
+                    }
+                    else {
+                        this.values= initialValues.flat().copy();
+                    }
+                    this.assigned= new BitSet(impl_.properties.length);
+                    this.assigned.set(0, impl_.properties.length);
+                    this.touched= impl_.interpolation == null ? null : new BitSet(impl_.properties.length);
+                    this.cloned= true;
+                }
+
+                /** an independent copy, for builds that proceed while the builder keeps being used */
+                private BuilderState(BuilderState other) {
+                    this.impl= other.impl;
+                    this.values= other.values == null ? null : other.values.copy();
+                    this.assigned= (BitSet) other.assigned.clone();
+                    this.base= other.base;
+                    this.changedSlots= other.changedSlots == null ? null : other.changedSlots.clone();
+                    this.changedValues= other.changedValues == null ? null : other.changedValues.clone();
+                    this.changedCount= other.changedCount;
+                    this.pendingRaw= other.pendingRaw == null ? null : other.pendingRaw.clone();
+                    this.pending= other.pending == null ? null : (BitSet) other.pending.clone();
+                    this.touched= other.touched == null ? null : (BitSet) other.touched.clone();
+                    this.cloned= other.cloned;
+                }
+
+                /**
+                 * Records a value supplied to the builder. The @TransformBy function of the property, if any,
+                 * runs right away, on first read for lazy ones, or when the configuration is built for builders
+                 * that declare doneAsync()
+                 */
+                void set(PropertySlot slot, Object val) {
+                    if (slot.transformer != null && ! slot.lazyTransform) {
+                        if (! impl.deferredTransforms) {
+                            store(slot, impl.transform(slot, val));
+                            return;
+                        }
+                        if (pendingRaw == null) {
+                            pendingRaw= new Object[impl.properties.length];
+                            pending= new BitSet(impl.properties.length);
+                        }
+                        pendingRaw[slot.ordinal]= val;
+                        pending.set(slot.ordinal);
+                        assigned.set(slot.ordinal);
+                        return;
+                    }
+                    store(slot, slot.lazyTransform ? new MemoizedTransform(impl, slot, val) : val);
+                }
+
+                /** the properties whose supplied value has not been transformed yet */
+                PropertySlot[] pendingTransforms() {
+                    if (pending == null || pending.isEmpty()) return new PropertySlot[0];
+                    PropertySlot[] result= new PropertySlot[pending.cardinality()];
+                    int n= 0;
+                    for (int i= pending.nextSetBit(0); i >= 0; i= pending.nextSetBit(i + 1)) {
+                        result[n++]= impl.properties[i];
+                    }
+                    return result;
+                }
+
+                Object pendingValue(PropertySlot slot) {
+                    return pendingRaw[slot.ordinal];
+                }
+
+                /** replaces the supplied value of the property by its transformed value */
+                void transformed(PropertySlot slot, Object value) {
+                    pending.clear(slot.ordinal);
+                    pendingRaw[slot.ordinal]= null;
+                    store(slot, value);
+                }
+
+                BuilderState copy() {
+                    return new BuilderState(this);
+                }
+
+                /**
+                 * @throws MissingPropertyException if a property without default has not been set
+                 */
+                void checkAssigned() {
+                    List<String> missing= null;
+                    for (PropertySlot slot: impl.properties) {
+                        if (assigned.get(slot.ordinal) || impl.defaulted.get(slot.ordinal)) continue;
+                        if (missing == null) { missing= new ArrayList<>(); }
+                        missing.add(slot.name);
+                    }
+                    if (missing != null) {
+                        throw new MissingPropertyException("Configuration missing the following properties: " + missing);
+                    }
+                }
+
+                private void store(PropertySlot slot, Object value) {
+                    value= slot.storable(value);
+                    if (touched != null) {
+                        touched.set(slot.ordinal);
+                    }
+                    if (base == null) {
+                        values.set(slot, value);
+                        assigned.set(slot.ordinal);
+                    }
+                    else {
+                        record(slot, value);
+                    }
+                }
+
+                private void record(PropertySlot slot, Object value) {
+                    for (int i= 0; i < changedCount; i++) {
+                        if (changedSlots[i] == slot) {
+                            changedValues[i]= value;
+                            return;
+                        }
+                    }
+                    if (changedCount * 4 >= impl.properties.length) {
+                        // most of the values change, an overlay would not save anything
+                        values= base.flat().copy();
+                        for (int i= 0; i < changedCount; i++) {
+                            values.set(changedSlots[i], changedValues[i]);
+                        }
+                        values.set(slot, value);
+                        base= null;
+                        changedSlots= null;
+                        changedValues= null;
+                        return;
+                    }
+                    if (changedSlots == null) {
+                        changedSlots= new PropertySlot[4];
+                        changedValues= new Object[4];
+                    }
+                    else if (changedCount == changedSlots.length) {
+                        changedSlots= Arrays.copyOf(changedSlots, changedCount * 2);
+                        changedValues= Arrays.copyOf(changedValues, changedCount * 2);
+                    }
+                    changedSlots[changedCount]= slot;
+                    changedValues[changedCount++]= value;
+                }
+
+                /**
+                 * Fills in the defaults, checks that every property has a value and that the values meet their constraints
+                 * @return a snapshot of the values, to be owned by the reader
+                 * @throws InvalidConfigurationException for violated constraints
+                 */
+                ValueStore complete() {
+                    checkAssigned();
+                    for (PropertySlot slot: pendingTransforms()) {
+                        transformed(slot, impl.transform(slot, pendingValue(slot)));
+                    }
+                    if (base != null) {
+                        if (impl.constraints != null) {
+                            impl.constraints.check(changedSlots, changedValues, changedCount);
+                        }
+                        return OverlayValues.derive(base, impl.properties.length, changedSlots, changedValues, changedCount);
+                    }
+                    SlotValues result= values.copy();
+                    for (PropertySlot slot: impl.properties) {
+                        // fill in any unset properties from the @DefaultsTo* annotations
+                        if (! assigned.get(slot.ordinal)) {
+                            result.copyFrom(impl.defaults, slot);
+                        }
+                    }
+                    if (impl.interpolation != null) {
+                        impl.interpolation.resolve(result, touched, cloned);
+                    }
+                    if (impl.constraints != null) {
+                        impl.constraints.check(result);
+                    }
+                    return result;
                 }
-                    
+            }
+
+            /**
+             * readers are equal when they belong to the same pair and hold the same values
+             */
+            boolean readerEquals(ValueStore values, Object other)
+            {
+                if (! (other instanceof InternalReaderAccess)) return false;
+                InternalReaderAccess otherReader= (InternalReaderAccess) other;
+                if (otherReader.__pair() != this) return false;
+                // the callers have checked identity already, interned readers are equal only to themselves
+                if (internPool != null) return false;
+                return sameValues(values, otherReader.__values());
+            }
+
+            boolean sameValues(ValueStore values, ValueStore otherValues)
+            {
+                if (values == otherValues) return true;
+                if (values instanceof SlotValues && otherValues instanceof SlotValues) {
+                    return values.equals(otherValues);
+                }
+                // boxed equals agrees with the Arrays.equals of SlotValues, doubles included
+                for (PropertySlot slot: properties) {
+                    if (! Objects.equals(values.compared(slot), otherValues.compared(slot))) return false;
+                }
+                return true;
+            }
+
+            /**
+             * the hash of the flat values, so that a reader hashes the same whichever way its values are stored
+             */
+            int readerHash(ValueStore values)
+            {
+                return values.flat().hashCode();
+            }
+
+            /**
+             * @return the values in property order, formatted like a map
+             */
+            String describe(ValueStore values)
+            {
+                StringBuilder result= new StringBuilder("{");
+                for (PropertySlot slot: properties) {
+                    if (slot.ordinal > 0) { result.append(", "); }
+                    result.append(slot.name).append('=').append(values.get(slot));
+                }
+                return result.append('}').toString();
             }
             
             private class ConfigBuilderHandler implements InvocationHandler {
-                final Map<String,Object> valueMap;
+                final BuilderState state;
                 
-                public ConfigBuilderHandler() {
-                    this.valueMap= new HashMap<>();
-                }
-                
-                public ConfigBuilderHandler(Map<String, Object> initialValues) {
-                    this.valueMap= new HashMap<>(initialValues);
+                public ConfigBuilderHandler(BuilderState state_) {
+                    this.state= state_;
                 }
 
                 @Override
                 public Object invoke(Object proxy, Method method, Object[] args)
                         throws Throwable {
-                    String mName= method.getName();
-                    if (mName.equals("done")) {
-                        return buildTheReader(this.valueMap);
+                    PropertySlot slot= setterSlots.get(method);
+                    if (slot != null) {
+                        state.set(slot, args[0]);
+                        return proxy;
                     }
-                    // here we assume that all the other methods have the shape
-                    // XXXBuilder propertyName( PropertyType val_)
-                    // because the builder constructor enforces this condition
-                    if (args.length != 1 ) {
-                        throw new IllegalStateException("Expecting propety setter, of type XXXBuilder propertyName( PropertyType val_)");
+                    if (method.getName().equals("done")) {
+                        return buildTheReader(this.state);
                     }
-                    Object val= args[0];
-                    if (transformers.containsKey(mName)) {
-                        val= transformers.get(mName).apply(val);
+                    if (method.getName().equals("doneAsync")) {
+                        Executor executor= args == null ? ForkJoinPool.commonPool() : (Executor) args[0];
+                        return buildAsync(this.state, executor, Engine.PROXY);
                     }
-                    valueMap.put(mName,val);
-                    return proxy;
+                    // the builder constructor enforces that all the other methods have the shape
+                    // XXXBuilder propertyName( PropertyType val_)
+                    throw new IllegalStateException("Expecting propety setter, of type XXXBuilder propertyName( PropertyType val_)");
                 }
             }
             
+            /** stands for a null result of a @Derived method */
+            private static final Object NULL= new Object();
+
             public class ConfigReaderHandler implements InvocationHandler {
                 
-                final Map<String,Object>myValueMap;
+                final ValueStore myValues;
+                /** computed on first use, 0 until then */
+                private int hash;
+                private volatile boolean closed;
+                /** the results of the @Derived methods, {@link #NULL} for null, null until computed */
+                private final AtomicReferenceArray<Object> derivedValues;
 
-                public ConfigReaderHandler(Map<String, Object> valueMap) {
-                    // copy the input to avoid side effects
-                    this.myValueMap= new HashMap<String, Object>(valueMap);
+                public ConfigReaderHandler(ValueStore values) {
+                    this.myValues= values;
+                    this.derivedValues= derived == null ? null : new AtomicReferenceArray<>(derived.size());
+                }
+
+                /**
+                 * @return the result of the @Derived method, computed once per reader; not kept while
+                 * {@link ConfigOverrides} of the reader are in effect, it may depend on them
+                 */
+                private Object derivedValue(Object proxy, int index) throws Throwable {
+                    ConfigOverrides<Reader> scoped= overrides;
+                    if (scoped != null && scoped.isActive(this)) {
+                        return derived.compute(index, proxy);
+                    }
+                    Object result= derivedValues.get(index);
+                    if (result == null) {
+                        // at most once: a derived method calling another one takes the lock again, it is reentrant
+                        synchronized (derivedValues) {
+                            result= derivedValues.get(index);
+                            if (result == null) {
+                                result= derived.compute(index, proxy);
+                                if (result == null) { result= NULL; }
+                                derivedValues.set(index, result);
+                            }
+                        }
+                    }
+                    return result == NULL ? null : result;
+                }
+
+                Object value(PropertySlot slot) {
+                    if (slot.offHeap != null) { checkOpen(slot.name); }
+                    ConfigOverrides<Reader> scoped= overrides;
+                    if (scoped != null) {
+                        Object overridden= scoped.overridden(this, slot);
+                        if (overridden != ConfigOverrides.NONE) return overridden;
+                    }
+                    return myValues.get(slot);
+                }
+
+                private void checkOpen(String what) {
+                    if (closed) throw new IllegalStateException("Reader closed, cannot access " + what);
+                }
+
+                private synchronized void close() {
+                    if (closed) return;
+                    closed= true;
+                    releaseSecrets(myValues);
+                }
+
+                int hash() {
+                    int h= hash;
+                    if (h == 0) {
+                        h= readerHash(myValues);
+                        hash= h;
+                    }
+                    return h;
                 }
 
                 @Override
@@ -354,46 +1606,84 @@ public class ReflectiveConfigurator {
                                        Object[] args)
                         throws Throwable 
                 {
+                    PropertySlot slot= getterSlots.get(m);
+                    if (slot != null) {
+                        return value(slot);
+                    }
+                    if (derived != null) {
+                        Integer index= derived.index(m);
+                        if (index != null) return derivedValue(proxy, index);
+                    }
+
                     String mName= m.getName();
                     
                     switch (mName) {
                     // Begin special cases of ReadOnly interface
-                        case "cloneBuilder":  { return makeBuilder(this.myValueMap); }
+                        case "cloneBuilder":  { checkOpen(mName);
+                                                return makeBuilder(this.myValues); }
+                        case "close": { Validate.isTrue(args == null);
+                                        close();
+                                        return null; }
                     
                         case "toString": { Validate.isTrue(args == null); 
-                                           return myValueMap.toString(); }
-                        case "__internalMap":  { Validate.isTrue(args == null);
-                                                 return this.myValueMap; }
+                                           return describe(myValues); }
+                        case "__pair":  { Validate.isTrue(args == null);
+                                          return ReflectiveBuilderImpl.this; }
+                        case "__values":  { Validate.isTrue(args == null);
+                                            return this.myValues; }
+                        case "__hash":  { Validate.isTrue(args == null);
+                                          return hash(); }
                     
                         case "equals" : { Validate.isTrue(args.length == 1);
+                                          if (args[0] == proxy) return true;
                                           if (args[0] == null) return false;
-                                          if (! (args[0] instanceof InternalReaderAccess ))
-                                              return false;
-                                          return (this.myValueMap.equals(((InternalReaderAccess) args[0]).__internalMap()));
+                                          return readerEquals(this.myValues, args[0]);
                                         }
                         case "hashCode" : { Validate.isTrue(args == null);
-                                            return myValueMap.hashCode();
+                                            return hash();
                                            }
                     } //End special cases
                     
-                    
-                    // all the rest are to be considered accessor methods
-                    if (myValueMap.containsKey(mName)) {
-                        return myValueMap.get(mName);
-                    }
-                    else {
-                        throw new IllegalStateException("Value not supplied for property: "+mName);
-                    }
-                        
+                    throw new IllegalStateException("Value not supplied for property: "+mName);
+                }
+
+            }
+
+            /**
+             * The handler of the readers created while {@link ConfigMetrics} is enabled, counts getter calls
+             */
+            class InstrumentedReaderHandler extends ConfigReaderHandler {
+
+                private final PairMetrics metrics;
+
+                InstrumentedReaderHandler(ValueStore values, PairMetrics metrics_) {
+                    super(values);
+                    this.metrics= metrics_;
                 }
 
+                @Override
+                public Object invoke ( Object proxy,
+                                       Method m,
+                                       Object[] args)
+                        throws Throwable
+                {
+                    PropertySlot slot= getterSlots.get(m);
+                    if (slot != null) {
+                        metrics.read(slot);
+                        return value(slot);
+                    }
+                    return super.invoke(proxy, m, args);
+                }
             }
             
             /**
              * to be used by us in helper methods to dynamically access the internal state of our implementation
              */
-            private static interface InternalReaderAccess {
-                Map<String,Object> __internalMap();
+            static interface InternalReaderAccess {
+                ReflectiveBuilderImpl<?,?> __pair();
+                ValueStore __values();
+                /** same as hashCode(), cached by the reader */
+                int __hash();
             }
         }// end of ReflectiveBuilderImple
         
@@ -0,0 +1,179 @@
+package me.mywiki.configurator;
+
+import java.util.Arrays;
+
+/**
+ * The values of a configuration, one array per {@link PropertySlot.Kind} so that
+ * primitive properties are stored unboxed. All instances of one pair have the same array lengths
+ */
+final class SlotValues extends ValueStore {
+
+    /**
+     * A reference value that is only decoded when first read, e.g. a string still sitting in a
+     * mapped snapshot file. Resolving must be idempotent and yield equal values, since two threads
+     * may race to resolve the same entry
+     */
+    interface Lazy {
+        Object resolve();
+    }
+
+    private static final Object[]  NO_REFS= new Object[0];
+    private static final int[]     NO_INTS= new int[0];
+    private static final long[]    NO_LONGS= new long[0];
+    private static final double[]  NO_DOUBLES= new double[0];
+    private static final boolean[] NO_BOOLEANS= new boolean[0];
+
+    final Object[]  refs;
+    final int[]     ints;
+    final long[]    longs;
+    final double[]  doubles;
+    final boolean[] booleans;
+    /**
+     * the templates of the @Interpolated properties, by index in {@link #refs}, null until there is one.
+     * Not part of the value, equals() ignores them, see {@link Interpolation}
+     */
+    private String[] templates;
+
+    SlotValues(int refCount, int intCount, int longCount, int doubleCount, int booleanCount) {
+        this.refs=     refCount == 0     ? NO_REFS     : new Object[refCount];
+        this.ints=     intCount == 0     ? NO_INTS     : new int[intCount];
+        this.longs=    longCount == 0    ? NO_LONGS    : new long[longCount];
+        this.doubles=  doubleCount == 0  ? NO_DOUBLES  : new double[doubleCount];
+        this.booleans= booleanCount == 0 ? NO_BOOLEANS : new boolean[booleanCount];
+    }
+
+    private SlotValues(SlotValues other) {
+        // the empty arrays are shared, clone() on them would allocate for nothing
+        this.refs=     other.refs.length == 0     ? NO_REFS     : other.refs.clone();
+        this.ints=     other.ints.length == 0     ? NO_INTS     : other.ints.clone();
+        this.longs=    other.longs.length == 0    ? NO_LONGS    : other.longs.clone();
+        this.doubles=  other.doubles.length == 0  ? NO_DOUBLES  : other.doubles.clone();
+        this.booleans= other.booleans.length == 0 ? NO_BOOLEANS : other.booleans.clone();
+        this.templates= other.templates == null ? null : other.templates.clone();
+    }
+
+    SlotValues copy() {
+        return new SlotValues(this);
+    }
+
+    /** @return an instance with the same layout and all values zero/null */
+    SlotValues emptyCopy() {
+        return new SlotValues(refs.length, ints.length, longs.length, doubles.length, booleans.length);
+    }
+
+    @Override
+    Object get(PropertySlot slot) {
+        switch (slot.kind) {
+            case INT:     return ints[slot.index];
+            case LONG:    return longs[slot.index];
+            case DOUBLE:  return doubles[slot.index];
+            case BOOLEAN: return booleans[slot.index];
+            default:      return ref(slot.index);
+        }
+    }
+
+    @Override
+    SlotValues flat() {
+        return this;
+    }
+
+    @Override
+    int depth() {
+        return 0;
+    }
+
+    @Override
+    Object stored(PropertySlot slot) {
+        return slot.kind == PropertySlot.Kind.REF ? refs[slot.index] : get(slot);
+    }
+
+    /**
+     * @return the reference value at index, resolving it in place if it is {@link Lazy},
+     * a new view of it if it is an {@link OffHeapValue}; a {@link MemoizedTransform} is resolved but kept
+     */
+    Object ref(int index) {
+        Object value= refs[index];
+        if (value instanceof MemoizedTransform) {
+            return ((MemoizedTransform) value).resolve();
+        }
+        if (value instanceof Lazy) {
+            value= ((Lazy) value).resolve();
+            refs[index]= value;
+        }
+        else if (value instanceof OffHeapValue) {
+            return ((OffHeapValue) value).view();
+        }
+        return value;
+    }
+
+    /**
+     * resolves all the {@link Lazy} references, for the consumers that read {@link #refs} directly,
+     * except the lazy transforms: those only run when the property is read
+     */
+    SlotValues resolveAll() {
+        for (int i= 0; i < refs.length; i++) {
+            if (! (refs[i] instanceof MemoizedTransform)) { ref(i); }
+        }
+        return this;
+    }
+
+    /** sets a value supplied boxed, as it comes from a proxy invocation */
+    void set(PropertySlot slot, Object value) {
+        switch (slot.kind) {
+            case INT:     ints[slot.index]= (Integer) value; break;
+            case LONG:    longs[slot.index]= (Long) value; break;
+            case DOUBLE:  doubles[slot.index]= (Double) value; break;
+            case BOOLEAN: booleans[slot.index]= (Boolean) value; break;
+            default:      refs[slot.index]= value;
+        }
+    }
+
+    /** @return the template the value of the @Interpolated property was expanded from, null if it was not */
+    String template(PropertySlot slot) {
+        return templates == null ? null : templates[slot.index];
+    }
+
+    void setTemplate(PropertySlot slot, String template) {
+        if (templates == null) {
+            if (template == null) return;
+            templates= new String[refs.length];
+        }
+        templates[slot.index]= template;
+    }
+
+    /** copies the value of one property from another instance of the same layout, without boxing */
+    void copyFrom(SlotValues source, PropertySlot slot) {
+        switch (slot.kind) {
+            case INT:     ints[slot.index]= source.ints[slot.index]; break;
+            case LONG:    longs[slot.index]= source.longs[slot.index]; break;
+            case DOUBLE:  doubles[slot.index]= source.doubles[slot.index]; break;
+            case BOOLEAN: booleans[slot.index]= source.booleans[slot.index]; break;
+            default:      refs[slot.index]= source.refs[slot.index];
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (! (obj instanceof SlotValues)) return false;
+        SlotValues other= (SlotValues) obj;
+        resolveAll();
+        other.resolveAll();
+        return Arrays.equals(ints, other.ints)
+            && Arrays.equals(longs, other.longs)
+            && Arrays.equals(doubles, other.doubles)
+            && Arrays.equals(booleans, other.booleans)
+            && Arrays.equals(refs, other.refs);
+    }
+
+    @Override
+    public int hashCode() {
+        resolveAll();
+        int result= Arrays.hashCode(refs);
+        result= 31 * result + Arrays.hashCode(ints);
+        result= 31 * result + Arrays.hashCode(longs);
+        result= 31 * result + Arrays.hashCode(doubles);
+        result= 31 * result + Arrays.hashCode(booleans);
+        return result;
+    }
+}
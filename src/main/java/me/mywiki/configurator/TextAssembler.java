@@ -0,0 +1,75 @@
+package me.mywiki.configurator;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl;
+import me.mywiki.configurator.ReflectiveConfigurator.ReflectiveBuilderImpl.BuilderState;
+
+/**
+ * Collects the textual values of a configuration, in any order, converts them with the
+ * {@link PropertySlot#converter} of their property and keeps track of the problems,
+ * which are reported all together, in property order, by {@link #build(Engine)}
+ */
+final class TextAssembler {
+
+    private final ReflectiveBuilderImpl<?,?> impl;
+    private final BuilderState state;
+    private final BitSet seen;
+    /** by property ordinal, null if none */
+    private final String[] problems;
+
+    TextAssembler(ReflectiveBuilderImpl<?,?> impl_) {
+        this.impl= impl_;
+        this.state= new BuilderState(impl_);
+        this.seen= new BitSet(impl_.properties.length);
+        this.problems= new String[impl_.properties.length];
+    }
+
+    /**
+     * @param text the textual value, null for an explicit null; a later value for the same property replaces it
+     */
+    void accept(PropertySlot slot, String text)
+    {
+        seen.set(slot.ordinal);
+        problems[slot.ordinal]= null;
+        if (text == null) {
+            if (slot.type().isPrimitive()) { problems[slot.ordinal]= slot.name + ": null is not a " + slot.type().getName(); }
+            else                           { state.set(slot, null); }
+            return;
+        }
+        if (slot.converter == null) {
+            problems[slot.ordinal]= slot.name + ": values of type " + slot.type().getName() + " cannot be read from text";
+            return;
+        }
+        try {
+            state.set(slot, slot.converter.apply(text));
+        }
+        catch (IllegalArgumentException ex) {
+            problems[slot.ordinal]= slot.name + ": cannot convert \"" + text + "\" to " + slot.type().getName();
+        }
+    }
+
+    /**
+     * @throws InvalidConfigurationException listing the values that could not be converted and the missing ones
+     */
+    Object build(Engine engine)
+    {
+        List<String> all= new ArrayList<>();
+        for (PropertySlot slot: impl.properties) {
+            if (problems[slot.ordinal] != null) {
+                all.add(problems[slot.ordinal]);
+            }
+            else if (! seen.get(slot.ordinal) && ! impl.defaulted.get(slot.ordinal)) {
+                all.add(slot.name + ": missing");
+            }
+        }
+        if (! all.isEmpty()) {
+            throw new InvalidConfigurationException(all);
+        }
+        return impl.buildTheReader(state, engine);
+    }
+}
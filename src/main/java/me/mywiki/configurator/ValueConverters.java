@@ -0,0 +1,125 @@
+package me.mywiki.configurator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.function.Function;
+
+/**
+ * Conversions between the textual form found in configuration files and property types
+ */
+final class ValueConverters {
+
+    private ValueConverters() { }
+
+    /**
+     * @param loader resolves the values of Class properties
+     * @return the conversion to the type, null if the type has no textual form we know of
+     */
+    static Function<String, Object> forType(Class<?> type, ClassLoader loader)
+    {
+        if (type == String.class)                              return s -> s;
+        if (type == int.class     || type == Integer.class)    return s -> Integer.valueOf(s.trim());
+        if (type == long.class    || type == Long.class)       return s -> Long.valueOf(s.trim());
+        if (type == double.class  || type == Double.class)     return s -> Double.valueOf(s.trim());
+        if (type == float.class   || type == Float.class)      return s -> Float.valueOf(s.trim());
+        if (type == short.class   || type == Short.class)      return s -> Short.valueOf(s.trim());
+        if (type == byte.class    || type == Byte.class)       return s -> Byte.valueOf(s.trim());
+        if (type == boolean.class || type == Boolean.class)    return ValueConverters::parseBoolean;
+        if (type == char.class    || type == Character.class)  return ValueConverters::parseChar;
+        if (type.isEnum())                                     return enumConverter(type.asSubclass(Enum.class));
+        if (type == Duration.class)                            return ValueConverters::parseDuration;
+        if (type == Path.class)                                return s -> Paths.get(s.trim());
+        if (type == Class.class)                               return s -> loadClass(s.trim(), loader);
+        return null;
+    }
+
+    /**
+     * @return the textual form of values of the type, the inverse of {@link #forType}:
+     * enum constant names, class names, String.valueOf() for everything else
+     */
+    static Function<Object, String> formatterForType(Class<?> type)
+    {
+        if (type.isEnum())        return v -> ((Enum<?>) v).name();
+        if (type == Class.class)  return v -> ((Class<?>) v).getName();
+        return String::valueOf;
+    }
+
+    /**
+     * ISO-8601 (PT30S), or a number followed by one of the units ms, s, m, h, d (30s, 500ms)
+     */
+    private static Object parseDuration(String s)
+    {
+        String trimmed= s.trim();
+        try {
+            if (trimmed.startsWith("P") || trimmed.startsWith("p") || trimmed.startsWith("-P")) {
+                return Duration.parse(trimmed);
+            }
+        }
+        catch (DateTimeParseException ex) {
+            throw new IllegalArgumentException("not a duration: " + s, ex);
+        }
+        int unitStart= trimmed.length();
+        while (unitStart > 0 && Character.isLetter(trimmed.charAt(unitStart - 1))) { unitStart--; }
+        long amount= Long.parseLong(trimmed.substring(0, unitStart).trim());
+        switch (trimmed.substring(unitStart)) {
+            case "ms": return Duration.ofMillis(amount);
+            case "s":  return Duration.ofSeconds(amount);
+            case "m":  return Duration.ofMinutes(amount);
+            case "h":  return Duration.ofHours(amount);
+            case "d":  return Duration.ofDays(amount);
+            default:   throw new IllegalArgumentException("not a duration: " + s);
+        }
+    }
+
+    private static Object loadClass(String name, ClassLoader loader)
+    {
+        try {
+            return Class.forName(name, false, loader);
+        }
+        catch (ClassNotFoundException ex) {
+            throw new IllegalArgumentException("class not found: " + name, ex);
+        }
+    }
+
+    /**
+     * @return the conventional environment variable name of a property: maxOpenConnections, db.url become
+     * MAX_OPEN_CONNECTIONS, DB_URL
+     */
+    static String environmentName(String name)
+    {
+        StringBuilder result= new StringBuilder(name.length() + 8);
+        for (int i= 0; i < name.length(); i++) {
+            char c= name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(name.charAt(i - 1))) {
+                result.append('_');
+            }
+            result.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : '_');
+        }
+        return result.toString();
+    }
+
+    /**
+     * unlike Boolean.valueOf, anything but true/false is an error
+     */
+    private static Object parseBoolean(String s)
+    {
+        String trimmed= s.trim();
+        if (trimmed.equalsIgnoreCase("true"))  return Boolean.TRUE;
+        if (trimmed.equalsIgnoreCase("false")) return Boolean.FALSE;
+        throw new IllegalArgumentException("not a boolean: " + s);
+    }
+
+    private static Object parseChar(String s)
+    {
+        if (s.length() != 1) throw new IllegalArgumentException("not a single character: " + s);
+        return s.charAt(0);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Function<String, Object> enumConverter(Class<? extends Enum> enumType)
+    {
+        return s -> Enum.valueOf(enumType, s.trim());
+    }
+}
@@ -0,0 +1,33 @@
+package me.mywiki.configurator;
+
+/**
+ * The values a reader holds: either all of them, {@link SlotValues}, or only those that differ
+ * from the reader it was cloned from, {@link OverlayValues}
+ */
+abstract class ValueStore {
+
+    /** @return the value, boxed if the property is primitive */
+    abstract Object get(PropertySlot slot);
+
+    /** @return the value as kept, i.e. without resolving {@link SlotValues.Lazy} ones nor viewing {@link OffHeapValue} ones */
+    abstract Object stored(PropertySlot slot);
+
+    /**
+     * @return what equals() and hashCode() of the readers compare for the property: the value, except 
+     * for lazy transforms, compared by their input so that they do not run, see {@link MemoizedTransform#equals},
+     * and @OffHeap values, compared as stored rather than through a new view
+     */
+    Object compared(PropertySlot slot) {
+        Object stored= stored(slot);
+        return stored instanceof MemoizedTransform || stored instanceof OffHeapValue ? stored : get(slot);
+    }
+
+    /**
+     * @return all the values in the arrays of a SlotValues, which may be this instance itself
+     * and must therefore not be modified
+     */
+    abstract SlotValues flat();
+
+    /** number of overlays between this store and its flat values, 0 for SlotValues */
+    abstract int depth();
+}
@@ -0,0 +1,159 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import me.mywiki.configurator.ConfigCodec;
+import me.mywiki.configurator.ConfigDiff;
+import me.mywiki.configurator.ConfigOverrides;
+import me.mywiki.configurator.ConfigSnapshot;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.ConfigPair;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.Range;
+
+/**
+ * configBuilderFor with builders generated by simpleJconfig-processor,
+ * see {@link CompiledBuilderTests_PlainConfig_GeneratedConfig}
+ */
+public class CompiledBuilderTests {
+
+    @Rule
+    public TemporaryFolder tmp= new TemporaryFolder();
+
+    @ConfigPair(builder= PlainConfig.Builder.class)
+    public static interface PlainConfig {
+        int port();
+
+        public static interface Builder {
+            Builder port(int v);
+            PlainConfig done();
+        }
+
+        public static interface OtherBuilder {
+            OtherBuilder host(String v);
+            PlainConfig done();
+        }
+    }
+
+    @ConfigPair(builder= OverriddenConfig.Builder.class)
+    public static interface OverriddenConfig {
+        int port();
+
+        public static interface Builder {
+            Builder port(int v);
+            OverriddenConfig done();
+        }
+    }
+
+    public static interface RangedConfig {
+        @Range(min= 1, max= 65535)
+        int port();
+
+        public static interface Builder {
+            Builder port(int v);
+            RangedConfig done();
+        }
+    }
+
+    @Test
+    public void testCompiledBuilderIsPreferred() {
+        PlainConfig.Builder builder= ReflectiveConfigurator.configBuilderFor(PlainConfig.class, PlainConfig.Builder.class);
+        assertThat(builder, instanceOf(CompiledBuilderTests_PlainConfig_GeneratedConfig.class));
+        assertThat(builder.port(8080).done().port(), is(8080));
+
+        // an explicit engine is honored
+        for (Engine engine: Engine.values()) {
+            assertFalse(ReflectiveConfigurator.configBuilderFor(PlainConfig.class, PlainConfig.Builder.class, engine)
+                        instanceof CompiledBuilderTests_PlainConfig_GeneratedConfig);
+        }
+
+        // the compiled class is not a builder of this pair, which still gets validated
+        try {
+            ReflectiveConfigurator.precompile(PlainConfig.class, PlainConfig.OtherBuilder.class);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // host is not a property of the reader
+        }
+    }
+
+    /**
+     * the overrides do not change the builders handed out, only the proxy readers can be overridden
+     */
+    @Test
+    public void testOverridesKeepTheCompiledBuilder() {
+        ConfigOverrides<OverriddenConfig> overrides= ConfigOverrides.of(OverriddenConfig.class, OverriddenConfig.Builder.class);
+        OverriddenConfig.Builder builder= ReflectiveConfigurator.configBuilderFor(OverriddenConfig.class, OverriddenConfig.Builder.class);
+        assertThat(builder, instanceOf(CompiledBuilderTests_OverriddenConfig_GeneratedConfig.class));
+        OverriddenConfig compiled= builder.port(8080).done();
+        try {
+            overrides.with(compiled, OverriddenConfig::port, 8443);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("Only PROXY readers"));
+        }
+        OverriddenConfig proxy= ReflectiveConfigurator.configBuilderFor(OverriddenConfig.class, OverriddenConfig.Builder.class, Engine.PROXY)
+                                                      .port(8080)
+                                                      .done();
+        assertTrue(Proxy.isProxyClass(proxy.getClass()));
+        assertThat(overrides.with(proxy, OverriddenConfig::port, 8443).call(proxy::port), is(8443));
+        assertThat(compiled.port(), is(8080));
+    }
+
+    /**
+     * the compiled readers behave like those of the runtime engines
+     */
+    @Test
+    public void testCompiledReadersTakePartInTheRuntimeProtocol() throws Exception {
+        PlainConfig compiled= ReflectiveConfigurator.configBuilderFor(PlainConfig.class, PlainConfig.Builder.class).port(8080).done();
+        for (Engine engine: Engine.values()) {
+            PlainConfig runtime= ReflectiveConfigurator.configBuilderFor(PlainConfig.class, PlainConfig.Builder.class, engine).port(8080).done();
+            assertEquals(runtime, compiled);
+            assertEquals(compiled, runtime);
+            assertThat(compiled.hashCode(), is(runtime.hashCode()));
+            assertThat(compiled.toString(), is(runtime.toString()));
+        }
+        PlainConfig loaded= ReflectiveConfigurator.load( PlainConfig.class, PlainConfig.Builder.class,
+                                                         Collections.singletonMap("port", "8080"), "");
+        assertEquals(compiled, loaded);
+        assertEquals(loaded, compiled);
+
+        ConfigCodec<PlainConfig> codec= ConfigCodec.of(PlainConfig.class, PlainConfig.Builder.class);
+        assertThat(codec.toJson(compiled), is("{\"port\":8080}"));
+        assertEquals(compiled, codec.readJson(codec.toJson(compiled)));
+
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        ConfigSnapshot.write(compiled, file);
+        assertEquals(compiled, ConfigSnapshot.load(PlainConfig.class, PlainConfig.Builder.class, file));
+
+        PlainConfig other= ReflectiveConfigurator.configBuilderFor(PlainConfig.class, PlainConfig.Builder.class).port(8443).done();
+        assertThat(ConfigDiff.between(compiled, other).changedProperties(), is(Arrays.asList("port")));
+    }
+
+    @Test
+    public void testRuntimeOnlyAnnotationsSkipTheCompiledBuilder() {
+        RangedConfig.Builder builder= ReflectiveConfigurator.configBuilderFor(RangedConfig.class, RangedConfig.Builder.class);
+        assertTrue(Proxy.isProxyClass(builder.getClass()));
+        try {
+            builder.port(0).done();
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems().toString(), is("[port: 0 is not in [1, 65535]]"));
+        }
+    }
+}
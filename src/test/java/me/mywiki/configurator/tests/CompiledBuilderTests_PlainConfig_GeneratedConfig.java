@@ -0,0 +1,51 @@
+package me.mywiki.configurator.tests;
+
+/**
+ * Generated by simpleJconfig-processor from {@link me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig}, do not edit
+ */
+@SuppressWarnings("unchecked")
+public final class CompiledBuilderTests_PlainConfig_GeneratedConfig implements me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig.Builder {
+
+
+    private int port;
+    private boolean has_port;
+
+    public CompiledBuilderTests_PlainConfig_GeneratedConfig() { }
+
+    @Override
+    public me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig.Builder port(int val_) {
+        this.port= val_;
+        this.has_port= true;
+        return this;
+    }
+
+    @Override
+    public me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig done() {
+        java.util.List<String> missing= new java.util.ArrayList<>();
+        if (! this.has_port) { missing.add("port"); }
+        if (! missing.isEmpty()) {
+            throw new me.mywiki.configurator.ReflectiveConfigurator.MissingPropertyException("Configuration missing the following properties: " + missing);
+        }
+        return new Reader(
+            this.port);
+    }
+
+    private static final me.mywiki.configurator.CompiledReader.Pair PAIR= me.mywiki.configurator.CompiledReader.Pair.of(me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig.class, me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig.Builder.class, "port");
+
+    private static final class Reader extends me.mywiki.configurator.CompiledReader implements me.mywiki.configurator.tests.CompiledBuilderTests.PlainConfig {
+        private final int port;
+
+        Reader(int port_) {
+            super(PAIR);
+            this.port= port_;
+        }
+
+        @Override
+        public int port() { return this.port; }
+
+        @Override
+        protected Object[] __valueArray() {
+            return new Object[] { this.port };
+        }
+    }
+}
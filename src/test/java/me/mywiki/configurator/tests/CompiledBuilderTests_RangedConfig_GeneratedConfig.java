@@ -0,0 +1,24 @@
+package me.mywiki.configurator.tests;
+
+/**
+ * Written by hand, the processor rejects @Range: a compiled builder found for a pair with constraints,
+ * e.g. left over by an older build, which configBuilderFor must not use
+ */
+public final class CompiledBuilderTests_RangedConfig_GeneratedConfig implements CompiledBuilderTests.RangedConfig.Builder {
+
+    private int port;
+
+    public CompiledBuilderTests_RangedConfig_GeneratedConfig() { }
+
+    @Override
+    public CompiledBuilderTests.RangedConfig.Builder port(int val_) {
+        this.port= val_;
+        return this;
+    }
+
+    @Override
+    public CompiledBuilderTests.RangedConfig done() {
+        int value= this.port;
+        return () -> value;
+    }
+}
@@ -0,0 +1,174 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Test;
+
+import me.mywiki.configurator.ConfigBatch;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.Indexed;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+
+public class ConfigBatchTests {
+
+    public static interface ShardConfig {
+        @TransformBy(_fun = Lower.class)
+        String name();
+        @DefaultsToInteger(val= 10)
+        int replicas();
+        long capacity();
+
+        static class Lower implements Function<Object, Object> {
+            @Override public Object apply(Object t) { return ((String) t).toLowerCase(); }
+        }
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder replicas(int v);
+            Builder capacity(long v);
+            ShardConfig done();
+        }
+    }
+
+    @Test
+    public void testRows() {
+        ConfigBatch<ShardConfig> batch= ConfigBatch.of(ShardConfig.class, ShardConfig.Builder.class, "name", "capacity", "replicas");
+        List<Object[]> rows= Arrays.asList( new Object[] { "EU-1", 100L, 3 },
+                                            new Object[] { "US-1", 200L, null });
+        List<ShardConfig> shards= batch.build(rows.iterator()).orThrow();
+        assertThat(shards.size(), is(2));
+        assertThat(shards.get(0).name(), is("eu-1"));
+        assertThat(shards.get(0).replicas(), is(3));
+        assertThat(shards.get(1).replicas(), is(10));
+        assertThat(shards.get(1).capacity(), is(200L));
+        // same as going through the builder
+        assertEquals( ReflectiveConfigurator.configBuilderFor(ShardConfig.class, ShardConfig.Builder.class)
+                                            .name("EU-1").capacity(100L).replicas(3).done(),
+                      shards.get(0));
+    }
+
+    @Test
+    public void testColumns() {
+        int count= 5000;
+        String[] names= new String[count];
+        long[] capacities= new long[count];
+        int[] replicas= new int[count];
+        for (int i= 0; i < count; i++) {
+            names[i]= "S" + i;
+            capacities[i]= i * 10L;
+            replicas[i]= i % 7;
+        }
+        for (Engine engine: Engine.values()) {
+            for (boolean parallel: new boolean[] { false, true }) {
+                List<ShardConfig> shards= ConfigBatch.of(ShardConfig.class, ShardConfig.Builder.class, engine, "name", "capacity", "replicas")
+                                                     .buildColumns(parallel, names, capacities, replicas)
+                                                     .orThrow();
+                assertThat(shards.size(), is(count));
+                for (int i= 0; i < count; i++) {
+                    assertThat(shards.get(i).name(), is("s" + i));
+                    assertThat(shards.get(i).capacity(), is(i * 10L));
+                    assertThat(shards.get(i).replicas(), is(i % 7));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelStream() {
+        List<Object[]> rows= new ArrayList<>();
+        for (int i= 0; i < 2000; i++) {
+            rows.add(new Object[] { "S" + i, (long) i });
+        }
+        ConfigBatch.Result<ShardConfig> result= ConfigBatch.of(ShardConfig.class, ShardConfig.Builder.class, "name", "capacity")
+                                                           .build(rows.parallelStream());
+        assertTrue(result.isComplete());
+        for (int i= 0; i < rows.size(); i++) {
+            assertThat(result.readers().get(i).capacity(), is((long) i));
+        }
+    }
+
+    /**
+     * bad rows are reported with their number, the other rows are still built
+     */
+    @Test
+    public void testFailuresPerRow() {
+        ConfigBatch<ShardConfig> batch= ConfigBatch.of(ShardConfig.class, ShardConfig.Builder.class, "name", "capacity");
+        List<Object[]> rows= Arrays.asList( new Object[] { "ok", 1L },
+                                            new Object[] { null, "big" },
+                                            new Object[] { "short" },
+                                            new Object[] { "ok too", 2L });
+        ConfigBatch.Result<ShardConfig> result= batch.build(rows.iterator());
+        assertFalse(result.isComplete());
+        assertThat(result.readers().get(0).name(), is("ok"));
+        assertNull(result.readers().get(1));
+        assertNull(result.readers().get(2));
+        assertThat(result.readers().get(3).capacity(), is(2L));
+        assertThat(result.failures().keySet(), is(new TreeSet<>(Arrays.asList(1, 2))));
+        assertThat(result.failures().get(1), is(Arrays.asList("name: missing", "capacity: expected long, got java.lang.String")));
+        try {
+            result.orThrow();
+            fail();
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems().size(), is(3));
+            assertThat(ex.getProblems().get(0), StringContains.containsString("row 1: name"));
+        }
+    }
+
+    public static interface TaggedConfig {
+        String name();
+        @Indexed
+        Set<String> tags();
+        @Indexed
+        Map<String, Integer> limits();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder tags(Set<String> v);
+            Builder limits(Map<String, Integer> v);
+            TaggedConfig done();
+        }
+    }
+
+    /**
+     * values the property cannot store fail their row only
+     */
+    @Test
+    public void testInvalidIndexedValues() {
+        ConfigBatch<TaggedConfig> batch= ConfigBatch.of(TaggedConfig.class, TaggedConfig.Builder.class, "name", "tags", "limits");
+        Map<String, Integer> nullKey= new HashMap<>();
+        nullKey.put(null, 1);
+        List<Object[]> rows= Arrays.asList( new Object[] { "ok", Collections.singleton("a"), Collections.singletonMap("x", 1) },
+                                            new Object[] { "null tag", new HashSet<>(Arrays.asList("a", null)), Collections.emptyMap() },
+                                            new Object[] { "null key", Collections.emptySet(), nullKey });
+        ConfigBatch.Result<TaggedConfig> result= batch.build(rows.iterator());
+        assertThat(result.readers().get(0).tags(), is(Collections.singleton("a")));
+        assertNull(result.readers().get(1));
+        assertNull(result.readers().get(2));
+        assertThat(result.failures().keySet(), is(new TreeSet<>(Arrays.asList(1, 2))));
+        assertThat(result.failures().get(1).size(), is(1));
+        assertThat(result.failures().get(1).get(0), StringContains.containsString("tags: invalid value"));
+        assertThat(result.failures().get(2).get(0), StringContains.containsString("limits: invalid value"));
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void testRequiredColumn() {
+        ConfigBatch.of(ShardConfig.class, ShardConfig.Builder.class, "name");
+    }
+}
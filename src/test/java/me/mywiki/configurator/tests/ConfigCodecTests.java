@@ -0,0 +1,221 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Properties;
+import java.io.StringReader;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Test;
+
+import me.mywiki.configurator.ConfigCodec;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.OffHeap;
+
+public class ConfigCodecTests {
+
+    public static enum Level { LOW, HIGH }
+
+    public static interface CodecConfig {
+        String name();
+        @DefaultsToInteger(val= 5)
+        int retries();
+        double ratio();
+        boolean enabled();
+        Long limit();
+        Level level();
+        Duration timeout();
+        Path dir();
+        Class<?> driver();
+        char separator();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder retries(int v);
+            Builder ratio(double v);
+            Builder enabled(boolean v);
+            Builder limit(Long v);
+            Builder level(Level v);
+            Builder timeout(Duration v);
+            Builder dir(Path v);
+            Builder driver(Class<?> v);
+            Builder separator(char v);
+            CodecConfig done();
+        }
+    }
+
+    private static CodecConfig sample(Engine engine, String name, Long limit) {
+        return ReflectiveConfigurator.configBuilderFor(CodecConfig.class, CodecConfig.Builder.class, engine)
+                                     .name(name)
+                                     .ratio(Double.NaN)
+                                     .enabled(true)
+                                     .limit(limit)
+                                     .level(Level.HIGH)
+                                     .timeout(Duration.ofSeconds(90))
+                                     .dir(Paths.get("data"))
+                                     .driver(Integer.class)
+                                     .separator(':')
+                                     .done();
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        String name= "caf\u00e9 \"quoted\" \\ line\nnext \ud83d\ude00";
+        for (Engine engine: Engine.values()) {
+            ConfigCodec<CodecConfig> codec= ConfigCodec.of(CodecConfig.class, CodecConfig.Builder.class, engine);
+            CodecConfig config= sample(engine, name, null);
+            String json= codec.toJson(config);
+            assertThat(json, is("{\"dir\":\"data\",\"driver\":\"java.lang.Integer\",\"enabled\":true,\"level\":\"HIGH\","
+                                + "\"limit\":null,\"name\":\"caf\u00e9 \\\"quoted\\\" \\\\ line\\nnext \ud83d\ude00\","
+                                + "\"ratio\":\"NaN\",\"retries\":5,\"separator\":\":\",\"timeout\":\"PT1M30S\"}"));
+            assertEquals(config, codec.readJson(json));
+
+            ByteBuffer buffer= ByteBuffer.allocate(1024);
+            codec.writeJson(config, buffer);
+            assertThat(new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8), is(json));
+        }
+    }
+
+    @Test
+    public void testPropertiesRoundTrip() throws Exception {
+        ConfigCodec<CodecConfig> codec= ConfigCodec.of(CodecConfig.class, CodecConfig.Builder.class);
+        StringWriter out= new StringWriter();
+        codec.writeProperties(sample(Engine.PROXY, "n", null), out);
+        assertFalse(out.toString().contains("limit"));
+
+        CodecConfig config= sample(Engine.PROXY, " a=b:c #\u00e9\t", 7L);
+        out= new StringWriter();
+        codec.writeProperties(config, out);
+        String text= out.toString();
+        assertTrue(text.chars().allMatch(c -> c < 0x80));
+
+        // java.util.Properties reads the same values
+        Properties props= new Properties();
+        props.load(new StringReader(text));
+        assertThat(props.getProperty("name"), is(" a=b:c #\u00e9\t"));
+        assertThat(props.getProperty("separator"), is(":"));
+
+        assertEquals(config, codec.readProperties(text));
+    }
+
+    @Test
+    public void testPropertiesSyntax() {
+        ConfigCodec<CodecConfig> codec= ConfigCodec.of(CodecConfig.class, CodecConfig.Builder.class);
+        CodecConfig config= codec.readProperties(
+                "# comment\n"
+              + "! another one\n"
+              + "\n"
+              + "   name   =  first, \\\n"
+              + "            second\r\n"
+              + "ratio:0.5\n"
+              + "enabled true\n"
+              + "limit=12\n"
+              + "level=LOW\n"
+              + "timeout = 30s\n"
+              + "dir = /tmp\n"
+              + "driver = java.lang.String\n"
+              + "separator = \\u0041\n"
+              + "retries = 1\n"
+              + "retries = 2\n"
+              + "unknown = ignored");
+        assertThat(config.name(), is("first, second"));
+        assertThat(config.ratio(), is(0.5));
+        assertThat(config.enabled(), is(true));
+        assertThat(config.limit(), is(12L));
+        assertThat(config.timeout(), is(Duration.ofSeconds(30)));
+        assertThat(config.separator(), is('A'));
+        assertThat(config.retries(), is(2));
+    }
+
+    @Test
+    public void testProblemsAreCollected() {
+        ConfigCodec<CodecConfig> codec= ConfigCodec.of(CodecConfig.class, CodecConfig.Builder.class);
+        try {
+            codec.readJson("{ \"name\": \"n\", \"ratio\": \"x\", \"enabled\": null, \"level\": \"HIGH\", \"extra\": 1 }");
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems(), is(Arrays.asList(
+                    "dir: missing",
+                    "driver: missing",
+                    "enabled: null is not a boolean",
+                    "limit: missing",
+                    "ratio: cannot convert \"x\" to double",
+                    "separator: missing",
+                    "timeout: missing")));
+        }
+        try {
+            codec.readJson("{ \"name\": [1] }");
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("not a scalar"));
+        }
+    }
+
+    /**
+     * unquoted values are JSON literals or numbers, nothing else
+     */
+    @Test
+    public void testBareTokensAreRejected() {
+        ConfigCodec<CodecConfig> codec= ConfigCodec.of(CodecConfig.class, CodecConfig.Builder.class);
+        for (String json: Arrays.asList( "{ \"name\": abc }", "{ \"retries\": 1 2 }", "{ \"enabled\": tru }",
+                                         "{ \"retries\": 01 }", "{ \"ratio\": 1. }", "{ \"ratio\": .5 }",
+                                         "{ \"ratio\": 1e }", "{ \"retries\": +1 }", "{ \"ratio\": NaN }")) {
+            try {
+                codec.readJson(json);
+                fail("expected an IllegalArgumentException for " + json);
+            }
+            catch (InvalidConfigurationException ex) {
+                fail("expected the syntax of " + json + " to be rejected, got " + ex.getProblems());
+            }
+            catch (IllegalArgumentException ex) {
+                assertThat(ex.getMessage(), StringContains.containsString("Invalid input"));
+            }
+        }
+        // the syntax is fine, only the values are missing
+        for (String json: Arrays.asList( "{ \"enabled\": true, \"retries\": -0 }", "{ \"ratio\": -1.5e+3, \"limit\": 10E2 }")) {
+            try {
+                codec.readJson(json);
+                fail("expected an InvalidConfigurationException for " + json);
+            }
+            catch (InvalidConfigurationException ex) {
+                assertThat(ex.getProblems().toString(), StringContains.containsString("missing"));
+            }
+        }
+    }
+
+    public static interface BlobConfig {
+        String name();
+        @OffHeap
+        ByteBuffer table();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder table(ByteBuffer v);
+            BlobConfig done();
+        }
+    }
+
+    @Test
+    public void testOffHeapIsRejected() {
+        try {
+            ConfigCodec.of(BlobConfig.class, BlobConfig.Builder.class);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("Property 'table': @OffHeap properties have no textual form"));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import me.mywiki.configurator.ConfigMetrics;
+import me.mywiki.configurator.ConfigMetrics.Snapshot;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+
+public class ConfigMetricsTests {
+
+    public static interface MeteredConfig {
+        String host();
+        @DefaultsToInteger(val= 80)
+        int port();
+        @TransformBy(_fun = Trim.class)
+        String user();
+        String unused();
+
+        static class Trim implements Function<Object, Object> {
+            @Override public Object apply(Object t) { return ((String) t).trim(); }
+        }
+
+        public static interface Builder {
+            Builder host(String v);
+            Builder port(int v);
+            Builder user(String v);
+            Builder unused(String v);
+            MeteredConfig done();
+        }
+
+        public static interface OtherBuilder {
+            OtherBuilder host(String v);
+            OtherBuilder port(int v);
+            OtherBuilder user(String v);
+            OtherBuilder unused(String v);
+            MeteredConfig done();
+        }
+    }
+
+    public static interface UnmeteredConfig {
+        String host();
+
+        public static interface Builder {
+            Builder host(String v);
+            UnmeteredConfig done();
+        }
+    }
+
+    @After
+    public void disable() {
+        ConfigMetrics.disable();
+    }
+
+    @Test
+    public void testReadsBuildsAndTransforms() throws Exception {
+        ConfigMetrics.enable();
+        for (Engine engine: Engine.values()) {
+            MeteredConfig config= ReflectiveConfigurator.configBuilderFor(MeteredConfig.class, MeteredConfig.Builder.class, engine)
+                                    .host("localhost")
+                                    .user(" admin ")
+                                    .unused("x")
+                                    .done();
+            assertThat(config.host(), is("localhost"));
+            assertThat(config.host(), is("localhost"));
+            assertThat(config.user(), is("admin"));
+        }
+        Snapshot snapshot= ConfigMetrics.snapshot(MeteredConfig.class, MeteredConfig.Builder.class);
+        assertThat(snapshot.readerClass(), is(MeteredConfig.class.getName()));
+        assertThat(snapshot.reads().get("host"), is(4L));
+        assertThat(snapshot.reads().get("user"), is(2L));
+        assertThat(snapshot.neverRead(), is(Arrays.asList("port", "unused")));
+        assertThat(snapshot.builds(), is(2L));
+        assertThat(snapshot.transformCalls().keySet(), is(Collections.singleton("user")));
+        assertThat(snapshot.transformCalls().get("user"), is(2L));
+        assertTrue(snapshot.buildNanos() > 0);
+        assertTrue(snapshot.validationNanos() > 0);
+        assertTrue(ConfigMetrics.snapshots().stream().anyMatch(s -> s.readerClass().equals(MeteredConfig.class.getName())));
+
+        ObjectName name= new ObjectName("me.mywiki.configurator:type=ConfigMetrics,name="
+                                        + ObjectName.quote(MeteredConfig.class.getName())
+                                        + ",builder=" + ObjectName.quote(MeteredConfig.Builder.class.getName()));
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Builds"), is(2L));
+    }
+
+    /**
+     * another builder of the same reader is a pair of its own, with its own MXBean
+     */
+    @Test
+    public void testPairsAreKeyedByBuilder() throws Exception {
+        ConfigMetrics.enable();
+        ReflectiveConfigurator.configBuilderFor(MeteredConfig.class, MeteredConfig.OtherBuilder.class)
+                              .host("localhost")
+                              .user("admin")
+                              .unused("x")
+                              .done();
+        Snapshot snapshot= ConfigMetrics.snapshot(MeteredConfig.class, MeteredConfig.OtherBuilder.class);
+        assertThat(snapshot.builderClass(), is(MeteredConfig.OtherBuilder.class.getName()));
+        assertThat(snapshot.builds(), is(1L));
+
+        ObjectName name= new ObjectName("me.mywiki.configurator:type=ConfigMetrics,name="
+                                        + ObjectName.quote(MeteredConfig.class.getName())
+                                        + ",builder=" + ObjectName.quote(MeteredConfig.OtherBuilder.class.getName()));
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Builds"), is(1L));
+    }
+
+    /**
+     * nothing is recorded while metrics are disabled
+     */
+    @Test
+    public void testDisabled() {
+        UnmeteredConfig config= ReflectiveConfigurator.configBuilderFor(UnmeteredConfig.class, UnmeteredConfig.Builder.class)
+                                  .host("localhost")
+                                  .done();
+        assertThat(config.host(), is("localhost"));
+        Snapshot snapshot= ConfigMetrics.snapshot(UnmeteredConfig.class, UnmeteredConfig.Builder.class);
+        assertThat(snapshot.builds(), is(0L));
+        assertThat(snapshot.reads().get("host"), is(0L));
+        assertFalse(ConfigMetrics.snapshots().stream().anyMatch(s -> s.readerClass().equals(UnmeteredConfig.class.getName())));
+    }
+}
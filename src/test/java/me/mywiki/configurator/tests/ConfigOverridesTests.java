@@ -0,0 +1,184 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Test;
+
+import me.mywiki.configurator.ConfigOverrides;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.Range;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+
+public class ConfigOverridesTests {
+
+    public static class Trim implements Function<Object, Object> {
+        @Override
+        public Object apply(Object value) {
+            return ((String) value).trim();
+        }
+    }
+
+    public static interface ServiceConfig {
+        @TransformBy(_fun= Trim.class)
+        String endpoint();
+        @Range(min= 1)
+        int timeoutMillis();
+        boolean tracing();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder endpoint(String v);
+            Builder timeoutMillis(int v);
+            Builder tracing(boolean v);
+            ServiceConfig done();
+        }
+    }
+
+    public static interface LateConfig {
+        String endpoint();
+
+        public static interface Builder {
+            Builder endpoint(String v);
+            LateConfig done();
+        }
+    }
+
+    private static ServiceConfig config(Engine engine) {
+        return ReflectiveConfigurator.configBuilderFor(ServiceConfig.class, ServiceConfig.Builder.class, engine)
+                                     .endpoint("http://main")
+                                     .timeoutMillis(500)
+                                     .tracing(false)
+                                     .done();
+    }
+
+    @Test
+    public void testScopes() throws Exception {
+        ConfigOverrides<ServiceConfig> overrides= ConfigOverrides.of(ServiceConfig.class, ServiceConfig.Builder.class);
+        assertSame(overrides, ConfigOverrides.of(ServiceConfig.class, ServiceConfig.Builder.class));
+        ServiceConfig config= config(Engine.PROXY);
+        ServiceConfig copy= config.cloneBuilder().done();
+        ConfigOverrides.Scope<ServiceConfig> canary= overrides.with(config, ServiceConfig::endpoint, " http://canary ")
+                                                              .with(config, ServiceConfig::timeoutMillis, 50);
+        ConfigOverrides.Scope<ServiceConfig> traced= overrides.with(config, ServiceConfig::tracing, true)
+                                                              .with(config, ServiceConfig::timeoutMillis, 5000);
+        canary.run(() -> {
+            assertThat(config.endpoint(), is("http://canary"));
+            assertThat(config.timeoutMillis(), is(50));
+            assertThat(config.tracing(), is(false));
+            // the reader's own values
+            assertEquals(copy, config);
+            assertThat(config.cloneBuilder().done().toString(), is(copy.toString()));
+            // other readers, equal ones included, are not affected
+            assertThat(copy.endpoint(), is("http://main"));
+            assertThat(copy.timeoutMillis(), is(500));
+
+            int inner= traced.call(() -> {
+                assertThat(config.endpoint(), is("http://canary"));
+                assertThat(config.tracing(), is(true));
+                return config.timeoutMillis();
+            });
+            assertThat(inner, is(5000));
+            assertThat(config.timeoutMillis(), is(50));
+            assertThat(config.tracing(), is(false));
+
+            // other threads do not see the scope
+            assertThat(CompletableFuture.supplyAsync(config::endpoint).join(), is("http://main"));
+        });
+        assertThat(config.endpoint(), is("http://main"));
+        assertThat(config.timeoutMillis(), is(500));
+
+        try {
+            canary.run(() -> { throw new IllegalStateException("failed"); });
+            fail("expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            assertThat(config.timeoutMillis(), is(500));
+        }
+    }
+
+    @Test
+    public void testScopesOfSeveralReaders() {
+        ConfigOverrides<ServiceConfig> overrides= ConfigOverrides.of(ServiceConfig.class, ServiceConfig.Builder.class);
+        ServiceConfig first= config(Engine.PROXY);
+        ServiceConfig second= config(Engine.PROXY);
+        ConfigOverrides.Scope<ServiceConfig> both= overrides.with(first, ServiceConfig::timeoutMillis, 50)
+                                                            .with(second, ServiceConfig::timeoutMillis, 60);
+        ConfigOverrides.Scope<ServiceConfig> traced= overrides.with(second, ServiceConfig::tracing, true);
+        both.run(() -> {
+            assertThat(first.timeoutMillis(), is(50));
+            assertThat(second.timeoutMillis(), is(60));
+            traced.run(() -> {
+                assertThat(first.tracing(), is(false));
+                assertThat(second.tracing(), is(true));
+                assertThat(second.timeoutMillis(), is(60));
+            });
+        });
+    }
+
+    @Test
+    public void testValuesAreChecked() {
+        ConfigOverrides<ServiceConfig> overrides= ConfigOverrides.of(ServiceConfig.class, ServiceConfig.Builder.class);
+        ServiceConfig reader= config(Engine.PROXY);
+        try {
+            overrides.with(reader, ServiceConfig::timeoutMillis, null);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("Property 'timeoutMillis': null is not a int"));
+        }
+        try {
+            overrides.with(reader, ServiceConfig::timeoutMillis, 0);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), is("Invalid override [timeoutMillis: 0 is not in [1, Infinity]]"));
+        }
+        try {
+            overrides.with(reader, config -> config.timeoutMillis() + config.endpoint().length(), 3);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            // two getters
+        }
+    }
+
+    /**
+     * generated readers read their fields, they are rejected rather than silently not overridden;
+     * getting the overrides late does not change the engine of the readers built afterwards
+     */
+    @Test
+    public void testOnlyProxyReadersAreOverridden() {
+        LateConfig generated= ReflectiveConfigurator.configBuilderFor(LateConfig.class, LateConfig.Builder.class, Engine.GENERATED)
+                                                    .endpoint("http://main")
+                                                    .done();
+        ConfigOverrides<LateConfig> overrides= ConfigOverrides.of(LateConfig.class, LateConfig.Builder.class);
+        try {
+            overrides.with(generated, LateConfig::endpoint, "http://canary");
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString(LateConfig.class.getName()));
+        }
+        LateConfig later= ReflectiveConfigurator.configBuilderFor(LateConfig.class, LateConfig.Builder.class, Engine.GENERATED)
+                                                .endpoint("http://main")
+                                                .done();
+        assertSame(generated.getClass(), later.getClass());
+        assertEquals(generated, later);
+
+        LateConfig proxy= ReflectiveConfigurator.configBuilderFor(LateConfig.class, LateConfig.Builder.class, Engine.PROXY)
+                                                .endpoint("http://main")
+                                                .done();
+        overrides.with(proxy, LateConfig::endpoint, "http://canary")
+                 .run(() -> {
+                     assertThat(proxy.endpoint(), is("http://canary"));
+                     assertThat(later.endpoint(), is("http://main"));
+                 });
+    }
+}
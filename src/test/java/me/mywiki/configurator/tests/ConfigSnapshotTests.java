@@ -0,0 +1,272 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import me.mywiki.configurator.ConfigSnapshot;
+import me.mywiki.configurator.ConfigSnapshot.InvalidSnapshotException;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToString;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.Interpolated;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+import me.mywiki.configurator.ReflectiveConfigurator.ValidateBy;
+
+public class ConfigSnapshotTests {
+
+    public static enum Level { LOW, HIGH }
+
+    public static interface SnapConfig {
+        String name();
+        @DefaultsToString(val= "d\u00e9faut \u2713")
+        String description();
+        String nothing();
+        int count();
+        long size();
+        double ratio();
+        boolean enabled();
+        Integer boxed();
+        char letter();
+        Level level();
+
+        SnapConfig.Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder description(String v);
+            Builder nothing(String v);
+            Builder count(int v);
+            Builder size(long v);
+            Builder ratio(double v);
+            Builder enabled(boolean v);
+            Builder boxed(Integer v);
+            Builder letter(char v);
+            Builder level(Level v);
+            SnapConfig done();
+        }
+    }
+
+    /** stands for a decryption */
+    public static class Reverse implements Function<Object, Object> {
+        static final AtomicInteger calls= new AtomicInteger();
+        @Override
+        public Object apply(Object value) {
+            calls.incrementAndGet();
+            return new StringBuilder((String) value).reverse().toString();
+        }
+    }
+
+    public static interface SecretConfig {
+        @TransformBy(_fun= Reverse.class, lazy= true)
+        String password();
+        String host();
+        @Interpolated
+        String url();
+
+        SecretConfig.Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder password(String v);
+            Builder host(String v);
+            Builder url(String v);
+            SecretConfig done();
+        }
+    }
+
+    public static interface EagerConfig {
+        @TransformBy(_fun= Reverse.class)
+        String password();
+
+        public static interface Builder {
+            Builder password(String v);
+            EagerConfig done();
+        }
+    }
+
+    /** another pair, SnapConfig snapshots do not fit it */
+    public static interface OtherConfig {
+        String name();
+        public static interface Builder {
+            Builder name(String v);
+            OtherConfig done();
+        }
+    }
+
+    public static interface QuotaConfig {
+        @ValidateBy(Limit.class)
+        int quota();
+
+        /** the limit can be lowered after a snapshot has been written */
+        static class Limit implements Function<Object, String> {
+            static volatile int max= 100;
+            @Override public String apply(Object t) { return (Integer) t <= max ? null : t + " is above " + max; }
+        }
+
+        public static interface Builder {
+            Builder quota(int v);
+            QuotaConfig done();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp= new TemporaryFolder();
+
+    private static SnapConfig sample(Engine engine) {
+        return ReflectiveConfigurator.configBuilderFor(SnapConfig.class, SnapConfig.Builder.class, engine)
+                    .name("server-1")
+                    .nothing(null)
+                    .count(42)
+                    .size(1L << 40)
+                    .ratio(0.25)
+                    .enabled(true)
+                    .boxed(7)
+                    .letter('x')
+                    .level(Level.HIGH)
+                    .done();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        for (Engine writeEngine: Engine.values()) {
+            SnapConfig original= sample(writeEngine);
+            ConfigSnapshot.write(original, file);
+            for (Engine readEngine: Engine.values()) {
+                SnapConfig loaded= ConfigSnapshot.load(SnapConfig.class, SnapConfig.Builder.class, readEngine, file);
+                assertThat(loaded.name(), is("server-1"));
+                assertThat(loaded.description(), is("d\u00e9faut \u2713"));
+                assertNull(loaded.nothing());
+                assertThat(loaded.count(), is(42));
+                assertThat(loaded.size(), is(1L << 40));
+                assertThat(loaded.ratio(), is(0.25));
+                assertThat(loaded.enabled(), is(true));
+                assertThat(loaded.boxed(), is(7));
+                assertThat(loaded.letter(), is('x'));
+                assertThat(loaded.level(), is(Level.HIGH));
+                assertThat(loaded.toString(), is(original.toString()));
+                assertThat(loaded.hashCode(), is(original.hashCode()));
+                assertThat(loaded.cloneBuilder().count(1).done().name(), is("server-1"));
+            }
+        }
+    }
+
+    /**
+     * equals() works whether or not the strings have been decoded yet
+     */
+    @Test
+    public void testLazyStringsCompareEqual() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        SnapConfig original= sample(Engine.PROXY);
+        ConfigSnapshot.write(original, file);
+        SnapConfig untouched= ConfigSnapshot.load(SnapConfig.class, SnapConfig.Builder.class, file);
+        assertTrue(untouched.equals(original));
+        assertTrue(original.equals(ConfigSnapshot.load(SnapConfig.class, SnapConfig.Builder.class, file)));
+    }
+
+    /**
+     * the values given to the setters are written rather than the transformed ones, the templates are kept
+     */
+    @Test
+    public void testTransformsAndTemplates() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        SecretConfig original= ReflectiveConfigurator.configBuilderFor(SecretConfig.class, SecretConfig.Builder.class)
+                                                     .password("terces-pot")
+                                                     .host("db-1")
+                                                     .url("jdbc://${host}/main")
+                                                     .done();
+        assertThat(original.password(), is("top-secret"));
+        ConfigSnapshot.write(original, file);
+        String content= new String(Files.readAllBytes(file), "UTF-8");
+        assertFalse(content.contains("top-secret"));
+
+        int calls= Reverse.calls.get();
+        SecretConfig loaded= ConfigSnapshot.load(SecretConfig.class, SecretConfig.Builder.class, file);
+        assertThat(Reverse.calls.get(), is(calls));
+        assertThat(loaded.password(), is("top-secret"));
+        assertThat(loaded.url(), is("jdbc://db-1/main"));
+        assertThat(loaded.cloneBuilder().host("db-2").done().url(), is("jdbc://db-2/main"));
+
+        try {
+            ConfigSnapshot.write( ReflectiveConfigurator.configBuilderFor(EagerConfig.class, EagerConfig.Builder.class)
+                                                        .password("terces-pot")
+                                                        .done(),
+                                  file);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("eager @TransformBy"));
+        }
+    }
+
+    @Test
+    public void testStaleSnapshotIsRejected() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        ConfigSnapshot.write(sample(Engine.PROXY), file);
+        try {
+            ConfigSnapshot.load(OtherConfig.class, OtherConfig.Builder.class, file);
+            fail("expected an InvalidSnapshotException");
+        }
+        catch (InvalidSnapshotException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("Stale snapshot"));
+        }
+    }
+
+    /**
+     * loading checks the constraints again, they are not part of the fingerprint
+     */
+    @Test
+    public void testConstraintsAreChecked() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        ConfigSnapshot.write( ReflectiveConfigurator.configBuilderFor(QuotaConfig.class, QuotaConfig.Builder.class).quota(50).done(),
+                              file);
+        assertThat(ConfigSnapshot.load(QuotaConfig.class, QuotaConfig.Builder.class, file).quota(), is(50));
+        QuotaConfig.Limit.max= 10;
+        try {
+            ConfigSnapshot.load(QuotaConfig.class, QuotaConfig.Builder.class, file);
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems(), is(Arrays.asList("quota: 50 is above 10")));
+        }
+        finally {
+            QuotaConfig.Limit.max= 100;
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshotIsRejected() throws Exception {
+        Path file= tmp.getRoot().toPath().resolve("snap.bin");
+        ConfigSnapshot.write(sample(Engine.PROXY), file);
+        byte[] content= Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+        try {
+            ConfigSnapshot.load(SnapConfig.class, SnapConfig.Builder.class, file);
+            fail("expected an InvalidSnapshotException");
+        }
+        catch (InvalidSnapshotException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("Truncated"));
+        }
+
+        Files.write(file, "name=server-1\n".getBytes("UTF-8"));
+        try {
+            ConfigSnapshot.load(SnapConfig.class, SnapConfig.Builder.class, file);
+            fail("expected an InvalidSnapshotException");
+        }
+        catch (InvalidSnapshotException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("Not a configuration snapshot"));
+        }
+    }
+}
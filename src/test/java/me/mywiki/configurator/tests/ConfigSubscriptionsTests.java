@@ -0,0 +1,171 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import me.mywiki.configurator.ConfigDiff;
+import me.mywiki.configurator.ConfigSubscriptions;
+import me.mywiki.configurator.ConfigSubscriptions.Subscription;
+import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
+
+public class ConfigSubscriptionsTests {
+
+    public static interface PoolConfig {
+        String url();
+        int maxConnections();
+        long timeoutMillis();
+        float loadFactor();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder url(String v);
+            Builder maxConnections(int v);
+            Builder timeoutMillis(long v);
+            Builder loadFactor(float v);
+            PoolConfig done();
+        }
+    }
+
+    private static PoolConfig config(Engine engine) {
+        return ReflectiveConfigurator.configBuilderFor(PoolConfig.class, PoolConfig.Builder.class, engine)
+                                     .url("jdbc:h2:mem:")
+                                     .maxConnections(10)
+                                     .timeoutMillis(500L)
+                                     .loadFactor(0.75f)
+                                     .done();
+    }
+
+    @Test
+    public void testDiff() {
+        for (Engine engine: Engine.values()) {
+            PoolConfig before= config(engine);
+            PoolConfig after= before.cloneBuilder().maxConnections(20).loadFactor(0.5f).done();
+            ConfigDiff<PoolConfig> diff= ConfigDiff.between(before, after);
+            assertFalse(diff.isEmpty());
+            assertThat(diff.changedProperties(), is(Arrays.asList("loadFactor", "maxConnections")));
+            assertTrue(diff.isChanged(PoolConfig::maxConnections));
+            assertTrue(diff.isChanged(PoolConfig::loadFactor));
+            assertFalse(diff.isChanged(PoolConfig::url));
+            assertFalse(diff.isChanged("timeoutMillis"));
+            assertThat(diff.toString(), is("{loadFactor: 0.75 -> 0.5, maxConnections: 10 -> 20}"));
+
+            assertTrue(ConfigDiff.between(before, config(engine)).isEmpty());
+            assertTrue(ConfigDiff.between(before, before.cloneBuilder().maxConnections(10).done()).isEmpty());
+        }
+    }
+
+    public static interface SecretPoolConfig {
+        @TransformBy(_fun= Decrypt.class, lazy= true)
+        String password();
+        String url();
+        int maxConnections();
+        long timeoutMillis();
+        float loadFactor();
+
+        Builder cloneBuilder();
+
+        static class Decrypt implements Function<Object, Object> {
+            static final AtomicInteger calls= new AtomicInteger();
+            @Override public Object apply(Object t) { calls.incrementAndGet(); return new StringBuilder((String) t).reverse().toString(); }
+        }
+
+        public static interface Builder {
+            Builder password(String v);
+            Builder url(String v);
+            Builder maxConnections(int v);
+            Builder timeoutMillis(long v);
+            Builder loadFactor(float v);
+            SecretPoolConfig done();
+        }
+    }
+
+    /**
+     * diffing does not run lazy transforms
+     */
+    @Test
+    public void testDiffOfLazyTransforms() {
+        SecretPoolConfig.Decrypt.calls.set(0);
+        SecretPoolConfig before= ReflectiveConfigurator.configBuilderFor(SecretPoolConfig.class, SecretPoolConfig.Builder.class)
+                                                       .password("terces")
+                                                       .url("jdbc:h2:mem:")
+                                                       .maxConnections(10)
+                                                       .timeoutMillis(500L)
+                                                       .loadFactor(0.75f)
+                                                       .done();
+        SecretPoolConfig resized= before.cloneBuilder().maxConnections(20).done();
+        SecretPoolConfig rotated= resized.cloneBuilder().password("wen").done();
+        assertThat(ConfigDiff.between(before, resized).changedProperties(), is(Arrays.asList("maxConnections")));
+        assertThat(ConfigDiff.between(before, rotated).changedProperties(), is(Arrays.asList("maxConnections", "password")));
+        assertThat(ConfigDiff.between(rotated, before.cloneBuilder().password("wen").done()).changedProperties(),
+                   is(Arrays.asList("maxConnections")));
+        assertThat(SecretPoolConfig.Decrypt.calls.get(), is(0));
+    }
+
+    @Test(expected= IllegalArgumentException.class)
+    public void testGetterMustReadOneProperty() {
+        PoolConfig config= config(Engine.PROXY);
+        ConfigDiff.between(config, config).isChanged(c -> c.url() + c.maxConnections());
+    }
+
+    @Test
+    public void testSubscriptions() {
+        ConfigSubscriptions<PoolConfig> subscriptions= ConfigSubscriptions.of(PoolConfig.class, PoolConfig.Builder.class);
+        List<String> events= new ArrayList<>();
+        subscriptions.subscribe(PoolConfig::maxConnections, (before, after) -> events.add("max " + before + " -> " + after));
+        Subscription onUrl= subscriptions.subscribe(PoolConfig::url, (before, after) -> events.add("url " + after));
+        subscriptions.subscribeAll(diff -> events.add("any " + diff.changedProperties()));
+
+        PoolConfig first= config(Engine.PROXY);
+        assertNull(subscriptions.publish(first));
+        assertTrue(events.isEmpty());
+
+        subscriptions.publish(first.cloneBuilder().timeoutMillis(1000L).done());
+        assertThat(events, is(Collections.singletonList("any [timeoutMillis]")));
+
+        events.clear();
+        subscriptions.publish(subscriptions.current().cloneBuilder().maxConnections(30).url("jdbc:h2:file:").done());
+        assertThat(events, is(Arrays.asList("max 10 -> 30", "url jdbc:h2:file:", "any [maxConnections, url]")));
+
+        events.clear();
+        onUrl.close();
+        subscriptions.publish(subscriptions.current().cloneBuilder().url("jdbc:h2:mem:").done());
+        assertThat(events, is(Collections.singletonList("any [url]")));
+
+        events.clear();
+        subscriptions.publish(subscriptions.current().cloneBuilder().done());
+        assertTrue(events.isEmpty());
+    }
+
+    /**
+     * a failing listener does not keep the others from being notified
+     */
+    @Test
+    public void testFailingListener() {
+        ConfigSubscriptions<PoolConfig> subscriptions= ConfigSubscriptions.of(PoolConfig.class, PoolConfig.Builder.class);
+        List<Integer> seen= new ArrayList<>();
+        subscriptions.subscribe(PoolConfig::maxConnections, (before, after) -> { throw new IllegalStateException("boom"); });
+        subscriptions.subscribe(PoolConfig::maxConnections, (before, after) -> seen.add(after));
+        subscriptions.publish(config(Engine.PROXY));
+        try {
+            subscriptions.publish(subscriptions.current().cloneBuilder().maxConnections(3).done());
+            fail();
+        }
+        catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), is("boom"));
+        }
+        assertThat(seen, is(Collections.singletonList(3)));
+        assertThat(subscriptions.current().maxConnections(), is(3));
+    }
+}
@@ -0,0 +1,199 @@
+package me.mywiki.configurator.tests;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.hamcrest.core.StringContains;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import me.mywiki.configurator.LiveConfig;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+
+public class LiveConfigTests {
+
+    public static enum Mode { FAST, SAFE }
+
+    public static interface ServerConfig {
+        String host();
+        @DefaultsToInteger(val= 8080)
+        int port();
+        boolean secure();
+        Mode mode();
+
+        public static interface Builder {
+            Builder host(String v);
+            Builder port(int v);
+            Builder secure(boolean v);
+            Builder mode(Mode v);
+            ServerConfig done();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp= new TemporaryFolder();
+
+    private final List<Exception> errors= new CopyOnWriteArrayList<>();
+
+    @Test
+    public void testPropertiesFile() throws Exception {
+        Path file= write("server.properties", "host=example.org\nsecure=true\nmode=SAFE\nunknown=ignored\n");
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add)) {
+            ServerConfig config= live.get();
+            assertThat(config.host(), is("example.org"));
+            assertThat(config.port(), is(8080));
+            assertThat(config.secure(), is(true));
+            assertThat(config.mode(), is(Mode.SAFE));
+        }
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void testJsonFile() throws Exception {
+        Path file= write("server.json", "{ \"host\": \"example.org\", \"port\": 443, \"secure\": true, \"mode\": \"FAST\" }");
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch( ServerConfig.class, ServerConfig.Builder.class,
+                                                               Engine.GENERATED, file, errors::add)) {
+            ServerConfig config= live.get();
+            assertThat(config.host(), is("example.org"));
+            assertThat(config.port(), is(443));
+            assertThat(config.mode(), is(Mode.FAST));
+        }
+    }
+
+    /**
+     * a bad edit is reported, and the last good configuration stays in place
+     */
+    @Test
+    public void testBadReloadKeepsLastGoodConfig() throws Exception {
+        Path file= write("server.properties", "host=example.org\nsecure=false\nmode=FAST\n");
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add)) {
+            live.close(); // only explicit reloads in this test
+            ServerConfig before= live.get();
+
+            write("server.properties", "host=example.org\nsecure=maybe\nmode=FAST\n");
+            assertFalse(live.reload());
+            assertSame(before, live.get());
+            assertThat(live.lastError().getMessage(), StringContains.containsString("secure"));
+            assertThat(errors.size(), is(1));
+
+            write("server.properties", "host=example.org\nmode=FAST\n");
+            assertFalse(live.reload());
+            assertSame(before, live.get());
+
+            write("server.properties", "host=other.org\nsecure=false\nmode=FAST\n");
+            assertTrue(live.reload());
+            assertThat(live.get().host(), is("other.org"));
+            assertNull(live.lastError());
+        }
+    }
+
+    /**
+     * listeners only hear about the properties that changed
+     */
+    @Test
+    public void testSubscriptions() throws Exception {
+        Path file= write("server.properties", "host=example.org\nsecure=false\nmode=FAST\n");
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add)) {
+            live.close();
+            List<Integer> ports= new CopyOnWriteArrayList<>();
+            List<String> hosts= new CopyOnWriteArrayList<>();
+            live.subscriptions().subscribe(ServerConfig::port, (before, after) -> ports.add(after));
+            live.subscriptions().subscribe(ServerConfig::host, (before, after) -> hosts.add(after));
+
+            write("server.properties", "host=example.org\nport=9090\nsecure=false\nmode=FAST\n");
+            assertTrue(live.reload());
+            assertThat(ports, is(Arrays.asList(9090)));
+            assertTrue(hosts.isEmpty());
+        }
+    }
+
+    @Test(expected= InvalidConfigurationException.class)
+    public void testInitialLoadMustSucceed() throws Exception {
+        Path file= write("server.properties", "host=example.org\nport=http\nsecure=false\nmode=FAST\n");
+        LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add).close();
+    }
+
+    /**
+     * changes to the file are picked up without any call to reload()
+     */
+    @Test
+    public void testFileChangeIsPickedUp() throws Exception {
+        Path file= write("server.properties", "host=example.org\nsecure=false\nmode=FAST\n");
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add)) {
+            write("server.properties", "host=example.org\nport=9090\nsecure=false\nmode=FAST\n");
+            long deadline= System.currentTimeMillis() + 30_000;
+            while (live.get().port() != 9090 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(live.get().port(), is(9090));
+        }
+    }
+
+    /**
+     * an error handler that throws does not stop the watch
+     */
+    @Test
+    public void testFailingErrorHandlerKeepsWatching() throws Exception {
+        Path file= write("server.properties", "host=example.org\nsecure=false\nmode=FAST\n");
+        Consumer<Exception> failing= ex -> {
+            errors.add(ex);
+            throw new IllegalStateException("handler failed");
+        };
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, failing)) {
+            write("server.properties", "host=example.org\nsecure=maybe\nmode=FAST\n");
+            long deadline= System.currentTimeMillis() + 30_000;
+            while (errors.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertFalse(errors.isEmpty());
+
+            write("server.properties", "host=example.org\nport=9090\nsecure=false\nmode=FAST\n");
+            while (live.get().port() != 9090 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(live.get().port(), is(9090));
+
+            // nor does it propagate out of an explicit reload
+            write("server.properties", "host=example.org\nport=http\nsecure=false\nmode=FAST\n");
+            assertFalse(live.reload());
+        }
+    }
+
+    /**
+     * the watch reports it when the directory of the file goes away
+     */
+    @Test
+    public void testDeletedDirectoryIsReported() throws Exception {
+        Path dir= tmp.newFolder("conf").toPath();
+        Path file= dir.resolve("server.properties");
+        Files.write(file, "host=example.org\nsecure=false\nmode=FAST\n".getBytes(StandardCharsets.UTF_8));
+        try (LiveConfig<ServerConfig> live= LiveConfig.watch(ServerConfig.class, ServerConfig.Builder.class, file, errors::add)) {
+            Files.delete(file);
+            Files.delete(dir);
+            long deadline= System.currentTimeMillis() + 30_000;
+            while (errors.stream().noneMatch(ex -> ex.getMessage().contains("stopped watching"))
+                   && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(errors.stream().anyMatch(ex -> ex.getMessage().contains("stopped watching")));
+            assertThat(live.get().host(), is("example.org"));
+        }
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file= tmp.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -3,19 +3,57 @@ package me.mywiki.configurator.tests;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import static org.hamcrest.core.Is.*;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 
 import org.hamcrest.core.StringContains;
 import org.junit.Test;
 import org.junit.experimental.categories.Categories.ExcludeCategory;
 
 import me.mywiki.configurator.ReflectiveConfigurator;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToBoolean;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToDouble;
 import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToInteger;
+import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToLong;
 import me.mywiki.configurator.ReflectiveConfigurator.DefaultsToString;
+import me.mywiki.configurator.ReflectiveConfigurator.Derived;
+import me.mywiki.configurator.ReflectiveConfigurator.Engine;
+import me.mywiki.configurator.ReflectiveConfigurator.Indexed;
+import me.mywiki.configurator.ReflectiveConfigurator.Interned;
+import me.mywiki.configurator.ReflectiveConfigurator.Interpolated;
+import me.mywiki.configurator.ReflectiveConfigurator.InvalidConfigurationException;
+import me.mywiki.configurator.ReflectiveConfigurator.OffHeap;
 import me.mywiki.configurator.ReflectiveConfigurator.TransformBy;
 import me.mywiki.configurator.ReflectiveConfigurator.MissingPropertyException;
+import me.mywiki.configurator.ReflectiveConfigurator.NotEmpty;
+import me.mywiki.configurator.ReflectiveConfigurator.Pattern;
+import me.mywiki.configurator.ReflectiveConfigurator.Range;
+import me.mywiki.configurator.ReflectiveConfigurator.ValidateBy;
+import me.mywiki.configurator.ReflectiveConfigurator.WritePolicy;
 
 public class ReflectiveConfiguratorTests {
 
@@ -188,4 +226,1104 @@ public class ReflectiveConfiguratorTests {
         assertThat(cfg.host(), is("localhost"));
         assertThat(cfg.port(), is(5432));
     }
+
+    /**
+     * The transformer of a pair is instantiated once, when the pair is first validated,
+     * not once per configBuilderFor call
+     */
+    public static interface ConfigWithCountedTransform {
+        @TransformBy(_fun = CountingTransformer.class)
+        String value();
+
+        static class CountingTransformer implements Function<Object, Object> {
+            static final AtomicInteger instances= new AtomicInteger();
+            public CountingTransformer() { instances.incrementAndGet(); }
+            @Override public Object apply(Object t) { return t; }
+        }
+
+        public static interface Builder {
+            Builder value(String v);
+            ConfigWithCountedTransform done();
+        }
+    }
+
+    @Test
+    public void testPairMetadataIsCached() {
+        ReflectiveConfigurator.precompile(ConfigWithCountedTransform.class, ConfigWithCountedTransform.Builder.class);
+        for (int i= 0; i < 3; i++) {
+            ConfigWithCountedTransform cfg= ReflectiveConfigurator
+                    .configBuilderFor(ConfigWithCountedTransform.class, ConfigWithCountedTransform.Builder.class)
+                    .value("v" + i)
+                    .done();
+            assertThat(cfg.value(), is("v" + i));
+        }
+        assertThat(ConfigWithCountedTransform.CountingTransformer.instances.get(), is(1));
+    }
+
+    @Test ( expected = RuntimeException.class )
+    public void testPrecompileRejectsInvalidPair() {
+        ReflectiveConfigurator.precompile(MismatchedTypesConfig.class, MismatchedTypesConfig.Builder.class);
+    }
+
+    /**
+     * The generated engine keeps the contract of the proxy engine,
+     * and its readers are interchangeable with proxy readers for equals/hashCode
+     */
+    @Test
+    public void testGeneratedEngine() {
+        Configuration1 generated= ReflectiveConfigurator
+                .configBuilderFor(Configuration1.class, Configuration1.Builder.class, Engine.GENERATED)
+                .property1("value1")
+                .property2(5)
+                .done();
+        assertFalse(Proxy.isProxyClass(generated.getClass()));
+        assertThat(generated.property1(), is("value1"));
+        assertThat(generated.property2(), is(5));
+
+        Configuration1 cloned= generated.cloneBuilder().property2(3).done();
+        assertFalse(Proxy.isProxyClass(cloned.getClass()));
+        assertThat(cloned.property1(), is("value1"));
+        assertThat(cloned.property2(), is(3));
+        assertThat(generated.property2(), is(5));
+
+        Configuration1 proxied= ReflectiveConfigurator
+                .configBuilderFor(Configuration1.class, Configuration1.Builder.class)
+                .property1("value1")
+                .property2(5)
+                .done();
+        assertThat(generated, is(proxied));
+        assertThat(proxied, is(generated));
+        assertThat(generated.hashCode(), is(proxied.hashCode()));
+        assertThat(generated.toString(), is(proxied.toString()));
+    }
+
+    @Test
+    public void testGeneratedEngineTransformsAndDefaults() {
+        Configuration2 config2= ReflectiveConfigurator
+                .configBuilderFor(Configuration2.class, Configuration2.Builder.class, Engine.GENERATED)
+                .intVal1(1)
+                .strVal2("val2")
+                .transformedVal("val2")
+                .done();
+        assertThat(config2.transformedVal(), is("val2.val2"));
+
+        ConfigWithDefaults cfg= ReflectiveConfigurator
+                .configBuilderFor(ConfigWithDefaults.class, ConfigWithDefaults.Builder.class, Engine.GENERATED)
+                .username("admin")
+                .done();
+        assertThat(cfg.host(), is("localhost"));
+        assertThat(cfg.port(), is(5432));
+    }
+
+    @Test( expected = MissingPropertyException.class )
+    public void testGeneratedEngineThrowsOnMissingProperties() {
+        ReflectiveConfigurator.configBuilderFor(Configuration1.class, Configuration1.Builder.class, Engine.GENERATED)
+                .property1("value1")
+                .done();
+    }
+
+    /**
+     * one property of each primitive kind, with the matching defaults
+     */
+    public static interface PrimitiveConfig {
+        @DefaultsToLong(val = 30000L)
+        long timeoutMillis();
+
+        @DefaultsToDouble(val = 0.75)
+        double loadFactor();
+
+        @DefaultsToBoolean(val = true)
+        boolean enabled();
+
+        @DefaultsToInteger(val = 8)
+        int poolSize();
+
+        @DefaultsToLong(val = 7L)
+        Long boxedLong();
+
+        short shortVal();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder timeoutMillis(long v);
+            Builder loadFactor(double v);
+            Builder enabled(boolean v);
+            Builder poolSize(int v);
+            Builder boxedLong(Long v);
+            Builder shortVal(short v);
+            PrimitiveConfig done();
+        }
+    }
+
+    @Test
+    public void testPrimitiveDefaults() {
+        for (Engine engine: Engine.values()) {
+            PrimitiveConfig cfg= ReflectiveConfigurator
+                    .configBuilderFor(PrimitiveConfig.class, PrimitiveConfig.Builder.class, engine)
+                    .shortVal((short) 3)
+                    .done();
+            assertThat(cfg.timeoutMillis(), is(30000L));
+            assertThat(cfg.loadFactor(), is(0.75));
+            assertThat(cfg.enabled(), is(true));
+            assertThat(cfg.poolSize(), is(8));
+            assertThat(cfg.boxedLong(), is(7L));
+            assertThat(cfg.shortVal(), is((short) 3));
+
+            PrimitiveConfig changed= cfg.cloneBuilder().enabled(false).timeoutMillis(5L).done();
+            assertThat(changed.enabled(), is(false));
+            assertThat(changed.timeoutMillis(), is(5L));
+            assertThat(changed.loadFactor(), is(0.75));
+            assertThat(cfg.enabled(), is(true));
+            assertThat(changed.cloneBuilder().enabled(true).timeoutMillis(30000L).done(), is(cfg));
+            assertThat(cfg.toString(), is("{boxedLong=7, enabled=true, loadFactor=0.75, poolSize=8, shortVal=3, timeoutMillis=30000}"));
+        }
+    }
+
+    /**
+     * variants derived through cloneBuilder(), one property at a time, over more generations than
+     * the overlays are allowed to stack, compare equal to the same values built from scratch
+     */
+    @Test
+    public void testDerivedConfigurations() {
+        for (Engine engine: Engine.values()) {
+            PrimitiveConfig base= ReflectiveConfigurator
+                    .configBuilderFor(PrimitiveConfig.class, PrimitiveConfig.Builder.class, engine)
+                    .shortVal((short) 3)
+                    .done();
+            PrimitiveConfig variant= base;
+            for (int i= 1; i <= 20; i++) {
+                PrimitiveConfig previous= variant;
+                variant= variant.cloneBuilder().poolSize(i).poolSize(i + 100).done();
+                assertThat(variant.poolSize(), is(i + 100));
+                assertThat(previous.poolSize(), is(i == 1 ? 8 : i + 99));
+
+                PrimitiveConfig fromScratch= ReflectiveConfigurator
+                        .configBuilderFor(PrimitiveConfig.class, PrimitiveConfig.Builder.class, engine)
+                        .shortVal((short) 3)
+                        .poolSize(i + 100)
+                        .done();
+                assertThat(variant, is(fromScratch));
+                assertThat(fromScratch, is(variant));
+                assertThat(variant.hashCode(), is(fromScratch.hashCode()));
+                assertThat(variant.toString(), is(fromScratch.toString()));
+            }
+            assertThat(base.poolSize(), is(8));
+            assertThat(variant.cloneBuilder().poolSize(8).done(), is(base));
+            assertThat(variant.cloneBuilder().done(), is(variant));
+
+            // most properties changed at once
+            PrimitiveConfig rewritten= variant.cloneBuilder()
+                    .enabled(false).timeoutMillis(1L).loadFactor(0.5).boxedLong(2L).poolSize(1)
+                    .done();
+            assertThat(rewritten.toString(), is("{boxedLong=2, enabled=false, loadFactor=0.5, poolSize=1, shortVal=3, timeoutMillis=1}"));
+            assertThat(variant.enabled(), is(true));
+        }
+    }
+
+    @Interned
+    public static interface TenantConfig {
+        String tenant();
+        @DefaultsToInteger(val= 10)
+        int quota();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder tenant(String v);
+            Builder quota(int v);
+            TenantConfig done();
+        }
+    }
+
+    /**
+     * equal configurations of an @Interned pair are the same instance, whichever way they are built
+     */
+    @Test
+    public void testInternedConfigurations() {
+        TenantConfig first= ReflectiveConfigurator.configBuilderFor(TenantConfig.class, TenantConfig.Builder.class)
+                                .tenant(new String("acme"))
+                                .done();
+        for (Engine engine: Engine.values()) {
+            TenantConfig second= ReflectiveConfigurator.configBuilderFor(TenantConfig.class, TenantConfig.Builder.class, engine)
+                                    .tenant("acme")
+                                    .quota(10)
+                                    .done();
+            assertSame(first, second);
+            assertSame(first, second.cloneBuilder().done());
+            assertSame(first, second.cloneBuilder().quota(11).quota(10).done());
+
+            TenantConfig other= second.cloneBuilder().quota(20).done();
+            assertNotSame(first, other);
+            assertFalse(first.equals(other));
+            assertFalse(other.equals(first));
+            assertSame(other, ReflectiveConfigurator.configBuilderFor(TenantConfig.class, TenantConfig.Builder.class, engine)
+                                .tenant("acme")
+                                .quota(20)
+                                .done());
+            assertThat(other.hashCode(), is(other.cloneBuilder().done().hashCode()));
+        }
+    }
+
+    /**
+     * a lazy transform that counts how many times it ran
+     */
+    public static interface ConfigWithLazyTransform {
+        @TransformBy(_fun = Decrypt.class, lazy = true)
+        String secret();
+        String user();
+        String host();
+        String database();
+        String schema();
+
+        Builder cloneBuilder();
+
+        static class Decrypt implements Function<Object, Object> {
+            static final AtomicInteger calls= new AtomicInteger();
+            @Override public Object apply(Object t) { calls.incrementAndGet(); return new StringBuilder((String) t).reverse().toString(); }
+        }
+
+        public static interface Builder {
+            Builder secret(String v);
+            Builder user(String v);
+            Builder host(String v);
+            Builder database(String v);
+            Builder schema(String v);
+            ConfigWithLazyTransform done();
+        }
+    }
+
+    @Test
+    public void testLazyTransform() throws Exception {
+        AtomicInteger calls= ConfigWithLazyTransform.Decrypt.calls;
+        calls.set(0);
+        for (Engine engine: Engine.values()) {
+            ConfigWithLazyTransform cfg= ReflectiveConfigurator
+                    .configBuilderFor(ConfigWithLazyTransform.class, ConfigWithLazyTransform.Builder.class, engine)
+                    .secret("unused")
+                    .secret("terces")
+                    .user("app").host("db1").database("main").schema("public")
+                    .done();
+            ConfigWithLazyTransform derived= cfg.cloneBuilder().host("db2").done();
+            ConfigWithLazyTransform rebuilt= cfg.cloneBuilder().user("x").host("y").database("z").schema("s").done();
+            assertThat(calls.get(), is(0));
+            assertThat(derived.host(), is("db2"));
+            assertThat(calls.get(), is(0));
+
+            // compared by the supplied values, without transforming
+            ConfigWithLazyTransform twin= ReflectiveConfigurator
+                    .configBuilderFor(ConfigWithLazyTransform.class, ConfigWithLazyTransform.Builder.class, engine)
+                    .secret("terces")
+                    .user("app").host("db1").database("main").schema("public")
+                    .done();
+            assertEquals(twin, cfg);
+            assertThat(twin.hashCode(), is(cfg.hashCode()));
+            assertFalse(derived.equals(cfg));
+            assertThat(calls.get(), is(0));
+
+            Thread[] readers= new Thread[8];
+            String[] seen= new String[readers.length];
+            for (int i= 0; i < readers.length; i++) {
+                int reader= i;
+                readers[i]= new Thread(() -> seen[reader]= derived.secret());
+                readers[i].start();
+            }
+            for (Thread t: readers) { t.join(); }
+            for (String secret: seen) { assertThat(secret, is("secret")); }
+            assertThat(cfg.secret(), is("secret"));
+            assertThat(rebuilt.secret(), is("secret"));
+            assertThat(calls.get(), is(1));
+            calls.set(0);
+        }
+    }
+
+    public static interface PrimitiveLazyTransform {
+        @TransformBy(_fun = IntTwice.class, lazy = true)
+        int value();
+
+        static class IntTwice implements Function<Object, Object> {
+            @Override public Object apply(Object t) { return 2 * (Integer) t; }
+        }
+
+        public static interface Builder {
+            Builder value(int v);
+            PrimitiveLazyTransform done();
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void testLazyTransformRejectsPrimitives() {
+        ReflectiveConfigurator.precompile(PrimitiveLazyTransform.class, PrimitiveLazyTransform.Builder.class);
+    }
+
+    /**
+     * transforms that only complete when all three run at the same time
+     */
+    public static interface ConfigWithSlowTransforms {
+        @TransformBy(_fun = Rendezvous.class)
+        String keystore();
+        @TransformBy(_fun = Rendezvous.class)
+        String secret();
+        @TransformBy(_fun = Rendezvous.class)
+        String pattern();
+        @DefaultsToInteger(val = 1)
+        int retries();
+
+        static class Rendezvous implements Function<Object, Object> {
+            static volatile CountDownLatch latch;
+            @Override public Object apply(Object t) {
+                if ("fail".equals(t)) throw new IllegalStateException("cannot decrypt");
+                latch.countDown();
+                try {
+                    if (! latch.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("transforms did not run in parallel");
+                }
+                catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return "resolved-" + t;
+            }
+        }
+
+        public static interface Builder {
+            Builder keystore(String v);
+            Builder secret(String v);
+            Builder pattern(String v);
+            Builder retries(int v);
+            ConfigWithSlowTransforms done();
+            CompletableFuture<ConfigWithSlowTransforms> doneAsync();
+            CompletableFuture<ConfigWithSlowTransforms> doneAsync(Executor executor);
+        }
+    }
+
+    @Test
+    public void testDoneAsync() throws Exception {
+        ExecutorService executor= Executors.newFixedThreadPool(3);
+        try {
+            for (Engine engine: Engine.values()) {
+                ConfigWithSlowTransforms.Rendezvous.latch= new CountDownLatch(3);
+                ConfigWithSlowTransforms.Builder builder= ReflectiveConfigurator
+                        .configBuilderFor(ConfigWithSlowTransforms.class, ConfigWithSlowTransforms.Builder.class, engine)
+                        .keystore("ks").secret("s").pattern("p");
+                CompletableFuture<ConfigWithSlowTransforms> future= builder.doneAsync(executor);
+                // the pending build works on its own copy
+                builder.keystore("other");
+                ConfigWithSlowTransforms cfg= future.get(30, TimeUnit.SECONDS);
+                assertThat(cfg.keystore(), is("resolved-ks"));
+                assertThat(cfg.secret(), is("resolved-s"));
+                assertThat(cfg.pattern(), is("resolved-p"));
+                assertThat(cfg.retries(), is(1));
+
+                ConfigWithSlowTransforms.Rendezvous.latch= new CountDownLatch(1);
+                CompletableFuture<ConfigWithSlowTransforms> failing= ReflectiveConfigurator
+                        .configBuilderFor(ConfigWithSlowTransforms.class, ConfigWithSlowTransforms.Builder.class, engine)
+                        .keystore("fail").secret("fail").pattern("p")
+                        .doneAsync();
+                try {
+                    failing.get(30, TimeUnit.SECONDS);
+                    fail("expected the transforms to fail");
+                }
+                catch (ExecutionException ex) {
+                    assertThat(ex.getCause(), instanceOf(InvalidConfigurationException.class));
+                    assertThat(((InvalidConfigurationException) ex.getCause()).getProblems(), is(Arrays.asList(
+                            "keystore: transform failed: java.lang.IllegalStateException: cannot decrypt",
+                            "secret: transform failed: java.lang.IllegalStateException: cannot decrypt")));
+                    assertThat(ex.getCause().getSuppressed().length, is(2));
+                }
+
+                CompletableFuture<ConfigWithSlowTransforms> incomplete= ReflectiveConfigurator
+                        .configBuilderFor(ConfigWithSlowTransforms.class, ConfigWithSlowTransforms.Builder.class, engine)
+                        .doneAsync(executor);
+                try {
+                    incomplete.get(30, TimeUnit.SECONDS);
+                    fail("expected a MissingPropertyException");
+                }
+                catch (ExecutionException ex) {
+                    assertThat(ex.getCause(), instanceOf(MissingPropertyException.class));
+                }
+
+                // missing properties are reported before any transform runs
+                CompletableFuture<ConfigWithSlowTransforms> partial= ReflectiveConfigurator
+                        .configBuilderFor(ConfigWithSlowTransforms.class, ConfigWithSlowTransforms.Builder.class, engine)
+                        .keystore("fail")
+                        .doneAsync(executor);
+                try {
+                    partial.get(30, TimeUnit.SECONDS);
+                    fail("expected a MissingPropertyException");
+                }
+                catch (ExecutionException ex) {
+                    assertThat(ex.getCause(), instanceOf(MissingPropertyException.class));
+                    assertThat(ex.getCause().getMessage(), StringContains.containsString("[pattern, secret]"));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    public static interface ConfigWithEagerTransform {
+        @TransformBy(_fun = ConfigWithSlowTransforms.Rendezvous.class)
+        String keystore();
+
+        public static interface Builder {
+            Builder keystore(String v);
+            ConfigWithEagerTransform done();
+        }
+    }
+
+    /**
+     * builders without doneAsync() transform the value in the setter, which reports the failure
+     */
+    @Test
+    public void testEagerTransformsRunInTheSetter() {
+        for (Engine engine: Engine.values()) {
+            ConfigWithEagerTransform.Builder builder= ReflectiveConfigurator
+                    .configBuilderFor(ConfigWithEagerTransform.class, ConfigWithEagerTransform.Builder.class, engine);
+            try {
+                builder.keystore("fail");
+                fail("expected the transform to fail");
+            }
+            catch (IllegalStateException ex) {
+                assertThat(ex.getMessage(), is("cannot decrypt"));
+            }
+            ConfigWithSlowTransforms.Rendezvous.latch= new CountDownLatch(0);
+            assertThat(builder.keystore("ks").done().keystore(), is("resolved-ks"));
+        }
+    }
+
+    public static enum Mode { FAST, SAFE }
+
+    public static class Upper implements Function<Object,Object> {
+        @Override public Object apply(Object t) { return ((String) t).toUpperCase(); }
+    }
+
+    /**
+     * one property of each type the bulk loader converts
+     */
+    public static interface LoadedConfig {
+        @TransformBy(_fun= Upper.class)
+        String name();
+        @DefaultsToInteger(val= 8)
+        int maxOpenConnections();
+        long maxBytes();
+        boolean enabled();
+        Mode mode();
+        Class<?> driver();
+        java.time.Duration timeout();
+        java.nio.file.Path dataDir();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder maxOpenConnections(int v);
+            Builder maxBytes(long v);
+            Builder enabled(boolean v);
+            Builder mode(Mode v);
+            Builder driver(Class<?> v);
+            Builder timeout(java.time.Duration v);
+            Builder dataDir(java.nio.file.Path v);
+            LoadedConfig done();
+        }
+    }
+
+    @Test
+    public void testLoadFromMap() {
+        Map<String, String> source= new HashMap<>();
+        source.put("name", "primary");
+        source.put("maxBytes", "1099511627776");
+        source.put("enabled", "true");
+        source.put("mode", "SAFE");
+        source.put("driver", "java.lang.String");
+        source.put("timeout", "30s");
+        source.put("dataDir", "/var/data");
+        source.put("unrelated", "ignored");
+        LoadedConfig cfg= ReflectiveConfigurator.load(LoadedConfig.class, LoadedConfig.Builder.class, source);
+        assertThat(cfg.name(), is("PRIMARY"));
+        assertThat(cfg.maxOpenConnections(), is(8));
+        assertThat(cfg.maxBytes(), is(1L << 40));
+        assertThat(cfg.enabled(), is(true));
+        assertThat(cfg.mode(), is(Mode.SAFE));
+        assertEquals(String.class, cfg.driver());
+        assertThat(cfg.timeout(), is(java.time.Duration.ofSeconds(30)));
+        assertThat(cfg.dataDir(), is(java.nio.file.Paths.get("/var/data")));
+    }
+
+    /**
+     * environment variables style names, and Properties with defaults
+     */
+    @Test
+    public void testLoadFromEnvironmentAndProperties() {
+        Map<String, String> env= new HashMap<>();
+        env.put("DB_NAME", "primary");
+        env.put("DB_MAX_OPEN_CONNECTIONS", "20");
+        env.put("DB_MAX_BYTES", "10");
+        env.put("DB_ENABLED", "false");
+        env.put("DB_MODE", "FAST");
+        env.put("DB_DRIVER", "java.lang.Integer");
+        env.put("DB_TIMEOUT", "PT1M");
+        env.put("DB_DATA_DIR", "data");
+        LoadedConfig fromEnv= ReflectiveConfigurator.load(LoadedConfig.class, LoadedConfig.Builder.class, env, "db.");
+        assertThat(fromEnv.maxOpenConnections(), is(20));
+        assertThat(fromEnv.timeout(), is(java.time.Duration.ofMinutes(1)));
+
+        Properties defaults= new Properties();
+        defaults.setProperty("name", "primary");
+        defaults.setProperty("maxOpenConnections", "20");
+        defaults.setProperty("maxBytes", "10");
+        defaults.setProperty("enabled", "false");
+        defaults.setProperty("mode", "FAST");
+        defaults.setProperty("driver", "java.lang.Integer");
+        defaults.setProperty("dataDir", "data");
+        Properties props= new Properties(defaults);
+        props.setProperty("timeout", "60000ms");
+        LoadedConfig fromProps= ReflectiveConfigurator.load(LoadedConfig.class, LoadedConfig.Builder.class, props);
+        assertThat(fromProps, is(fromEnv));
+    }
+
+    /**
+     * all the problems are reported at once
+     */
+    @Test
+    public void testLoadReportsAllProblems() {
+        Map<String, String> source= new HashMap<>();
+        source.put("name", "primary");
+        source.put("maxOpenConnections", "many");
+        source.put("enabled", "yes");
+        source.put("mode", "SLOW");
+        source.put("driver", "no.such.Driver");
+        source.put("timeout", "30 parsecs");
+        try {
+            ReflectiveConfigurator.load(LoadedConfig.class, LoadedConfig.Builder.class, source);
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems(), is(Arrays.asList(
+                    "dataDir: missing",
+                    "driver: cannot convert \"no.such.Driver\" to java.lang.Class",
+                    "enabled: cannot convert \"yes\" to boolean",
+                    "maxBytes: missing",
+                    "maxOpenConnections: cannot convert \"many\" to int",
+                    "mode: cannot convert \"SLOW\" to " + Mode.class.getName(),
+                    "timeout: cannot convert \"30 parsecs\" to java.time.Duration")));
+        }
+    }
+
+    /**
+     * sections set from several threads at once, with each policy for the property they all set
+     */
+    @Test
+    public void testConcurrentBuilder() throws Exception {
+        ExecutorService pool= Executors.newFixedThreadPool(4);
+        try {
+            for (WritePolicy policy: WritePolicy.values()) {
+                PrimitiveConfig.Builder builder= ReflectiveConfigurator.concurrentBuilderFor(
+                        PrimitiveConfig.class, PrimitiveConfig.Builder.class, policy, Engine.GENERATED);
+                builder.poolSize(1);
+                CountDownLatch start= new CountDownLatch(1);
+                CompletableFuture<?>[] sections= {
+                    CompletableFuture.runAsync(() -> { await(start); builder.timeoutMillis(10L).poolSize(2); }, pool),
+                    CompletableFuture.runAsync(() -> { await(start); builder.loadFactor(0.5).poolSize(3); }, pool),
+                    CompletableFuture.runAsync(() -> { await(start); builder.enabled(false).poolSize(4); }, pool),
+                    CompletableFuture.runAsync(() -> { await(start); builder.shortVal((short) 5).poolSize(5); }, pool),
+                };
+                start.countDown();
+                CompletableFuture.allOf(sections).get(10, TimeUnit.SECONDS);
+
+                PrimitiveConfig cfg= builder.done();
+                assertThat(cfg.timeoutMillis(), is(10L));
+                assertThat(cfg.loadFactor(), is(0.5));
+                assertThat(cfg.enabled(), is(false));
+                assertThat(cfg.shortVal(), is((short) 5));
+                assertThat(cfg.boxedLong(), is(7L));
+                if (policy == WritePolicy.FIRST_WRITER_WINS) {
+                    assertThat(cfg.poolSize(), is(1));
+                }
+                else {
+                    assertTrue(cfg.poolSize() >= 2 && cfg.poolSize() <= 5);
+                    assertThat(builder.poolSize(9).done().poolSize(), is(9));
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected= MissingPropertyException.class)
+    public void testConcurrentBuilderChecksMissingProperties() {
+        ReflectiveConfigurator.concurrentBuilderFor(Configuration1.class, Configuration1.Builder.class)
+                              .property1("only one")
+                              .done();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Interpolated
+    public static interface ServiceUrls {
+        String baseUrl();
+        @DefaultsToString(val= "${baseUrl}/api")
+        String apiUrl();
+        @DefaultsToString(val= "${apiUrl}/v${version}")
+        String versionedUrl();
+        int version();
+        String home();
+        String literal();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder baseUrl(String v);
+            Builder apiUrl(String v);
+            Builder versionedUrl(String v);
+            Builder version(int v);
+            Builder home(String v);
+            Builder literal(String v);
+            ServiceUrls done();
+        }
+    }
+
+    @Test
+    public void testInterpolation() {
+        String variable= System.getenv().keySet().iterator().next();
+        ServiceUrls urls= ReflectiveConfigurator.configBuilderFor(ServiceUrls.class, ServiceUrls.Builder.class)
+                                                .baseUrl("http://host")
+                                                .version(2)
+                                                .home("${env:" + variable + "}/app")
+                                                .literal("$${baseUrl}")
+                                                .done();
+        assertThat(urls.apiUrl(), is("http://host/api"));
+        assertThat(urls.versionedUrl(), is("http://host/api/v2"));
+        assertThat(urls.home(), is(System.getenv(variable) + "/app"));
+        assertThat(urls.literal(), is("${baseUrl}"));
+
+        // only what depends on the changed properties is expanded again
+        ServiceUrls moved= urls.cloneBuilder().baseUrl("https://other").done();
+        assertThat(moved.apiUrl(), is("https://other/api"));
+        assertThat(moved.versionedUrl(), is("https://other/api/v2"));
+        assertSame(urls.home(), moved.home());
+        ServiceUrls next= moved.cloneBuilder().version(3).done();
+        assertSame(moved.apiUrl(), next.apiUrl());
+        assertThat(next.versionedUrl(), is("https://other/api/v3"));
+
+        ServiceUrls overridden= next.cloneBuilder().apiUrl("${baseUrl}/rest").done();
+        assertThat(overridden.versionedUrl(), is("https://other/rest/v3"));
+        assertThat(overridden.cloneBuilder().baseUrl("http://back").done().versionedUrl(), is("http://back/rest/v3"));
+        assertThat(overridden.cloneBuilder().apiUrl("fixed").done().versionedUrl(), is("fixed/v3"));
+    }
+
+    @Test
+    public void testInterpolationProblems() {
+        try {
+            ReflectiveConfigurator.configBuilderFor(ServiceUrls.class, ServiceUrls.Builder.class)
+                                  .baseUrl("${versionedUrl}")
+                                  .version(1)
+                                  .home("${nowhere}")
+                                  .literal("${env:SIMPLEJCONFIG_NOT_SET_ANYWHERE}")
+                                  .done();
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems(), is(Arrays.asList(
+                    "apiUrl: cyclic reference apiUrl -> baseUrl -> versionedUrl -> apiUrl",
+                    "home: no property 'nowhere'")));
+        }
+        try {
+            ReflectiveConfigurator.configBuilderFor(ServiceUrls.class, ServiceUrls.Builder.class)
+                                  .baseUrl("http://host")
+                                  .version(1)
+                                  .home("home")
+                                  .literal("${env:SIMPLEJCONFIG_NOT_SET_ANYWHERE}")
+                                  .done();
+            fail("expected an InvalidConfigurationException");
+        }
+        catch (InvalidConfigurationException ex) {
+            assertThat(ex.getProblems(), is(Arrays.asList("literal: environment variable SIMPLEJCONFIG_NOT_SET_ANYWHERE is not set")));
+        }
+    }
+
+    public static interface CyclicDefaults {
+        @Interpolated @DefaultsToString(val= "${second}")
+        String first();
+        @Interpolated @DefaultsToString(val= "${first}")
+        String second();
+
+        public static interface Builder {
+            Builder first(String v);
+            Builder second(String v);
+            CyclicDefaults done();
+        }
+    }
+
+    @Test
+    public void testInterpolationCyclesRejectedUpFront() {
+        try {
+            ReflectiveConfigurator.precompile(CyclicDefaults.class, CyclicDefaults.Builder.class);
+            fail("expected an IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("first -> second -> first"));
+        }
+    }
+
+    public static interface BlobConfig extends AutoCloseable {
+        String name();
+        @OffHeap
+        ByteBuffer table();
+        @OffHeap(secret= true)
+        ByteBuffer key();
+
+        Builder cloneBuilder();
+        @Override
+        void close();
+
+        public static interface Builder {
+            Builder name(String v);
+            Builder table(ByteBuffer v);
+            Builder key(ByteBuffer v);
+            BlobConfig done();
+        }
+    }
+
+    @Test
+    public void testOffHeapValues() {
+        byte[] tableBytes= { 1, 2, 3 };
+        ByteBuffer key= ByteBuffer.allocateDirect(2).put(0, (byte) 7);
+        BlobConfig config= ReflectiveConfigurator.configBuilderFor(BlobConfig.class, BlobConfig.Builder.class)
+                                                 .name("a")
+                                                 .table(ByteBuffer.wrap(tableBytes))
+                                                 .key(key)
+                                                 .done();
+        // heap buffers and secrets are copied
+        tableBytes[0]= 9;
+        key.put(0, (byte) 9);
+        ByteBuffer table= config.table();
+        assertTrue(table.isDirect() && table.isReadOnly());
+        assertThat(table.get(), is((byte) 1));
+        assertThat(config.table().position(), is(0));
+        assertThat(config.table().remaining(), is(3));
+        assertThat(config.key().get(0), is((byte) 7));
+
+        // direct buffers are used in place, clones share them
+        ByteBuffer direct= ByteBuffer.allocateDirect(4);
+        BlobConfig inPlace= config.cloneBuilder().table(direct).done();
+        BlobConfig derived= inPlace.cloneBuilder().name("b").done();
+        direct.put(0, (byte) 5);
+        assertThat(inPlace.table().get(0), is((byte) 5));
+        assertThat(derived.table().get(0), is((byte) 5));
+        assertEquals(inPlace, derived.cloneBuilder().name("a").done());
+    }
+
+    @Test
+    public void testSecretsAreWipedWhenTheLastReaderCloses() {
+        BlobConfig first= ReflectiveConfigurator.configBuilderFor(BlobConfig.class, BlobConfig.Builder.class)
+                                                .name("a")
+                                                .table(ByteBuffer.allocate(0))
+                                                .key(ByteBuffer.wrap(new byte[] { 7, 7 }))
+                                                .done();
+        BlobConfig second= first.cloneBuilder().name("b").done();
+        ByteBuffer view= second.key();
+
+        first.close();
+        first.close();
+        assertThat(first.name(), is("a"));
+        try {
+            first.key();
+            fail("expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            assertThat(ex.getMessage(), StringContains.containsString("key"));
+        }
+        try {
+            first.cloneBuilder();
+            fail("expected an IllegalStateException");
+        }
+        catch (IllegalStateException ex) {
+            // closed
+        }
+        assertThat(view.get(1), is((byte) 7));
+
+        try (BlobConfig last= second) {
+            assertThat(last.key().get(0), is((byte) 7));
+        }
+        assertThat(view.get(0), is((byte) 0));
+        assertThat(view.get(1), is((byte) 0));
+    }
+
+    public static interface StringOffHeap {
+        @OffHeap
+        String name();
+
+        public static interface Builder {
+            Builder name(String v);
+            StringOffHeap done();
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void testOffHeapRequiresByteBuffers() {
+        ReflectiveConfigurator.precompile(StringOffHeap.class, StringOffHeap.Builder.class);
+    }
+
+    public static enum Feature { SEARCH, EXPORT, AUDIT }
+
+    public static interface RoutingConfig {
+        @Indexed
+        Set<String> allowedHosts();
+        @Indexed
+        Set<Integer> ports();
+        @Indexed
+        Set<Feature> features();
+        @Indexed
+        Map<String, Integer> shards();
+        @Indexed
+        Map<Feature, String> owners();
+        @Indexed
+        List<Long> thresholds();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder allowedHosts(Set<String> v);
+            Builder ports(Set<Integer> v);
+            Builder features(Set<Feature> v);
+            Builder shards(Map<String, Integer> v);
+            Builder owners(Map<Feature, String> v);
+            Builder thresholds(List<Long> v);
+            RoutingConfig done();
+        }
+    }
+
+    @Test
+    public void testIndexedCollections() {
+        Set<String> hosts= new HashSet<>(Arrays.asList("a.example", "b.example", "c.example"));
+        Map<String, Integer> shards= new LinkedHashMap<>();
+        shards.put("eu", 1);
+        shards.put("us", 2);
+        shards.put("apac", null);
+        Map<Feature, String> owners= new EnumMap<>(Feature.class);
+        owners.put(Feature.AUDIT, "sec");
+        for (Engine engine: Engine.values()) {
+            RoutingConfig config= ReflectiveConfigurator.configBuilderFor(RoutingConfig.class, RoutingConfig.Builder.class, engine)
+                                                        .allowedHosts(hosts)
+                                                        .ports(new HashSet<>(Arrays.asList(443, 80, 8080)))
+                                                        .features(EnumSet.of(Feature.SEARCH, Feature.AUDIT))
+                                                        .shards(shards)
+                                                        .owners(owners)
+                                                        .thresholds(Arrays.asList(3L, 1L, 2L))
+                                                        .done();
+            assertTrue(config.allowedHosts().contains("b.example"));
+            assertFalse(config.allowedHosts().contains("d.example"));
+            assertFalse(config.allowedHosts().contains(null));
+            assertEquals(hosts, config.allowedHosts());
+            assertThat(new ArrayList<>(config.ports()), is(Arrays.asList(80, 443, 8080)));
+            assertTrue(config.ports().contains(443));
+            assertFalse(config.ports().contains(443L));
+            assertEquals(EnumSet.of(Feature.SEARCH, Feature.AUDIT), config.features());
+            assertFalse(config.features().contains(Feature.EXPORT));
+            assertThat(config.shards().get("us"), is(2));
+            assertTrue(config.shards().containsKey("apac"));
+            assertThat(new ArrayList<>(config.shards().keySet()), is(Arrays.asList("eu", "us", "apac")));
+            assertEquals(shards, config.shards());
+            assertThat(config.owners().get(Feature.AUDIT), is("sec"));
+            assertNull(config.owners().get(Feature.SEARCH));
+            assertEquals(owners, config.owners());
+            assertThat(config.thresholds(), is(Arrays.asList(3L, 1L, 2L)));
+            assertThat(config.hashCode(), is(config.cloneBuilder().allowedHosts(new HashSet<>(hosts)).done().hashCode()));
+
+            // the values are copies, immutable
+            hosts.add("d.example");
+            assertFalse(config.allowedHosts().contains("d.example"));
+            hosts.remove("d.example");
+            try {
+                config.shards().put("new", 3);
+                fail("expected an UnsupportedOperationException");
+            }
+            catch (UnsupportedOperationException ex) {
+                // frozen
+            }
+            assertEquals(config, config.cloneBuilder().thresholds(new ArrayList<>(config.thresholds())).done());
+        }
+    }
+
+    public static interface IndexedArray {
+        @Indexed
+        String[] names();
+
+        public static interface Builder {
+            Builder names(String[] v);
+            IndexedArray done();
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void testIndexedRequiresCollections() {
+        ReflectiveConfigurator.precompile(IndexedArray.class, IndexedArray.Builder.class);
+    }
+
+    static final AtomicInteger endpointComputations= new AtomicInteger();
+
+    public static interface EndpointConfig {
+        String baseUrl();
+        String path();
+
+        @Derived
+        default URI endpoint() {
+            endpointComputations.incrementAndGet();
+            return URI.create(baseUrl() + path());
+        }
+
+        @Derived
+        default String label() {
+            return path().isEmpty() ? null : endpoint().getHost();
+        }
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder baseUrl(String v);
+            Builder path(String v);
+            EndpointConfig done();
+        }
+    }
+
+    @Test
+    public void testDerivedProperties() throws Exception {
+        ExecutorService pool= Executors.newFixedThreadPool(4);
+        try {
+            for (Engine engine: Engine.values()) {
+                endpointComputations.set(0);
+                EndpointConfig config= ReflectiveConfigurator.configBuilderFor(EndpointConfig.class, EndpointConfig.Builder.class, engine)
+                                                             .baseUrl("http://host")
+                                                             .path("/api")
+                                                             .done();
+                CompletableFuture<?>[] readers= new CompletableFuture<?>[16];
+                for (int i= 0; i < readers.length; i++) {
+                    readers[i]= CompletableFuture.supplyAsync(config::endpoint, pool);
+                }
+                CompletableFuture.allOf(readers).get(10, TimeUnit.SECONDS);
+                assertThat(config.endpoint(), is(URI.create("http://host/api")));
+                assertSame(config.endpoint(), config.endpoint());
+                assertThat(config.label(), is("host"));
+                assertThat(endpointComputations.get(), is(1));
+
+                EndpointConfig moved= config.cloneBuilder().path("/v2").done();
+                assertThat(moved.endpoint(), is(URI.create("http://host/v2")));
+                assertThat(endpointComputations.get(), is(2));
+                assertNull(config.cloneBuilder().path("").done().label());
+                assertEquals(config, config.cloneBuilder().done());
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    public static interface AbstractDerived {
+        @Derived
+        String name();
+
+        public static interface Builder {
+            Builder name(String v);
+            AbstractDerived done();
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void testDerivedRequiresDefaultMethods() {
+        ReflectiveConfigurator.precompile(AbstractDerived.class, AbstractDerived.Builder.class);
+    }
+
+    public static class EvenNumber implements Function<Object, String> {
+        @Override
+        public String apply(Object value) {
+            return (Integer) value % 2 == 0 ? null : value + " is odd";
+        }
+    }
+
+    public static interface PoolSettings {
+        @Range(min= 1, max= 500)
+        int poolSize();
+        @Range(min= 0, max= 0.5)
+        Double loadFactor();
+        @Pattern(regex= "https?://[^/]+(/.*)?")
+        String url();
+        @NotEmpty
+        List<String> hosts();
+        @ValidateBy(EvenNumber.class)
+        @DefaultsToInteger(val= 2)
+        int shards();
+
+        Builder cloneBuilder();
+
+        public static interface Builder {
+            Builder poolSize(int v);
+            Builder loadFactor(Double v);
+            Builder url(String v);
+            Builder hosts(List<String> v);
+            Builder shards(int v);
+            PoolSettings done();
+        }
+    }
+
+    @Test
+    public void testConstraints() {
+        for (Engine engine: Engine.values()) {
+            PoolSettings settings= ReflectiveConfigurator.configBuilderFor(PoolSettings.class, PoolSettings.Builder.class, engine)
+                                                         .poolSize(500)
+                                                         .loadFactor(null)
+                                                         .url("http://db/main")
+                                                         .hosts(Arrays.asList("a"))
+                                                         .done();
+            assertThat(settings.shards(), is(2));
+            try {
+                ReflectiveConfigurator.configBuilderFor(PoolSettings.class, PoolSettings.Builder.class, engine)
+                                      .poolSize(0)
+                                      .loadFactor(0.75)
+                                      .url("ftp://db")
+                                      .hosts(new ArrayList<>())
+                                      .shards(3)
+                                      .done();
+                fail("expected an InvalidConfigurationException");
+            }
+            catch (InvalidConfigurationException ex) {
+                assertThat(ex.getProblems(), is(Arrays.asList(
+                        "hosts: empty",
+                        "loadFactor: 0.75 is not in [0, 0.5]",
+                        "poolSize: 0 is not in [1, 500]",
+                        "shards: 3 is odd",
+                        "url: \"ftp://db\" does not match https?://[^/]+(/.*)?")));
+            }
+
+            // clones check what they change
+            assertThat(settings.cloneBuilder().poolSize(1).done().poolSize(), is(1));
+            try {
+                settings.cloneBuilder().hosts(null).done();
+                fail("expected an InvalidConfigurationException");
+            }
+            catch (InvalidConfigurationException ex) {
+                assertThat(ex.getProblems(), is(Arrays.asList("hosts: null")));
+            }
+        }
+    }
+
+    public static interface RangeOnString {
+        @Range(max= 3)
+        String name();
+
+        public static interface Builder {
+            Builder name(String v);
+            RangeOnString done();
+        }
+    }
+
+    @Test ( expected = IllegalArgumentException.class )
+    public void testConstraintsMustFitTheType() {
+        ReflectiveConfigurator.precompile(RangeOnString.class, RangeOnString.Builder.class);
+    }
 }